@@ -5,10 +5,16 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.io.FileInputStream;
 
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
 import com.google.inject.Inject;
 
 import javax.servlet.ServletException;
@@ -33,6 +39,10 @@ import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 
 import org.jenkinsci.plugins.puppetenterprise.models.PuppetEnterpriseConfig;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PERequestMetrics;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEService;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PETrafficStatistics;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PETransportType;
 
 @Extension
 public class PuppetEnterpriseManagement extends ManagementLink {
@@ -64,6 +74,20 @@ public class PuppetEnterpriseManagement extends ManagementLink {
     return PuppetEnterpriseConfig.getPuppetMasterUrl();
   }
 
+  //Set when the master comes from puppet.conf and its CA certificate was
+  // trusted on first use
+  public String getDiscoveredCAAddress() {
+    return PuppetEnterpriseConfig.getDiscoveredCACertificateAddress();
+  }
+
+  public Date getDiscoveredCADate() {
+    return PuppetEnterpriseConfig.getDiscoveredCACertificateDate();
+  }
+
+  public List<String> getDiscoveredCAFingerprints() {
+    return PuppetEnterpriseConfig.getDiscoveredCACertificateFingerprints();
+  }
+
   public FormValidation doCheckMaster(@QueryParameter String masterAddress) throws IOException, ServletException {
     try {
       PuppetEnterpriseConfig.validatePuppetMasterUrl(masterAddress);
@@ -88,6 +112,10 @@ public class PuppetEnterpriseManagement extends ManagementLink {
       JSONObject json = req.getSubmittedForm().getJSONObject("config");
 
       PuppetEnterpriseConfig.setPuppetMasterUrl(json.getString("masterAddress"));
+
+      if (json.has("transport")) {
+        PuppetEnterpriseConfig.setTransport(json.getString("transport"));
+      }
     } catch(Exception e) {
       throw new ServletException(e);
     }
@@ -95,6 +123,84 @@ public class PuppetEnterpriseManagement extends ManagementLink {
     return FormApply.success(".");
   }
 
+  public PETransportType[] getTransports() {
+    return PETransportType.values();
+  }
+
+  public PETransportType getTransport() {
+    return PETransportType.forName(PuppetEnterpriseConfig.getTransport());
+  }
+
+  public List<PERequestMetrics> getRequestMetrics() {
+    return PERequestMetrics.getAll();
+  }
+
+  public PEService[] getServices() {
+    return PEService.values();
+  }
+
+  public PETrafficStatistics getTrafficStatistics(PEService service) {
+    return PETrafficStatistics.get(service);
+  }
+
+  public int getInFlight(PEService service) {
+    return PERequestMetrics.getInFlight(service);
+  }
+
+  /**
+   * PE API metrics as JSON, for scraping into an external monitoring system.
+   */
+  public void doMetrics(StaplerRequest req, StaplerResponse rsp) throws IOException, ServletException {
+    Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+
+    Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+    List<Map<String, Object>> services = new ArrayList<Map<String, Object>>();
+    List<Map<String, Object>> endpoints = new ArrayList<Map<String, Object>>();
+
+    for (PEService service : PEService.values()) {
+      PETrafficStatistics traffic = PETrafficStatistics.get(service);
+      Map<String, Object> entry = new LinkedHashMap<String, Object>();
+
+      entry.put("service", service.getDisplayName());
+      entry.put("inFlight", PERequestMetrics.getInFlight(service));
+      entry.put("responses", traffic.getResponses());
+      entry.put("compressedResponses", traffic.getCompressedResponses());
+      entry.put("wireBytes", traffic.getWireBytes());
+      entry.put("decodedBytes", traffic.getDecodedBytes());
+      entry.put("savedBytes", traffic.getSavedBytes());
+      services.add(entry);
+    }
+
+    for (PERequestMetrics metric : PERequestMetrics.getAll()) {
+      Map<String, Object> entry = new LinkedHashMap<String, Object>();
+
+      entry.put("service", metric.getService().getDisplayName());
+      entry.put("method", metric.getMethod());
+      entry.put("endpoint", metric.getEndpoint());
+      entry.put("inFlight", metric.getInFlight());
+      entry.put("requests", metric.getRequests());
+      entry.put("errors", metric.getErrors());
+      entry.put("coalesced", metric.getCoalesced());
+      entry.put("unchanged", metric.getUnchanged());
+      entry.put("responseBytes", metric.getResponseBytes());
+      entry.put("meanLatency", metric.getMeanLatency());
+      entry.put("p50Latency", metric.getLatencyPercentile(50));
+      entry.put("p95Latency", metric.getLatencyPercentile(95));
+      entry.put("p99Latency", metric.getLatencyPercentile(99));
+      entry.put("maxLatency", metric.getMaxLatency());
+      entry.put("latencyHistogram", metric.getLatencyHistogram());
+      entry.put("statusCodes", metric.getStatusCodes());
+      endpoints.add(entry);
+    }
+
+    metrics.put("services", services);
+    metrics.put("endpoints", endpoints);
+
+    Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    rsp.setContentType("application/json;charset=UTF-8");
+    rsp.getWriter().print(gson.toJson(metrics));
+  }
+
   public String getIconUrl(String rootUrl) {
     if (rootUrl.endsWith("/")) {
       return rootUrl + ICON_PATH.substring(1);
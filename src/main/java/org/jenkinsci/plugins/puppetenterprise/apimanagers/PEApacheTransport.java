@@ -0,0 +1,144 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Sends PE API requests on the shared Apache HttpClient pools: PEHttpClient
+ * for blocking calls and PEAsyncHttpClient for non-blocking ones. Each
+ * request holds a lease on the client it was sent on, so a client that's
+ * swapped out after a configuration change isn't closed under it.
+ */
+final class PEApacheTransport implements PETransport {
+  static final PEApacheTransport INSTANCE = new PEApacheTransport();
+
+  private PEApacheTransport() { }
+
+  @Override public PETransportResponse execute(PETransportRequest request) throws IOException {
+    PEHttpClient client = PEHttpClient.acquire();
+
+    try {
+      return new Response(client.getClient().execute(createRequest(request)), client);
+    } catch(IOException e) {
+      client.release();
+      throw e;
+    } catch(RuntimeException e) {
+      client.release();
+      throw e;
+    }
+  }
+
+  @Override public Future<?> executeAsync(PETransportRequest request, final FutureCallback<PETransportResponse> callback)
+    throws IOException {
+
+    final PEAsyncHttpClient client = PEAsyncHttpClient.acquire();
+
+    //The async client buffers the whole body, so the lease can go as soon
+    // as the exchange is over
+    try {
+      return client.getClient().execute(createRequest(request), new FutureCallback<HttpResponse>() {
+        @Override public void completed(HttpResponse response) {
+          client.release();
+          callback.completed(new Response(response, null));
+        }
+
+        @Override public void failed(Exception e) {
+          client.release();
+          callback.failed(e);
+        }
+
+        @Override public void cancelled() {
+          client.release();
+          callback.cancelled();
+        }
+      });
+    } catch(RuntimeException e) {
+      client.release();
+      throw e;
+    }
+  }
+
+  private static HttpRequestBase createRequest(PETransportRequest request) {
+    RequestBuilder builder = RequestBuilder.create(request.getMethod())
+      .setUri(request.getURI())
+      .setConfig(request.getService().getRequestConfig());
+
+    for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+      builder.addHeader(header.getKey(), header.getValue());
+    }
+
+    if (request.getBody() != null) {
+      builder.setEntity(new ByteArrayEntity(request.getBody()));
+    }
+
+    return (HttpRequestBase) builder.build();
+  }
+
+  private static class Response implements PETransportResponse {
+    private final HttpResponse response;
+    private final PEHttpClient client;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    //The client is released when the response is closed, or null when
+    // there's nothing to release
+    Response(HttpResponse response, PEHttpClient client) {
+      this.response = response;
+      this.client = client;
+    }
+
+    @Override public int getStatusCode() {
+      return this.response.getStatusLine().getStatusCode();
+    }
+
+    @Override public String getHeader(String name) {
+      Header header = this.response.getFirstHeader(name);
+      return (header == null) ? null : header.getValue();
+    }
+
+    @Override public String getContentEncoding() {
+      HttpEntity entity = this.response.getEntity();
+      Header encoding = (entity == null) ? null : entity.getContentEncoding();
+
+      return (encoding == null) ? null : encoding.getValue();
+    }
+
+    @Override public InputStream getContent() throws IOException {
+      HttpEntity entity = this.response.getEntity();
+      return (entity == null) ? null : entity.getContent();
+    }
+
+    @Override public void close() throws IOException {
+      if (!this.closed.compareAndSet(false, true)) {
+        return;
+      }
+
+      try {
+        //Reading what's left of the body lets the connection go back to
+        // the pool instead of being dropped
+        EntityUtils.consumeQuietly(this.response.getEntity());
+
+        if (this.response instanceof CloseableHttpResponse) {
+          ((CloseableHttpResponse) this.response).close();
+        }
+      } finally {
+        if (this.client != null) {
+          this.client.release();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,220 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.security.GeneralSecurityException;
+import javax.net.ssl.HostnameVerifier;
+
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+
+import org.jenkinsci.plugins.puppetenterprise.models.PuppetEnterpriseConfig;
+
+/**
+ * Process-wide non-blocking HTTP client for asynchronous PE API calls.
+ *
+ * A small, fixed number of I/O reactor threads multiplex every in-flight
+ * request, so thousands of outstanding calls don't need a thread each.
+ * Decoding finished responses is handed to a separate small pool so JSON
+ * parsing never stalls the reactor. Like PEHttpClient, it's rebuilt when
+ * the master address or CA certificate change, and a client that has been
+ * swapped out is only closed once the requests still using it are done.
+ */
+public final class PEAsyncHttpClient {
+  private static final Logger logger = Logger.getLogger(PEAsyncHttpClient.class.getName());
+  private static final long IDLE_TIMEOUT_SECONDS = 30;
+  private static final int IO_THREADS = Integer.getInteger(PEAsyncHttpClient.class.getName() + ".ioThreads", 2);
+  private static final int DECODE_THREADS = Integer.getInteger(PEAsyncHttpClient.class.getName() + ".decodeThreads", 4);
+
+  private static volatile PEAsyncHttpClient instance = null;
+  private static final ExecutorService decoder = Executors.newFixedThreadPool(DECODE_THREADS, daemonThreads("PE API response decoder"));
+
+  private final String masterUrl;
+  private final String caCertificate;
+  private final PoolingNHttpClientConnectionManager connectionManager;
+  private final CloseableHttpAsyncClient client;
+  private final ScheduledExecutorService evictor;
+  private final AtomicInteger leases = new AtomicInteger();
+  private final AtomicBoolean closed = new AtomicBoolean();
+  private volatile boolean retired = false;
+
+  private PEAsyncHttpClient(String masterUrl, String caCertificate) throws IOReactorException {
+    this.masterUrl = masterUrl;
+    this.caCertificate = caCertificate;
+
+    IOReactorConfig reactorConfig = IOReactorConfig.custom()
+      .setIoThreadCount(IO_THREADS)
+      .build();
+
+    RegistryBuilder<SchemeIOSessionStrategy> registry = RegistryBuilder.<SchemeIOSessionStrategy>create()
+      .register("http", NoopIOSessionStrategy.INSTANCE);
+
+    SSLIOSessionStrategy sslStrategy = createSSLStrategy(caCertificate);
+    if (sslStrategy != null) {
+      registry.register("https", sslStrategy);
+    } else {
+      registry.register("https", SSLIOSessionStrategy.getDefaultStrategy());
+    }
+
+    this.connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(reactorConfig), registry.build());
+    PEService.configureRoutes(this.connectionManager, masterUrl);
+
+    this.client = HttpAsyncClients.custom()
+      .setConnectionManager(this.connectionManager)
+      .build();
+    this.client.start();
+
+    this.evictor = Executors.newSingleThreadScheduledExecutor(daemonThreads("PE API idle connection evictor"));
+    this.evictor.scheduleWithFixedDelay(new Runnable() {
+      @Override public void run() {
+        connectionManager.closeExpiredConnections();
+        connectionManager.closeIdleConnections(IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      }
+    }, IDLE_TIMEOUT_SECONDS, IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Leases the shared, started client, rebuilding it if the master
+   * address or CA certificate have changed since it was last built. The
+   * lease must be released once the request has completed, failed or
+   * been cancelled.
+   */
+  static PEAsyncHttpClient acquire() throws IOException {
+    while (true) {
+      PEAsyncHttpClient current = getCurrent();
+
+      current.leases.incrementAndGet();
+
+      //Swapped out between being looked up and leased
+      if (!current.retired) {
+        return current;
+      }
+
+      current.release();
+    }
+  }
+
+  CloseableHttpAsyncClient getClient() {
+    return this.client;
+  }
+
+  void release() {
+    if (this.leases.decrementAndGet() == 0 && this.retired) {
+      shutdown();
+    }
+  }
+
+  private static PEAsyncHttpClient getCurrent() throws IOException {
+    String masterUrl = PuppetEnterpriseConfig.getPuppetMasterUrl();
+    String caCertificate = PuppetEnterpriseConfig.getPuppetMasterCACertificate();
+
+    PEAsyncHttpClient current = instance;
+    if (current != null && current.isConfiguredFor(masterUrl, caCertificate)) {
+      return current;
+    }
+
+    synchronized (PEAsyncHttpClient.class) {
+      current = instance;
+      if (current == null || !current.isConfiguredFor(masterUrl, caCertificate)) {
+        instance = new PEAsyncHttpClient(masterUrl, caCertificate);
+
+        if (current != null) {
+          current.retire();
+        }
+
+        current = instance;
+      }
+    }
+
+    return current;
+  }
+
+  /**
+   * Executor that finished responses are decoded on.
+   */
+  public static ExecutorService getDecoder() {
+    return decoder;
+  }
+
+  //A failed CA discovery comes back empty, which isn't a reason to drop
+  // a client built with the certificate discovered before
+  private boolean isConfiguredFor(String masterUrl, String caCertificate) {
+    if (caCertificate == null || caCertificate.isEmpty()) {
+      return equal(this.masterUrl, masterUrl);
+    }
+
+    return equal(this.masterUrl, masterUrl) && equal(this.caCertificate, caCertificate);
+  }
+
+  private static boolean equal(String a, String b) {
+    return (a == b) || (a != null && a.equals(b));
+  }
+
+  private void retire() {
+    this.retired = true;
+
+    if (this.leases.get() == 0) {
+      shutdown();
+    }
+  }
+
+  private void shutdown() {
+    if (!this.closed.compareAndSet(false, true)) {
+      return;
+    }
+
+    this.evictor.shutdownNow();
+
+    try {
+      this.client.close();
+    } catch(IOException e) {
+      logger.log(Level.WARNING, "Unable to close the previous Puppet Enterprise async HTTP client: " + e.getMessage());
+    }
+  }
+
+  private static SSLIOSessionStrategy createSSLStrategy(String caString) {
+    if (caString == null || caString.isEmpty()) {
+      return null;
+    }
+
+    try {
+      HostnameVerifier verifier = SSLConnectionSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER;
+      return new SSLIOSessionStrategy(PETrustMaterial.forCertificate(caString).getSSLContext(), verifier);
+    } catch(IOException e) {
+      logger.log(Level.SEVERE, e.getMessage());
+    } catch(GeneralSecurityException e) {
+      logger.log(Level.SEVERE, e.getMessage());
+    }
+
+    return null;
+  }
+
+  private static ThreadFactory daemonThreads(final String name) {
+    final AtomicInteger count = new AtomicInteger();
+
+    return new ThreadFactory() {
+      @Override public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, name + " " + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+  }
+}
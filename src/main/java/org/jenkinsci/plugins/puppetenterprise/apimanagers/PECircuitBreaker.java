@@ -0,0 +1,117 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jenkinsci.plugins.puppetenterprise.models.PEException;
+
+/**
+ * Circuit breaker for a single PE service endpoint.
+ *
+ * After a run of consecutive connection failures or unavailable responses
+ * the breaker opens and calls to the endpoint fail immediately instead of
+ * piling up on a service that is down. Once the cool down has passed a
+ * single trial call is let through; if it succeeds the breaker closes
+ * again, otherwise it stays open for another cool down. A trial call that
+ * ends without either, because it was cancelled or threw, gives its slot
+ * back so the next call can try instead.
+ */
+public final class PECircuitBreaker {
+  private static final Logger logger = Logger.getLogger(PECircuitBreaker.class.getName());
+  private static final ConcurrentHashMap<String, PECircuitBreaker> breakers = new ConcurrentHashMap<String, PECircuitBreaker>();
+
+  private final String endpoint;
+  private final PEService service;
+  private int consecutiveFailures = 0;
+  private long openUntil = 0;
+  private boolean trialInFlight = false;
+
+  private PECircuitBreaker(String endpoint, PEService service) {
+    this.endpoint = endpoint;
+    this.service = service;
+  }
+
+  public static PECircuitBreaker forEndpoint(PEService service, URI uri) {
+    String endpoint = uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+    PECircuitBreaker breaker = breakers.get(endpoint);
+
+    if (breaker == null) {
+      breaker = new PECircuitBreaker(endpoint, service);
+      PECircuitBreaker existing = breakers.putIfAbsent(endpoint, breaker);
+
+      if (existing != null) {
+        breaker = existing;
+      }
+    }
+
+    return breaker;
+  }
+
+  /**
+   * Throws if the endpoint is known to be down and no trial call is due.
+   * Returns true when the call is let through as the trial, in which case
+   * the caller must record its outcome or release the trial.
+   */
+  public synchronized boolean checkAvailable() throws PEException {
+    if (this.openUntil == 0) {
+      return false;
+    }
+
+    long now = System.currentTimeMillis();
+
+    if (now < this.openUntil || this.trialInFlight) {
+      long seconds = Math.max(1, (this.openUntil - now) / 1000);
+      throw new PEException("The Puppet Enterprise " + this.service.getDisplayName() + " service at " + this.endpoint
+        + " is unavailable after " + this.consecutiveFailures + " consecutive failures. Will try it again in "
+        + seconds + " seconds.");
+    }
+
+    //Cool down is over, let one call through to see if the service is back
+    this.trialInFlight = true;
+    return true;
+  }
+
+  //The trial call ended without a success or failure being recorded
+  public synchronized void releaseTrial() {
+    this.trialInFlight = false;
+  }
+
+  public synchronized void recordSuccess() {
+    if (this.openUntil != 0) {
+      logger.log(Level.INFO, "Puppet Enterprise " + this.service.getDisplayName() + " service at " + this.endpoint + " is available again.");
+    }
+
+    this.consecutiveFailures = 0;
+    this.openUntil = 0;
+    this.trialInFlight = false;
+  }
+
+  public synchronized void recordFailure() {
+    this.consecutiveFailures = this.consecutiveFailures + 1;
+
+    if (this.trialInFlight || this.consecutiveFailures >= this.service.getCircuitBreakerThreshold()) {
+      if (this.openUntil == 0 || this.trialInFlight) {
+        logger.log(Level.WARNING, "Puppet Enterprise " + this.service.getDisplayName() + " service at " + this.endpoint
+          + " failed " + this.consecutiveFailures + " times in a row. Failing calls to it for the next "
+          + (this.service.getCircuitBreakerCooldown() / 1000) + " seconds.");
+      }
+
+      this.openUntil = System.currentTimeMillis() + this.service.getCircuitBreakerCooldown();
+      this.trialInFlight = false;
+    }
+  }
+
+  //Whether checkAvailable() would let a call through right now
+  public synchronized boolean isAvailable() {
+    return (this.openUntil == 0 || (System.currentTimeMillis() >= this.openUntil && !this.trialInFlight));
+  }
+
+  public synchronized boolean isOpen() {
+    return (this.openUntil != 0);
+  }
+
+  public String getEndpoint() {
+    return this.endpoint;
+  }
+}
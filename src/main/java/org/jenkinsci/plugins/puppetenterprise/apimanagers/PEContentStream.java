@@ -0,0 +1,90 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.http.client.entity.DeflateInputStream;
+
+/**
+ * Response body stream that transparently decompresses gzip or deflate
+ * encoded content as it's read, and records wire and decoded byte counts
+ * for the service and endpoint once the stream is closed.
+ */
+final class PEContentStream extends FilterInputStream {
+  private final CountingInputStream wire;
+  private final PEService service;
+  private final PERequestMetrics metrics;
+  private final boolean compressed;
+  private long decoded = 0;
+  private boolean recorded = false;
+
+  private PEContentStream(InputStream in, CountingInputStream wire, PEService service, PERequestMetrics metrics,
+    boolean compressed) {
+
+    super(in);
+    this.wire = wire;
+    this.service = service;
+    this.metrics = metrics;
+    this.compressed = compressed;
+  }
+
+  static InputStream open(InputStream body, String contentEncoding, PEService service, PERequestMetrics metrics)
+    throws IOException {
+
+    CountingInputStream wire = new CountingInputStream(body);
+    String encoding = (contentEncoding == null) ? "" : contentEncoding.trim().toLowerCase(Locale.ENGLISH);
+    InputStream content = wire;
+
+    if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+      content = new GZIPInputStream(wire);
+    } else if (encoding.equals("deflate")) {
+      content = new DeflateInputStream(wire);
+    }
+
+    return new PEContentStream(content, wire, service, metrics, content != wire);
+  }
+
+  @Override public int read() throws IOException {
+    int b = super.read();
+
+    if (b >= 0) {
+      this.decoded = this.decoded + 1;
+    }
+
+    return b;
+  }
+
+  @Override public int read(byte[] b, int off, int len) throws IOException {
+    int count = super.read(b, off, len);
+
+    if (count > 0) {
+      this.decoded = this.decoded + count;
+    }
+
+    return count;
+  }
+
+  @Override public long skip(long n) throws IOException {
+    long skipped = super.skip(n);
+    this.decoded = this.decoded + skipped;
+    return skipped;
+  }
+
+  @Override public void close() throws IOException {
+    try {
+      super.close();
+    } finally {
+      if (!this.recorded && this.service != null) {
+        this.recorded = true;
+        PETrafficStatistics.get(this.service).record(this.compressed, this.wire.getByteCount(), this.decoded);
+
+        if (this.metrics != null) {
+          this.metrics.recordBytes(this.decoded);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,216 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jenkinsci.plugins.puppetenterprise.models.PuppetEnterpriseConfig;
+
+/**
+ * Picks which host a PE API call is sent to.
+ *
+ * Each service is served by the configured master, its primary, plus any
+ * replicas listed for it (see PEService.getReplicas()), which only
+ * PuppetDB has. Calls that are safe to repeat and were addressed to the
+ * master can go to any of them and fail over from one to the next;
+ * everything else, including URIs handed out by a service, stays on the
+ * host it was addressed to.
+ *
+ * Replicas are ranked by health and speed. Hosts whose circuit breaker
+ * is open go last. The rest are ordered by a moving average of how long
+ * they take to respond, except that the first pick is random and weighted
+ * towards the fastest, so a slow host still gets some traffic and its
+ * average can recover.
+ */
+public final class PEEndpoints {
+  private static final Logger logger = Logger.getLogger(PEEndpoints.class.getName());
+
+  //Weight given to the newest sample in the moving average
+  private static final double SMOOTHING = 0.2;
+
+  private static final ConcurrentHashMap<String, Latency> latencies = new ConcurrentHashMap<String, Latency>();
+
+  private PEEndpoints() { }
+
+  private static class Latency {
+    private double average = -1;
+
+    synchronized void record(double millis) {
+      this.average = (this.average < 0) ? millis : (SMOOTHING * millis) + ((1 - SMOOTHING) * this.average);
+    }
+
+    synchronized double get() {
+      return this.average;
+    }
+  }
+
+  /**
+   * The URIs to try for a call, in order. Reads are spread across the
+   * replicas only if they were built from the master's address; pass
+   * false for anything else, such as a URI a service handed out.
+   */
+  public static List<URI> route(PEService service, URI uri, boolean spread) {
+    if (!spread || service.getReplicas().isEmpty()) {
+      return Collections.singletonList(uri);
+    }
+
+    return route(service, uri, spread, PuppetEnterpriseConfig.getPuppetMasterUrl());
+  }
+
+  static List<URI> route(PEService service, URI uri, boolean spread, String master) {
+    List<String> replicas = service.getReplicas();
+
+    if (!spread || replicas.isEmpty() || !isPrimary(service, uri, master)) {
+      return Collections.singletonList(uri);
+    }
+
+    List<URI> candidates = new ArrayList<URI>();
+    candidates.add(uri);
+
+    for (String replica : replicas) {
+      try {
+        URI candidate = withHost(uri, replica, service.getPort());
+
+        if (!candidates.contains(candidate)) {
+          candidates.add(candidate);
+        }
+      } catch(URISyntaxException e) {
+        logger.log(Level.WARNING, "Ignoring invalid " + service.getDisplayName() + " replica " + replica + ": " + e.getMessage());
+      }
+    }
+
+    return rank(service, candidates);
+  }
+
+  private static boolean isPrimary(PEService service, URI uri, String master) {
+    return (uri.getPort() == service.getPort() && master != null && master.equalsIgnoreCase(uri.getHost()));
+  }
+
+  private static URI withHost(URI uri, String host, int defaultPort) throws URISyntaxException {
+    String address = host.contains(":") ? host : host + ":" + defaultPort;
+    String query = (uri.getRawQuery() == null) ? "" : "?" + uri.getRawQuery();
+
+    return new URI(uri.getScheme() + "://" + address + uri.getRawPath() + query);
+  }
+
+  private static List<URI> rank(PEService service, List<URI> candidates) {
+    List<URI> available = new ArrayList<URI>();
+    List<URI> unavailable = new ArrayList<URI>();
+
+    for (URI candidate : candidates) {
+      if (PECircuitBreaker.forEndpoint(service, candidate).isAvailable()) {
+        available.add(candidate);
+      } else {
+        unavailable.add(candidate);
+      }
+    }
+
+    final double fastest = getFastest(available);
+
+    Collections.sort(available, new Comparator<URI>() {
+      @Override public int compare(URI a, URI b) {
+        return Double.compare(getLatency(a, fastest), getLatency(b, fastest));
+      }
+    });
+
+    if (available.size() > 1) {
+      available.add(0, available.remove(pick(available, fastest)));
+    }
+
+    List<URI> ranked = new ArrayList<URI>(available);
+    ranked.addAll(unavailable);
+
+    return ranked;
+  }
+
+  //Index of a candidate picked at random, weighted by how fast it responds
+  private static int pick(List<URI> candidates, double fastest) {
+    double[] weights = new double[candidates.size()];
+    double total = 0;
+
+    for (int i = 0; i < weights.length; i++) {
+      weights[i] = 1 / (getLatency(candidates.get(i), fastest) + 1);
+      total = total + weights[i];
+    }
+
+    double choice = ThreadLocalRandom.current().nextDouble(total);
+
+    for (int i = 0; i < weights.length; i++) {
+      choice = choice - weights[i];
+
+      if (choice < 0) {
+        return i;
+      }
+    }
+
+    return weights.length - 1;
+  }
+
+  //Hosts that haven't been heard from yet are treated as being as fast as
+  // the fastest one, so they're tried soon
+  private static double getLatency(URI uri, double fastest) {
+    Latency latency = latencies.get(getKey(uri));
+    double average = (latency == null) ? -1 : latency.get();
+
+    return (average < 0) ? fastest : average;
+  }
+
+  private static double getFastest(List<URI> candidates) {
+    double fastest = -1;
+
+    for (URI candidate : candidates) {
+      double average = getLatency(candidate, -1);
+
+      if (average >= 0 && (fastest < 0 || average < fastest)) {
+        fastest = average;
+      }
+    }
+
+    return Math.max(0, fastest);
+  }
+
+  /**
+   * True if any of the URIs from the given index on can be sent to right
+   * now.
+   */
+  static boolean isAnyAvailable(PEService service, List<URI> uris, int from) {
+    for (int i = from; i < uris.size(); i++) {
+      if (PECircuitBreaker.forEndpoint(service, uris.get(i)).isAvailable()) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Records how long a host took to respond, given the System.nanoTime()
+   * the call was started at.
+   */
+  static void recordLatency(URI uri, long start) {
+    String key = getKey(uri);
+    Latency latency = latencies.get(key);
+
+    if (latency == null) {
+      latency = new Latency();
+      Latency existing = latencies.putIfAbsent(key, latency);
+
+      if (existing != null) {
+        latency = existing;
+      }
+    }
+
+    latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / 1000.0);
+  }
+
+  private static String getKey(URI uri) {
+    return uri.getHost() + ":" + uri.getPort();
+  }
+}
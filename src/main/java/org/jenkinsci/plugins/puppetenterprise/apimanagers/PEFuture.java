@@ -0,0 +1,340 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.concurrent.FutureCallback;
+
+/**
+ * Result of an asynchronous PE API call.
+ *
+ * Besides the usual blocking Future methods, callbacks can be attached and
+ * results can be transformed or chained into further calls without tying
+ * up a thread while the request is in flight.
+ */
+public class PEFuture<T> implements Future<T> {
+  private final CountDownLatch done = new CountDownLatch(1);
+  private final List<FutureCallback<T>> callbacks = new ArrayList<FutureCallback<T>>();
+  private volatile Future<?> underlying = null;
+  private T result = null;
+  private Throwable failure = null;
+  private boolean cancelled = false;
+
+  /**
+   * Transformation applied to the result of a future.
+   */
+  public interface Function<I, O> {
+    O apply(I input) throws Exception;
+  }
+
+  public static <T> PEFuture<T> completed(T result) {
+    PEFuture<T> future = new PEFuture<T>();
+    future.complete(result);
+    return future;
+  }
+
+  public static <T> PEFuture<T> failed(Throwable failure) {
+    PEFuture<T> future = new PEFuture<T>();
+    future.fail(failure);
+    return future;
+  }
+
+  /**
+   * Completes once every given future has, with their results in the same
+   * order. Fails as soon as any one of them fails.
+   */
+  public static <T> PEFuture<List<T>> allOf(final List<PEFuture<T>> futures) {
+    final PEFuture<List<T>> all = new PEFuture<List<T>>();
+    final List<T> results = new ArrayList<T>(futures.size());
+    final AtomicInteger remaining = new AtomicInteger(futures.size());
+
+    if (futures.isEmpty()) {
+      all.complete(results);
+      return all;
+    }
+
+    for (int i = 0; i < futures.size(); i++) {
+      results.add(null);
+    }
+
+    for (int i = 0; i < futures.size(); i++) {
+      final int index = i;
+
+      futures.get(i).addCallback(new FutureCallback<T>() {
+        @Override public void completed(T result) {
+          synchronized (results) {
+            results.set(index, result);
+          }
+
+          if (remaining.decrementAndGet() == 0) {
+            all.complete(results);
+          }
+        }
+
+        @Override public void failed(Exception e) {
+          all.fail(e);
+        }
+
+        @Override public void cancelled() {
+          all.cancel(false);
+        }
+      });
+    }
+
+    return all;
+  }
+
+  void setUnderlying(Future<?> underlying) {
+    this.underlying = underlying;
+
+    //Cancelled before the underlying call was made, so cancel() couldn't
+    // pass it on
+    if (isCancelled() && underlying != null) {
+      underlying.cancel(false);
+    }
+  }
+
+  public boolean complete(T result) {
+    List<FutureCallback<T>> pending;
+
+    synchronized (this) {
+      if (isDone()) {
+        return false;
+      }
+
+      this.result = result;
+      pending = new ArrayList<FutureCallback<T>>(this.callbacks);
+      this.callbacks.clear();
+      this.done.countDown();
+    }
+
+    for (FutureCallback<T> callback : pending) {
+      callback.completed(result);
+    }
+
+    return true;
+  }
+
+  public boolean fail(Throwable failure) {
+    List<FutureCallback<T>> pending;
+
+    synchronized (this) {
+      if (isDone()) {
+        return false;
+      }
+
+      this.failure = failure;
+      pending = new ArrayList<FutureCallback<T>>(this.callbacks);
+      this.callbacks.clear();
+      this.done.countDown();
+    }
+
+    for (FutureCallback<T> callback : pending) {
+      callback.failed(asException(failure));
+    }
+
+    return true;
+  }
+
+  @Override public boolean cancel(boolean mayInterruptIfRunning) {
+    List<FutureCallback<T>> pending;
+
+    synchronized (this) {
+      if (isDone()) {
+        return false;
+      }
+
+      this.cancelled = true;
+      pending = new ArrayList<FutureCallback<T>>(this.callbacks);
+      this.callbacks.clear();
+      this.done.countDown();
+    }
+
+    if (this.underlying != null) {
+      this.underlying.cancel(mayInterruptIfRunning);
+    }
+
+    for (FutureCallback<T> callback : pending) {
+      callback.cancelled();
+    }
+
+    return true;
+  }
+
+  /**
+   * Runs the callback when this future finishes, or right away on the
+   * calling thread if it already has.
+   */
+  public PEFuture<T> addCallback(FutureCallback<T> callback) {
+    synchronized (this) {
+      if (!isDone()) {
+        this.callbacks.add(callback);
+        return this;
+      }
+    }
+
+    if (this.cancelled) {
+      callback.cancelled();
+    } else if (this.failure != null) {
+      callback.failed(asException(this.failure));
+    } else {
+      callback.completed(this.result);
+    }
+
+    return this;
+  }
+
+  /**
+   * Returns a future for the result of applying the function to this
+   * future's result. Cancelling the returned future cancels this one too.
+   */
+  public <R> PEFuture<R> then(final Function<? super T, R> function) {
+    PEFuture<R> next = map(function);
+    next.setUnderlying(this);
+    return next;
+  }
+
+  /**
+   * Returns a future that finishes the same way as this one, but can be
+   * cancelled without cancelling this one, e.g. for each of the callers
+   * sharing a single call.
+   */
+  public PEFuture<T> fork() {
+    return map(new Function<T, T>() {
+      @Override public T apply(T input) {
+        return input;
+      }
+    });
+  }
+
+  private <R> PEFuture<R> map(final Function<? super T, R> function) {
+    final PEFuture<R> next = new PEFuture<R>();
+
+    addCallback(new FutureCallback<T>() {
+      @Override public void completed(T result) {
+        try {
+          next.complete(function.apply(result));
+        } catch(Exception e) {
+          next.fail(e);
+        }
+      }
+
+      @Override public void failed(Exception e) {
+        next.fail(e);
+      }
+
+      @Override public void cancelled() {
+        next.cancel(false);
+      }
+    });
+
+    return next;
+  }
+
+  /**
+   * Chains another asynchronous call onto this one. Cancelling the
+   * returned future cancels whichever of the two calls is in flight.
+   */
+  public <R> PEFuture<R> thenCompose(final Function<? super T, PEFuture<R>> function) {
+    final PEFuture<R> next = new PEFuture<R>();
+    next.setUnderlying(this);
+
+    addCallback(new FutureCallback<T>() {
+      @Override public void completed(T result) {
+        try {
+          PEFuture<R> composed = function.apply(result);
+          next.setUnderlying(composed);
+
+          composed.addCallback(new FutureCallback<R>() {
+            @Override public void completed(R result) {
+              next.complete(result);
+            }
+
+            @Override public void failed(Exception e) {
+              next.fail(e);
+            }
+
+            @Override public void cancelled() {
+              next.cancel(false);
+            }
+          });
+        } catch(Exception e) {
+          next.fail(e);
+        }
+      }
+
+      @Override public void failed(Exception e) {
+        next.fail(e);
+      }
+
+      @Override public void cancelled() {
+        next.cancel(false);
+      }
+    });
+
+    return next;
+  }
+
+  @Override public boolean isCancelled() {
+    return this.cancelled;
+  }
+
+  @Override public boolean isDone() {
+    return (this.done.getCount() == 0);
+  }
+
+  @Override public T get() throws InterruptedException, ExecutionException {
+    this.done.await();
+    return getResult();
+  }
+
+  @Override public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+    if (!this.done.await(timeout, unit)) {
+      throw new TimeoutException();
+    }
+
+    return getResult();
+  }
+
+  /**
+   * Like get(), but throws the exception the call failed with rather than
+   * wrapping it in an ExecutionException.
+   */
+  public T await() throws Exception {
+    try {
+      return get();
+    } catch(ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+
+      throw e;
+    }
+  }
+
+  private synchronized T getResult() throws ExecutionException {
+    if (this.cancelled) {
+      throw new CancellationException();
+    }
+
+    if (this.failure != null) {
+      throw new ExecutionException(this.failure);
+    }
+
+    return this.result;
+  }
+
+  private static Exception asException(Throwable failure) {
+    if (failure instanceof Exception) {
+      return (Exception) failure;
+    }
+
+    return new ExecutionException(failure);
+  }
+}
@@ -0,0 +1,177 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.security.GeneralSecurityException;
+
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import org.jenkinsci.plugins.puppetenterprise.models.PuppetEnterpriseConfig;
+
+/**
+ * Process-wide HTTP client shared by every PE API call.
+ *
+ * Connections are pooled and kept alive between requests, so polling the
+ * orchestrator doesn't pay for a TLS handshake every time. The client is
+ * built from the configured master address and CA certificate and is
+ * swapped out for a new one the first time it's requested after either
+ * of those change. Requests lease the client they're sent on, and a
+ * client that has been swapped out is only closed once the requests
+ * still using it are done.
+ */
+public final class PEHttpClient {
+  private static final Logger logger = Logger.getLogger(PEHttpClient.class.getName());
+  private static final long IDLE_TIMEOUT_SECONDS = 30;
+
+  private static volatile PEHttpClient instance = null;
+
+  private final String masterUrl;
+  private final String caCertificate;
+  private final PoolingHttpClientConnectionManager connectionManager;
+  private final CloseableHttpClient client;
+  private final AtomicInteger leases = new AtomicInteger();
+  private final AtomicBoolean closed = new AtomicBoolean();
+  private volatile boolean retired = false;
+
+  private PEHttpClient(String masterUrl, String caCertificate) {
+    this.masterUrl = masterUrl;
+    this.caCertificate = caCertificate;
+
+    RegistryBuilder<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+      .register("http", PlainConnectionSocketFactory.getSocketFactory());
+
+    SSLConnectionSocketFactory sslsf = createSSLSocketFactory(caCertificate);
+    if (sslsf != null) {
+      registry.register("https", sslsf);
+    } else {
+      registry.register("https", SSLConnectionSocketFactory.getSocketFactory());
+    }
+
+    this.connectionManager = new PoolingHttpClientConnectionManager(registry.build());
+    PEService.configureRoutes(this.connectionManager, masterUrl);
+
+    //PERequest negotiates compression per service and decompresses
+    // responses itself so it can count bytes on the wire
+    this.client = HttpClients.custom()
+      .setConnectionManager(this.connectionManager)
+      .disableContentCompression()
+      .evictExpiredConnections()
+      .evictIdleConnections(IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+      .build();
+  }
+
+  /**
+   * Leases the shared client, rebuilding it if the master address or CA
+   * certificate have changed since it was last built. The lease must be
+   * released once the response has been read.
+   */
+  static PEHttpClient acquire() {
+    while (true) {
+      PEHttpClient current = getCurrent();
+
+      current.leases.incrementAndGet();
+
+      //Swapped out between being looked up and leased
+      if (!current.retired) {
+        return current;
+      }
+
+      current.release();
+    }
+  }
+
+  CloseableHttpClient getClient() {
+    return this.client;
+  }
+
+  void release() {
+    if (this.leases.decrementAndGet() == 0 && this.retired) {
+      shutdown();
+    }
+  }
+
+  private static PEHttpClient getCurrent() {
+    String masterUrl = PuppetEnterpriseConfig.getPuppetMasterUrl();
+    String caCertificate = PuppetEnterpriseConfig.getPuppetMasterCACertificate();
+
+    PEHttpClient current = instance;
+    if (current != null && current.isConfiguredFor(masterUrl, caCertificate)) {
+      return current;
+    }
+
+    synchronized (PEHttpClient.class) {
+      current = instance;
+      if (current == null || !current.isConfiguredFor(masterUrl, caCertificate)) {
+        instance = new PEHttpClient(masterUrl, caCertificate);
+
+        if (current != null) {
+          current.retire();
+        }
+
+        current = instance;
+      }
+    }
+
+    return current;
+  }
+
+  //A failed CA discovery comes back empty, which isn't a reason to drop
+  // a client built with the certificate discovered before
+  private boolean isConfiguredFor(String masterUrl, String caCertificate) {
+    if (caCertificate == null || caCertificate.isEmpty()) {
+      return equal(this.masterUrl, masterUrl);
+    }
+
+    return equal(this.masterUrl, masterUrl) && equal(this.caCertificate, caCertificate);
+  }
+
+  private static boolean equal(String a, String b) {
+    return (a == b) || (a != null && a.equals(b));
+  }
+
+  private void retire() {
+    this.retired = true;
+
+    if (this.leases.get() == 0) {
+      shutdown();
+    }
+  }
+
+  private void shutdown() {
+    if (!this.closed.compareAndSet(false, true)) {
+      return;
+    }
+
+    try {
+      this.client.close();
+    } catch(java.io.IOException e) {
+      logger.log(Level.WARNING, "Unable to close the previous Puppet Enterprise HTTP client: " + e.getMessage());
+    }
+  }
+
+  private static SSLConnectionSocketFactory createSSLSocketFactory(String caString) {
+    if (caString == null || caString.isEmpty()) {
+      return null;
+    }
+
+    try {
+      return PETrustMaterial.forCertificate(caString).getSocketFactory();
+    } catch(java.io.IOException e) {
+      logger.log(Level.SEVERE, e.getMessage());
+    } catch(GeneralSecurityException e) {
+      logger.log(Level.SEVERE, e.getMessage());
+    }
+
+    return null;
+  }
+}
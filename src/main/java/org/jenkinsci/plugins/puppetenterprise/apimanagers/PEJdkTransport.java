@@ -0,0 +1,164 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.security.GeneralSecurityException;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.HttpsURLConnection;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.concurrent.FutureCallback;
+
+import org.jenkinsci.plugins.puppetenterprise.models.PuppetEnterpriseConfig;
+
+/**
+ * Sends PE API requests with the JDK's own HttpsURLConnection.
+ *
+ * The JDK keeps finished connections alive and reuses them per host, as
+ * long as each response body is read to the end and closed. There is no
+ * non-blocking I/O on the JDK client the plugin can build against, so
+ * asynchronous calls are run on a small pool of threads instead.
+ */
+final class PEJdkTransport implements PETransport {
+  private static final int THREADS = Integer.getInteger(PEJdkTransport.class.getName() + ".threads", 8);
+
+  static final PEJdkTransport INSTANCE = new PEJdkTransport();
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "PE API JDK transport " + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  private PEJdkTransport() { }
+
+  @Override public PETransportResponse execute(PETransportRequest request) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) request.getURI().toURL().openConnection();
+
+    if (connection instanceof HttpsURLConnection) {
+      configureTrust((HttpsURLConnection) connection);
+    }
+
+    connection.setConnectTimeout(request.getService().getConnectTimeout());
+    connection.setReadTimeout(request.getService().getReadTimeout());
+    connection.setRequestMethod(request.getMethod());
+    connection.setUseCaches(false);
+
+    for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+      connection.setRequestProperty(header.getKey(), header.getValue());
+    }
+
+    byte[] body = request.getBody();
+
+    if (body != null) {
+      connection.setDoOutput(true);
+      connection.setFixedLengthStreamingMode(body.length);
+
+      OutputStream out = connection.getOutputStream();
+      try {
+        out.write(body);
+      } finally {
+        out.close();
+      }
+    }
+
+    return new Response(connection, connection.getResponseCode());
+  }
+
+  @Override public Future<?> executeAsync(final PETransportRequest request, final FutureCallback<PETransportResponse> callback) {
+    return this.executor.submit(new Runnable() {
+      @Override public void run() {
+        PETransportResponse response;
+
+        try {
+          response = execute(request);
+        } catch(Exception e) {
+          if (Thread.currentThread().isInterrupted()) {
+            callback.cancelled();
+          } else {
+            callback.failed(e);
+          }
+
+          return;
+        }
+
+        callback.completed(response);
+      }
+    });
+  }
+
+  private static void configureTrust(HttpsURLConnection connection) throws IOException {
+    String caCertificate = PuppetEnterpriseConfig.getPuppetMasterCACertificate();
+
+    if (caCertificate == null || caCertificate.isEmpty()) {
+      return;
+    }
+
+    try {
+      connection.setSSLSocketFactory(PETrustMaterial.forCertificate(caCertificate).getSSLContext().getSocketFactory());
+    } catch(GeneralSecurityException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+  }
+
+  private static class Response implements PETransportResponse {
+    private final HttpURLConnection connection;
+    private final int statusCode;
+    private InputStream content = null;
+    private boolean opened = false;
+
+    Response(HttpURLConnection connection, int statusCode) {
+      this.connection = connection;
+      this.statusCode = statusCode;
+    }
+
+    @Override public int getStatusCode() {
+      return this.statusCode;
+    }
+
+    @Override public String getHeader(String name) {
+      return this.connection.getHeaderField(name);
+    }
+
+    @Override public String getContentEncoding() {
+      return this.connection.getContentEncoding();
+    }
+
+    @Override public InputStream getContent() throws IOException {
+      if (!this.opened) {
+        this.opened = true;
+        this.content = (this.statusCode >= 400) ? this.connection.getErrorStream() : this.connection.getInputStream();
+      }
+
+      return this.content;
+    }
+
+    @Override public void close() throws IOException {
+      InputStream remaining = getContent();
+
+      if (remaining == null) {
+        return;
+      }
+
+      //The JDK only reuses the connection once the body has been read
+      // to the end and closed
+      try {
+        IOUtils.skip(remaining, Long.MAX_VALUE);
+      } catch(IOException e) {
+        //Already read and closed by the response handler
+      } finally {
+        remaining.close();
+      }
+    }
+  }
+}
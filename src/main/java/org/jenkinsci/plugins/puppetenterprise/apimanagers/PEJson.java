@@ -0,0 +1,75 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.io.IOException;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.puppetjobreportv1.PuppetJobReportNodeEventV1;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.puppetnodev1.PuppetNodeItemV1;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.puppetnodev1.PuppetNodeMetricsV1;
+
+/**
+ * The single Gson instance used to read and write every PE API payload.
+ *
+ * Gson is thread safe and caches the adapters it builds for each type, so
+ * sharing one instance means each model class is reflected over once per
+ * JVM instead of once per request. The models that show up once per node
+ * or once per resource event have hand-written adapters that avoid
+ * reflection altogether.
+ */
+public final class PEJson {
+  //Timestamps returned by the orchestrator and Code Manager
+  public static final String DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss'Z'";
+
+  private static final Gson gson = new GsonBuilder()
+    .setDateFormat(DATE_FORMAT)
+    .registerTypeAdapterFactory(PuppetNodeItemV1.ADAPTER_FACTORY)
+    .registerTypeAdapterFactory(PuppetNodeMetricsV1.ADAPTER_FACTORY)
+    .registerTypeAdapterFactory(PuppetJobReportNodeEventV1.ADAPTER_FACTORY)
+    .create();
+
+  private PEJson() { }
+
+  public static Gson get() {
+    return gson;
+  }
+
+  /**
+   * Helpers for hand-written adapters that accept null for any value, the
+   * same way Gson's own adapters do.
+   */
+  public static String nextString(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+
+    return reader.nextString();
+  }
+
+  public static Integer nextInteger(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+
+    return reader.nextInt();
+  }
+
+  public static Boolean nextBoolean(JsonReader reader) throws IOException {
+    JsonToken token = reader.peek();
+
+    if (token == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+
+    if (token == JsonToken.STRING) {
+      return Boolean.parseBoolean(reader.nextString());
+    }
+
+    return reader.nextBoolean();
+  }
+}
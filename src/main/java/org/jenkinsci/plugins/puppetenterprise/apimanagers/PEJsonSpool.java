@@ -0,0 +1,245 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * A JSON response document copied off the wire so it can be read again,
+ * as many times as needed, without keeping it parsed in memory.
+ *
+ * Documents up to the threshold are kept as bytes. Anything larger is
+ * spilled to a temp file in the directory given, normally the build's
+ * directory, so a job report for thousands of nodes costs disk rather
+ * than controller heap. Readers get a streaming JsonReader over the copy
+ * and should parse one element at a time.
+ *
+ * The temp file is removed by close(). Files left behind in a build's
+ * directory by a Jenkins that stopped before closing its spools are
+ * removed the next time a document is spilled there.
+ */
+public final class PEJsonSpool implements Closeable {
+  private static final Logger logger = Logger.getLogger(PEJsonSpool.class.getName());
+
+  //Documents larger than this are written to disk
+  static final long THRESHOLD = Long.getLong(PEJsonSpool.class.getName() + ".threshold", 8L * 1024 * 1024);
+
+  private static final String PREFIX = "pe-response";
+  private static final String SUFFIX = ".json";
+
+  private final byte[] bytes;
+  private final File file;
+  private final long length;
+
+  private PEJsonSpool(byte[] bytes, File file, long length) {
+    this.bytes = bytes;
+    this.file = file;
+    this.length = length;
+  }
+
+  /**
+   * Copies the document the reader is positioned at. A null directory
+   * means the system temp directory.
+   */
+  static PEJsonSpool copy(JsonReader reader, File directory) throws IOException {
+    return copy(reader, directory, THRESHOLD);
+  }
+
+  static PEJsonSpool copy(JsonReader reader, File directory, long threshold) throws IOException {
+    SpillOutputStream out = new SpillOutputStream(directory, threshold);
+    JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    boolean copied = false;
+
+    try {
+      transfer(reader, writer);
+      writer.close();
+      copied = true;
+    } finally {
+      if (!copied) {
+        out.discard();
+      }
+    }
+
+    return new PEJsonSpool(out.getBytes(), out.getFile(), out.getCount());
+  }
+
+  //Copies one value token by token, so nothing larger than a single
+  // string is ever held in memory
+  private static void transfer(JsonReader reader, JsonWriter writer) throws IOException {
+    int depth = 0;
+
+    do {
+      switch (reader.peek()) {
+        case BEGIN_ARRAY: reader.beginArray(); writer.beginArray(); depth++; break;
+        case END_ARRAY: reader.endArray(); writer.endArray(); depth--; break;
+        case BEGIN_OBJECT: reader.beginObject(); writer.beginObject(); depth++; break;
+        case END_OBJECT: reader.endObject(); writer.endObject(); depth--; break;
+        case NAME: writer.name(reader.nextName()); break;
+        case STRING: writer.value(reader.nextString()); break;
+        //Keep the literal as it was sent, rather than round tripping it
+        // through a double
+        case NUMBER: writer.jsonValue(reader.nextString()); break;
+        case BOOLEAN: writer.value(reader.nextBoolean()); break;
+        case NULL: reader.nextNull(); writer.nullValue(); break;
+        default: throw new IOException("Unexpected end of JSON document");
+      }
+    } while (depth > 0);
+  }
+
+  /**
+   * A new reader positioned at the start of the document. The caller
+   * must close it.
+   */
+  public JsonReader open() throws IOException {
+    InputStream in;
+
+    if (this.file != null) {
+      in = new BufferedInputStream(new FileInputStream(this.file));
+    } else {
+      in = new ByteArrayInputStream(this.bytes);
+    }
+
+    return new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+  }
+
+  //Size of the document in bytes
+  public long length() {
+    return this.length;
+  }
+
+  public boolean isSpooled() {
+    return (this.file != null);
+  }
+
+  @Override public void close() {
+    if (this.file != null && this.file.exists() && !this.file.delete()) {
+      logger.log(Level.WARNING, "Unable to delete spooled Puppet Enterprise response " + this.file);
+    }
+  }
+
+  /**
+   * Deletes spool files in the directory that were written before Jenkins
+   * last started. Nothing reads them after a restart, the jobs they were
+   * copied for re-fetch what they need.
+   */
+  static void deleteStale(File directory) {
+    final long started = ManagementFactory.getRuntimeMXBean().getStartTime();
+    File[] stale = directory.listFiles(new FileFilter() {
+      @Override public boolean accept(File file) {
+        String name = file.getName();
+        return (name.startsWith(PREFIX) && name.endsWith(SUFFIX) && file.lastModified() < started);
+      }
+    });
+
+    if (stale == null) {
+      return;
+    }
+
+    for (File file : stale) {
+      if (!file.delete()) {
+        logger.log(Level.WARNING, "Unable to delete stale spooled Puppet Enterprise response " + file);
+      }
+    }
+  }
+
+  /**
+   * Buffers in memory until the threshold is crossed, then moves what it
+   * has to a temp file and carries on writing there.
+   */
+  private static class SpillOutputStream extends OutputStream {
+    private final File directory;
+    private final long threshold;
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private OutputStream out = this.buffer;
+    private File file = null;
+    private long count = 0;
+
+    SpillOutputStream(File directory, long threshold) {
+      this.directory = directory;
+      this.threshold = threshold;
+    }
+
+    @Override public void write(int b) throws IOException {
+      spillIfNeeded(1);
+      this.out.write(b);
+      this.count++;
+    }
+
+    @Override public void write(byte[] b, int off, int len) throws IOException {
+      spillIfNeeded(len);
+      this.out.write(b, off, len);
+      this.count = this.count + len;
+    }
+
+    @Override public void flush() throws IOException {
+      this.out.flush();
+    }
+
+    @Override public void close() throws IOException {
+      this.out.close();
+    }
+
+    private void spillIfNeeded(int len) throws IOException {
+      if (this.file != null || this.count + len <= this.threshold) {
+        return;
+      }
+
+      if (this.directory != null && !this.directory.isDirectory() && !this.directory.mkdirs()) {
+        throw new IOException("Unable to create directory " + this.directory);
+      }
+
+      this.file = File.createTempFile(PREFIX, SUFFIX, this.directory);
+
+      //The system temp directory may be shared with other processes, so
+      // only directories of our own are cleaned up
+      if (this.directory != null) {
+        deleteStale(this.directory);
+      }
+      this.out = new BufferedOutputStream(new FileOutputStream(this.file));
+      this.buffer.writeTo(this.out);
+      this.buffer = null;
+    }
+
+    byte[] getBytes() {
+      return (this.buffer == null) ? null : this.buffer.toByteArray();
+    }
+
+    File getFile() {
+      return this.file;
+    }
+
+    long getCount() {
+      return this.count;
+    }
+
+    //Called when the copy failed part way through
+    void discard() {
+      try {
+        this.out.close();
+      } catch(IOException e) {
+        logger.log(Level.FINE, "Unable to close spooled Puppet Enterprise response: " + e.getMessage());
+      }
+
+      if (this.file != null && !this.file.delete()) {
+        logger.log(Level.WARNING, "Unable to delete spooled Puppet Enterprise response " + this.file);
+      }
+    }
+  }
+}
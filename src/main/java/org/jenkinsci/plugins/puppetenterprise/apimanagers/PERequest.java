@@ -25,6 +25,8 @@ import com.google.gson.reflect.TypeToken;
 import com.google.gson.internal.LinkedTreeMap;
 import com.google.gson.JsonSyntaxException;
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
@@ -44,7 +46,13 @@ import org.apache.http.entity.*;
 import org.apache.http.client.methods.*;
 import org.apache.http.impl.client.*;
 import org.apache.http.conn.ssl.*;
+import org.apache.http.concurrent.FutureCallback;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.codec.digest.DigestUtils;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
 
 import com.cloudbees.plugins.credentials.CredentialsMatchers;
 import com.cloudbees.plugins.credentials.CredentialsProvider;
@@ -66,6 +74,12 @@ public abstract class PERequest {
   private String method = "GET";
   private Object body = new Object();
   private String endpoint = "";
+  private PEResponseCache responseCache = null;
+
+  /**
+   * The PE service this request talks to.
+   */
+  protected abstract PEService getService();
 
   public String getToken() {
     return this.token;
@@ -75,108 +89,691 @@ public abstract class PERequest {
     this.token = token;
   }
 
-  private KeyStore getTrustStore(final InputStream pathToPemFile) throws IOException, KeyStoreException,
-  NoSuchAlgorithmException, CertificateException {
-    final KeyStore ks = KeyStore.getInstance(KeyStore.getDefaultType());
-    ks.load(null);
+  /**
+   * Keeps the last decoded response for each GET this request makes.
+   * Later GETs for the same resource are sent as conditional requests and
+   * skip parsing altogether when the server answers 304 Not Modified or
+   * returns a body identical to the last one. Meant for resources that
+   * are polled, such as a running job.
+   */
+  protected void enableResponseCache() {
+    if (this.responseCache == null) {
+      this.responseCache = new PEResponseCache();
+    }
+  }
 
-    // load all certs
-    for (java.security.cert.Certificate cert : CertificateFactory.getInstance("X509")
-    .generateCertificates(pathToPemFile)) {
-      final X509Certificate crt = (X509Certificate) cert;
+  public void clearResponseCache() {
+    if (this.responseCache != null) {
+      this.responseCache.clear();
+    }
+  }
 
-      try {
-        final String alias = crt.getSubjectX500Principal().getName();
-        ks.setCertificateEntry(alias, crt);
-      } catch (KeyStoreException exp) {
-        System.out.println(exp.getMessage());
-      }
+  public final PEResponse send(URI uri, Object body) throws Exception {
+    this.method = "POST";
+    this.body = body;
+    return this.send(uri);
+  }
+
+  public final PEResponse send(URI uri) throws Exception {
+    return execute(uri, null);
+  }
+
+  /**
+   * POSTs the body and hands a successful response to the handler as it
+   * streams in, instead of buffering it into a String first. Error
+   * responses are still buffered and available through getJSON().
+   */
+  public final PEResponse stream(URI uri, Object body, PEResponseHandler<?> handler) throws Exception {
+    this.method = "POST";
+    this.body = body;
+    return this.stream(uri, handler);
+  }
+
+  public final PEResponse stream(URI uri, PEResponseHandler<?> handler) throws Exception {
+    return execute(uri, handler);
+  }
+
+  /**
+   * Handler that deserializes the whole response document into the given type.
+   */
+  protected static <T> PEResponseHandler<T> decode(Gson gson, Type type) {
+    return new Decoder<T>(gson, type);
+  }
+
+  //Decoding has no side effects, so identical calls decoding to the same
+  // type can share one result
+  private static class Decoder<T> implements PEResponseHandler<T> {
+    private final Gson gson;
+    private final Type type;
+
+    Decoder(Gson gson, Type type) {
+      this.gson = gson;
+      this.type = type;
     }
 
-    return ks;
+    @Override public T handle(JsonReader reader) throws Exception {
+      return this.gson.fromJson(reader, this.type);
+    }
+
+    String getKey() {
+      return System.identityHashCode(this.gson) + ":" + this.type.toString();
+    }
   }
 
-  private CloseableHttpClient createHttpClient() throws IOException {
-    java.security.cert.Certificate ca;
-    SSLConnectionSocketFactory sslsf = null;
+  /**
+   * Handler that copies the response document into a PEJsonSpool, spilling
+   * it to a temp file in the directory if it's large. Meant for responses
+   * that are too big to keep parsed but need to be read more than once.
+   */
+  protected static PEResponseHandler<PEJsonSpool> spool(final File directory) {
+    return new PEResponseHandler<PEJsonSpool>() {
+      @Override public PEJsonSpool handle(JsonReader reader) throws Exception {
+        return PEJsonSpool.copy(reader, directory);
+      }
+    };
+  }
 
-    try {
-      CertificateFactory cf = CertificateFactory.getInstance("X.509");
+  /**
+   * Handler that passes each element of a JSON array to the callback as it
+   * is parsed. If field is null the response itself must be the array,
+   * otherwise the array is read from that field of the top level object and
+   * every other field is skipped. The handler returns the element count.
+   */
+  protected static <T> PEResponseHandler<Integer> each(final Gson gson, final String field, final Type elementType,
+    final PEResponseCallback<T> callback) {
 
-      String caString = PuppetEnterpriseConfig.getPuppetMasterCACertificate();
-      InputStream caStream = new ByteArrayInputStream(caString.getBytes(StandardCharsets.UTF_8));
-      ca = cf.generateCertificate(caStream);
+    return new PEResponseHandler<Integer>() {
+      @Override public Integer handle(JsonReader reader) throws Exception {
+        Integer count = 0;
+
+        if (field == null) {
+          return readArray(reader);
+        }
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+          if (reader.nextName().equals(field) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+            count = count + readArray(reader);
+          } else {
+            reader.skipValue();
+          }
+        }
+        reader.endObject();
+
+        return count;
+      }
 
-      // Create a KeyStore containing our trusted CAs
-      String keyStoreType = KeyStore.getDefaultType();
-      KeyStore keyStore = KeyStore.getInstance(keyStoreType);
-      keyStore.load(null, null);
-      keyStore.setCertificateEntry("ca", ca);
+      private Integer readArray(JsonReader reader) throws Exception {
+        Integer count = 0;
 
-      SSLContext sslcontext = SSLContexts.custom().loadTrustMaterial(keyStore).build();
-      sslsf = new SSLConnectionSocketFactory(sslcontext,
-                SSLConnectionSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER);
+        reader.beginArray();
+        while (reader.hasNext()) {
+          T element = gson.fromJson(reader, elementType);
+          callback.onElement(element);
+          count = count + 1;
+        }
+        reader.endArray();
 
-    } catch(CertificateException e) { logger.log(Level.SEVERE, e.getMessage()); }
-      catch(KeyStoreException e) { logger.log(Level.SEVERE, e.getMessage()); }
-      catch(NoSuchAlgorithmException e) { logger.log(Level.SEVERE, e.getMessage()); }
-      catch(KeyManagementException e) { logger.log(Level.SEVERE, e.getMessage()); }
+        return count;
+      }
+    };
+  }
 
-    if (sslsf == null) { System.out.println("sslsf is null"); }
+  public final PEFuture<PEResponse> sendAsync(URI uri, Object body) throws Exception {
+    this.method = "POST";
+    this.body = body;
+    return this.sendAsync(uri);
+  }
 
-    return HttpClients.custom().setSSLSocketFactory(sslsf).build();
+  /**
+   * Sends the request on the shared non-blocking client and returns
+   * immediately. The calling thread is never blocked on the network.
+   * Unlike stream(), the async client receives the whole body before
+   * the handler runs.
+   */
+  public final PEFuture<PEResponse> sendAsync(URI uri) throws Exception {
+    return executeAsync(uri, null);
   }
 
-  public final PEResponse send(URI uri, Object body) throws Exception {
+  public final PEFuture<PEResponse> streamAsync(URI uri, Object body, PEResponseHandler<?> handler) throws Exception {
     this.method = "POST";
     this.body = body;
-    return this.send(uri);
+    return this.streamAsync(uri, handler);
   }
 
-  public final PEResponse send(URI uri) throws Exception {
-    Gson gson = new Gson();
-    String responseString = "";
-    Object responseBody = null;
+  public final PEFuture<PEResponse> streamAsync(URI uri, PEResponseHandler<?> handler) throws Exception {
+    return executeAsync(uri, handler);
+  }
+
+  /**
+   * True when the URI was handed out by the service, such as a job's
+   * nodes link, rather than built from the master's address. Those are
+   * only sent to the host they name, never to a replica.
+   */
+  protected boolean isServiceLink(URI uri) {
+    return false;
+  }
+
+  //The client calls are sent with, the one configured for the Puppet
+  // Enterprise connection
+  PETransport getTransport() {
+    return PETransportType.getConfigured();
+  }
+
+  /**
+   * Whether the request can safely be sent again after a failure. GETs
+   * never change anything; services whose POSTs are read-only queries
+   * override this.
+   */
+  protected boolean isIdempotent() {
+    return this.method.equals("GET");
+  }
+
+  private PETransportRequest createRequest(URI uri, PEResponseHandler<?> handler) throws IOException {
+    Gson gson = PEJson.get();
     String accessToken = getToken();
-    PEResponse peResponse = null;
-    HttpClient httpClient = null;
+    PETransportRequest request = new PETransportRequest(getService(), method, uri);
 
-    try {
-      httpClient = createHttpClient();
-    } catch(IOException e) {
-      logger.log(Level.SEVERE, e.getMessage());
-      throw new Exception(e.getMessage());
+    if (method.equals("POST")) {
+      if (body != null) {
+        request.addHeader("content-type", "application/json");
+        request.addHeader("X-Authentication", accessToken);
+        request.setBody(gson.toJson(this.body).getBytes(StandardCharsets.UTF_8));
+      }
+    } else {
+      request.addHeader("X-Authentication", accessToken);
+    }
+
+    String cacheKey = getCacheKey(uri, handler);
+    PEResponseCache.Entry cached = (cacheKey == null) ? null : this.responseCache.get(cacheKey);
+
+    if (cached != null && cached.etag != null) {
+      request.addHeader("If-None-Match", cached.etag);
+    }
+
+    if (cached != null && cached.lastModified != null) {
+      request.addHeader("If-Modified-Since", cached.lastModified);
+    }
+
+    //Large PuppetDB results and job reports compress very well, so ask for
+    // compressed responses unless it's been turned off for this service
+    if (getService().isCompressionEnabled()) {
+      request.addHeader("Accept-Encoding", "gzip, deflate");
+    }
+
+    return request;
+  }
+
+  //Key for the response cache, or null if the call can't be cached
+  private String getCacheKey(URI uri, PEResponseHandler<?> handler) {
+    if (this.responseCache == null || !method.equals("GET")) {
+      return null;
+    }
+
+    if (handler == null) {
+      return uri.toString();
+    }
+
+    if (handler instanceof Decoder) {
+      return uri.toString() + "\n" + ((Decoder<?>) handler).getKey();
+    }
+
+    return null;
+  }
+
+  private PEResponse readResponse(URI uri, PETransportResponse response, PEResponseHandler<?> handler,
+    PERequestMetrics metrics) throws Exception {
+
+    Integer responseCode = response.getStatusCode();
+    String cacheKey = getCacheKey(uri, handler);
+    PEResponseCache.Entry cached = (cacheKey == null) ? null : this.responseCache.get(cacheKey);
+
+    if (cached != null && responseCode == 304) {
+      metrics.recordUnchanged();
+      return cached.response;
+    }
+
+    InputStream body = response.getContent();
+
+    if (body == null) {
+      return new PEResponse(new Object(), responseCode, "");
+    }
+
+    InputStream content = PEContentStream.open(body, response.getContentEncoding(), getService(), metrics);
+
+    if (cacheKey != null && responseCode >= 200 && responseCode < 300) {
+      return readCacheable(cacheKey, cached, response, content, handler, metrics);
+    }
+
+    return readContent(responseCode, content, handler);
+  }
+
+  /**
+   * Reads a body that can be cached. Bodies small enough to cache are
+   * hashed before they're parsed, so a body that's identical to the
+   * cached one is never parsed again.
+   */
+  private PEResponse readCacheable(String cacheKey, PEResponseCache.Entry cached, PETransportResponse response,
+    InputStream content, PEResponseHandler<?> handler, PERequestMetrics metrics) throws Exception {
+
+    Integer responseCode = response.getStatusCode();
+    ByteArrayOutputStream head = new ByteArrayOutputStream();
+    long length = IOUtils.copyLarge(content, head, 0, PEResponseCache.MAX_ENTRY_BYTES + 1);
+    byte[] buffer = head.toByteArray();
+
+    if (length > PEResponseCache.MAX_ENTRY_BYTES) {
+      //Too large to keep around, parse it as it streams in
+      this.responseCache.remove(cacheKey);
+      return readContent(responseCode, new SequenceInputStream(new ByteArrayInputStream(buffer), content), handler);
+    }
+
+    content.close();
+
+    String hash = DigestUtils.sha256Hex(buffer);
+    String etag = response.getHeader("ETag");
+    String lastModified = response.getHeader("Last-Modified");
+
+    if (cached != null && hash.equals(cached.hash)) {
+      metrics.recordUnchanged();
+      this.responseCache.put(cacheKey, new PEResponseCache.Entry(etag, lastModified, hash, cached.response));
+      return cached.response;
+    }
+
+    PEResponse peResponse = readContent(responseCode, new ByteArrayInputStream(buffer), handler);
+    this.responseCache.put(cacheKey, new PEResponseCache.Entry(etag, lastModified, hash, peResponse));
+
+    return peResponse;
+  }
+
+  private PEResponse readContent(Integer responseCode, InputStream content, PEResponseHandler<?> handler)
+    throws Exception {
+
+    if (handler != null && responseCode >= 200 && responseCode < 300) {
+      JsonReader reader = new JsonReader(new InputStreamReader(content, StandardCharsets.UTF_8));
+
+      try {
+        return new PEResponse(handler.handle(reader), responseCode);
+      } finally {
+        //Closing the reader drains what's left of the body so the
+        // connection can be reused
+        reader.close();
+      }
     }
 
     try {
-      HttpResponse response = null;
+      String json = IOUtils.toString(content, "UTF-8");
+      return new PEResponse(new Object(), responseCode, json);
+    } finally {
+      content.close();
+    }
+  }
+
+  /**
+   * Key identifying calls that would return the same response, or null if
+   * the call can't be shared. Only idempotent calls whose response is
+   * buffered or decoded without side effects are shared, and only between
+   * callers using the same token.
+   */
+  private String getCoalescingKey(URI uri, PEResponseHandler<?> handler) {
+    if (!isIdempotent()) {
+      return null;
+    }
+
+    String handlerKey = "";
+
+    if (handler instanceof Decoder) {
+      handlerKey = ((Decoder<?>) handler).getKey();
+    } else if (handler != null) {
+      return null;
+    }
+
+    String principal = (getToken() == null) ? "" : DigestUtils.sha256Hex(getToken());
+    String content = method.equals("POST") ? PEJson.get().toJson(this.body) : "";
+
+    return method + " " + uri + "\n" + DigestUtils.sha256Hex(content) + "\n" + principal + "\n" + handlerKey;
+  }
+
+  private PEResponse execute(final URI uri, final PEResponseHandler<?> handler) throws Exception {
+    String key = getCoalescingKey(uri, handler);
+
+    if (key == null) {
+      return transmit(uri, handler);
+    }
+
+    PERequestMetrics metrics = PERequestMetrics.forRequest(getService(), method, uri);
+
+    //The call is made on this thread before execute returns, so the
+    // method and body it reads are still the ones the key was built from
+    return PESingleFlight.execute(key, getService().getCoalesceWindow(), metrics, new Callable<PEResponse>() {
+      @Override public PEResponse call() throws Exception {
+        return transmit(uri, handler);
+      }
+    });
+  }
+
+  private PEResponse transmit(URI uri, PEResponseHandler<?> handler) throws Exception {
+    PETransport transport = getTransport();
+    PETransportRequest request = createRequest(uri, handler);
+    PERequestMetrics metrics = PERequestMetrics.forRequest(getService(), request.getMethod(), uri);
+    int maxAttempts = isIdempotent() ? getService().getMaxAttempts() : 1;
+    List<URI> targets = PEEndpoints.route(getService(), uri, isIdempotent() && !isServiceLink(uri));
+    Exception failure = null;
 
-      if (method.equals("POST")) {
-        HttpPost request = new HttpPost(uri.toString());
+    for (int attempt = 1; ; attempt++) {
+      boolean sent = false;
 
-        if (body != null) {
-          request.addHeader("content-type", "application/json");
-          request.addHeader("X-Authentication", accessToken);
-          StringEntity requestJson = new StringEntity(gson.toJson(this.body));
-          request.setEntity(requestJson);
+      //Each attempt works through the targets in order, failing over to
+      // the next one straight away when a target is down
+      for (int index = 0; index < targets.size(); index++) {
+        URI target = targets.get(index);
+        PECircuitBreaker breaker = PECircuitBreaker.forEndpoint(getService(), target);
+        boolean isLast = (attempt >= maxAttempts && !PEEndpoints.isAnyAvailable(getService(), targets, index + 1));
+
+        boolean trial;
+
+        try {
+          trial = breaker.checkAvailable();
+        } catch(PEException e) {
+          failure = e;
+          continue;
+        }
+
+        sent = true;
+        PETransportResponse response = null;
+        Integer responseCode = null;
+        boolean failed = true;
+        long start = metrics.begin();
+
+        try {
+          try {
+            response = transport.execute(request.forURI(target));
+          } catch(IOException e) {
+            //A trial that never reached the endpoint is released instead
+            if (!isLocalFailure(e)) {
+              breaker.recordFailure();
+              trial = false;
+            }
+
+            failure = new PEException(e.getMessage());
+
+            if (isLast) {
+              throw failure;
+            }
+
+            logger.log(Level.WARNING, "Retrying " + request.getMethod() + " " + target + " after: " + e.getMessage());
+            continue;
+          }
+
+          responseCode = response.getStatusCode();
+
+          if (PERetryPolicy.isRetriable(responseCode)) {
+            breaker.recordFailure();
+            trial = false;
+
+            if (!isLast) {
+              logger.log(Level.WARNING, "Retrying " + request.getMethod() + " " + target + " after response code " + responseCode);
+              failed = false;
+              failure = new PEException(target + " responded with code " + responseCode);
+              continue;
+            }
+          } else {
+            breaker.recordSuccess();
+            trial = false;
+            PEEndpoints.recordLatency(target, start);
+          }
+
+          //A failure while reading the body isn't retried, the handler may
+          // already have acted on part of it
+          try {
+            PEResponse peResponse = readResponse(uri, response, handler, metrics);
+            failed = false;
+            return peResponse;
+          } catch(IOException e) {
+            throw new PEException(e.getMessage());
+          }
+        } finally {
+          //Recorded however the attempt ended, so it's never left in flight
+          metrics.finish(start, responseCode, failed);
+
+          //Hand the connection back to the transport
+          if (response != null) {
+            response.close();
+          }
+
+          //Neither recorded, the transport threw something unexpected
+          if (trial) {
+            breaker.releaseTrial();
+          }
         }
-        response = httpClient.execute(request);
       }
 
-      if (method.equals("GET")) {
-        HttpGet request = new HttpGet(uri.toString());
-        request.addHeader("X-Authentication", accessToken);
-        response = httpClient.execute(request);
+      //Every target's circuit breaker is open, or this was the last attempt
+      if (!sent || attempt >= maxAttempts) {
+        throw failure;
       }
 
-      String json = IOUtils.toString(response.getEntity().getContent());
-      Integer responseCode = response.getStatusLine().getStatusCode();
+      PERetryPolicy.sleep(attempt);
+    }
+  }
 
-      peResponse = new PEResponse(new Object(), responseCode, json);
-    } catch(IOException e) {
-      throw new PEException(e.getMessage());
+  private PEFuture<PEResponse> executeAsync(final URI uri, final PEResponseHandler<?> handler) throws Exception {
+    String key = getCoalescingKey(uri, handler);
+
+    if (key == null) {
+      return transmitAsync(uri, handler);
     }
 
-    return peResponse;
+    PERequestMetrics metrics = PERequestMetrics.forRequest(getService(), method, uri);
+
+    return PESingleFlight.executeAsync(key, getService().getCoalesceWindow(), metrics, new Callable<PEFuture<PEResponse>>() {
+      @Override public PEFuture<PEResponse> call() throws Exception {
+        return transmitAsync(uri, handler);
+      }
+    });
+  }
+
+  private PEFuture<PEResponse> transmitAsync(URI uri, PEResponseHandler<?> handler) throws Exception {
+    PEFuture<PEResponse> future = new PEFuture<PEResponse>();
+
+    //Build every attempt from the same method and body, the instance may
+    // be reused for another request before a retry fires
+    new AsyncCall(future, uri, createRequest(uri, handler), handler).send();
+
+    return future;
+  }
+
+  /**
+   * The state of one asynchronous call as it works through its targets
+   * and attempts, the same way transmit() does. Only one attempt is ever
+   * in flight, so the fields are never touched by two threads at once.
+   */
+  private class AsyncCall {
+    private final PEFuture<PEResponse> future;
+    private final URI uri;
+    private final PETransportRequest request;
+    private final PEResponseHandler<?> handler;
+    private final List<URI> targets;
+    private final int maxAttempts;
+    private int attempt = 1;
+    private int index = 0;
+    private boolean sent = false;
+    private Exception failure = null;
+
+    AsyncCall(PEFuture<PEResponse> future, URI uri, PETransportRequest request, PEResponseHandler<?> handler) {
+      this.future = future;
+      this.uri = uri;
+      this.request = request;
+      this.handler = handler;
+      this.targets = PEEndpoints.route(getService(), uri, isIdempotent() && !isServiceLink(uri));
+      this.maxAttempts = isIdempotent() ? getService().getMaxAttempts() : 1;
+    }
+
+    void send() {
+      if (future.isDone()) {
+        return;
+      }
+
+      final URI target = targets.get(index);
+      final PECircuitBreaker breaker = PECircuitBreaker.forEndpoint(getService(), target);
+      final boolean isLast = (attempt >= maxAttempts && !PEEndpoints.isAnyAvailable(getService(), targets, index + 1));
+      final PETransportRequest targetRequest = request.forURI(target);
+      final PERequestMetrics metrics = PERequestMetrics.forRequest(getService(), request.getMethod(), uri);
+
+      final boolean trial;
+
+      try {
+        trial = breaker.checkAvailable();
+      } catch(PEException e) {
+        next(e);
+        return;
+      }
+
+      sent = true;
+      boolean handed = false;
+      final long start = metrics.begin();
+
+      try {
+        future.setUnderlying(getTransport().executeAsync(targetRequest, new FutureCallback<PETransportResponse>() {
+          @Override public void completed(final PETransportResponse response) {
+            final Integer responseCode = response.getStatusCode();
+
+            if (PERetryPolicy.isRetriable(responseCode)) {
+              breaker.recordFailure();
+
+              if (!isLast) {
+                logger.log(Level.WARNING, "Retrying " + request.getMethod() + " " + target + " after response code " + responseCode);
+                closeQuietly(response);
+                metrics.finish(start, responseCode, false);
+                next(new PEException(target + " responded with code " + responseCode));
+                return;
+              }
+            } else {
+              breaker.recordSuccess();
+              PEEndpoints.recordLatency(target, start);
+            }
+
+            //Decode off the transport's threads so parsing a large response
+            // doesn't hold up every other request in flight
+            try {
+              PEAsyncHttpClient.getDecoder().execute(new Runnable() {
+                @Override public void run() {
+                  boolean failed = true;
+
+                  try {
+                    PEResponse peResponse = readResponse(uri, response, handler, metrics);
+                    failed = false;
+                    future.complete(peResponse);
+                  } catch(IOException e) {
+                    future.fail(new PEException(e.getMessage()));
+                  } catch(Exception e) {
+                    future.fail(e);
+                  } finally {
+                    closeQuietly(response);
+                    metrics.finish(start, responseCode, failed);
+                  }
+                }
+              });
+            } catch(RuntimeException e) {
+              //The decoder has shut down, so the response will never be read
+              closeQuietly(response);
+              metrics.finish(start, responseCode, true);
+              future.fail(e);
+            }
+          }
+
+          @Override public void failed(Exception e) {
+            metrics.finish(start, null, true);
+
+            if (!isLocalFailure(e)) {
+              breaker.recordFailure();
+            } else if (trial) {
+              breaker.releaseTrial();
+            }
+
+            if (!isLast) {
+              logger.log(Level.WARNING, "Retrying " + request.getMethod() + " " + target + " after: " + e.getMessage());
+              next(new PEException(e.getMessage()));
+              return;
+            }
+
+            future.fail(new PEException(e.getMessage()));
+          }
+
+          @Override public void cancelled() {
+            metrics.abandon();
+
+            if (trial) {
+              breaker.releaseTrial();
+            }
+
+            future.cancel(false);
+          }
+        }));
+
+        handed = true;
+      } catch(IOException e) {
+        future.fail(new PEException(e.getMessage()));
+      } catch(Exception e) {
+        future.fail(e);
+      } finally {
+        //The transport never took the call, so no callback will record it
+        if (!handed) {
+          metrics.finish(start, null, true);
+
+          if (trial) {
+            breaker.releaseTrial();
+          }
+        }
+      }
+    }
+
+    //Fails over to the next target, or starts the next attempt once every
+    // target has been tried
+    private void next(Exception e) {
+      failure = e;
+
+      if (index + 1 < targets.size()) {
+        index = index + 1;
+        send();
+        return;
+      }
+
+      if (!sent || attempt >= maxAttempts) {
+        future.fail(failure);
+        return;
+      }
+
+      final int retry = attempt;
+      attempt = attempt + 1;
+      index = 0;
+      sent = false;
+
+      PERetryPolicy.schedule(new Runnable() {
+        @Override public void run() {
+          send();
+        }
+      }, retry);
+    }
+  }
+
+  /**
+   * Failures that happened on our side before the call reached the
+   * endpoint, such as waiting too long for a connection from our own pool
+   * or the call being cancelled. They say nothing about whether the
+   * endpoint is up, so they aren't counted against its circuit breaker.
+   */
+  static boolean isLocalFailure(Exception e) {
+    return (e instanceof ConnectionPoolTimeoutException
+      || e instanceof CancellationException
+      //The async pool's lease timeout
+      || e instanceof TimeoutException);
+  }
+
+  private static void closeQuietly(PETransportResponse response) {
+    try {
+      response.close();
+    } catch(IOException e) {
+      logger.log(Level.FINE, "Unable to release a Puppet Enterprise API connection: " + e.getMessage());
+    }
   }
 }
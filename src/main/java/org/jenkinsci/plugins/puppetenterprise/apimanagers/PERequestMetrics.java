@@ -0,0 +1,295 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Pattern;
+
+/**
+ * Latency, status code and response size counters for one PE API
+ * endpoint, e.g. GET /orchestrator/v1/jobs/%s on the orchestrator.
+ *
+ * Every attempt made by PERequest is counted, including retries. Calls
+ * answered by an identical call already in flight are counted separately
+ * as coalesced, since they never reach the network. Paths
+ * are reduced to a template by replacing job ids and other numeric path
+ * segments with %s, so polling a thousand jobs is still one endpoint.
+ */
+public final class PERequestMetrics {
+  //Upper bounds of the latency histogram buckets in milliseconds. Anything
+  // slower lands in a final overflow bucket.
+  private static final long[] LATENCY_BUCKETS = { 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000 };
+  private static final Pattern ID_SEGMENT = Pattern.compile("/\\d+(?=/|$)");
+
+  private static final ConcurrentHashMap<String, PERequestMetrics> metrics = new ConcurrentHashMap<String, PERequestMetrics>();
+
+  private final PEService service;
+  private final String method;
+  private final String endpoint;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong errors = new AtomicLong();
+  private final AtomicLong coalesced = new AtomicLong();
+  private final AtomicLong unchanged = new AtomicLong();
+  private final AtomicLong responseBytes = new AtomicLong();
+  private final AtomicLong totalLatency = new AtomicLong();
+  private final AtomicLong maxLatency = new AtomicLong();
+  private final AtomicLongArray latencies = new AtomicLongArray(LATENCY_BUCKETS.length + 1);
+  private final ConcurrentHashMap<Integer, AtomicLong> statusCodes = new ConcurrentHashMap<Integer, AtomicLong>();
+
+  private PERequestMetrics(PEService service, String method, String endpoint) {
+    this.service = service;
+    this.method = method;
+    this.endpoint = endpoint;
+  }
+
+  public static PERequestMetrics forRequest(PEService service, String method, URI uri) {
+    String endpoint = template(uri.getPath());
+    String key = service.name() + " " + method + " " + endpoint;
+    PERequestMetrics metric = metrics.get(key);
+
+    if (metric == null) {
+      metric = new PERequestMetrics(service, method, endpoint);
+      PERequestMetrics existing = metrics.putIfAbsent(key, metric);
+
+      if (existing != null) {
+        metric = existing;
+      }
+    }
+
+    return metric;
+  }
+
+  /**
+   * Every endpoint seen so far, ordered by service then path.
+   */
+  public static List<PERequestMetrics> getAll() {
+    List<PERequestMetrics> all = new ArrayList<PERequestMetrics>(metrics.values());
+
+    Collections.sort(all, new Comparator<PERequestMetrics>() {
+      @Override public int compare(PERequestMetrics a, PERequestMetrics b) {
+        int order = a.service.compareTo(b.service);
+
+        if (order == 0) {
+          order = a.endpoint.compareTo(b.endpoint);
+        }
+
+        if (order == 0) {
+          order = a.method.compareTo(b.method);
+        }
+
+        return order;
+      }
+    });
+
+    return all;
+  }
+
+  public static int getInFlight(PEService service) {
+    int total = 0;
+
+    for (PERequestMetrics metric : metrics.values()) {
+      if (metric.service == service) {
+        total = total + metric.getInFlight();
+      }
+    }
+
+    return total;
+  }
+
+  static String template(String path) {
+    if (path == null || path.isEmpty()) {
+      return "/";
+    }
+
+    return ID_SEGMENT.matcher(path).replaceAll("/%s");
+  }
+
+  /**
+   * Marks the start of an attempt and returns its start time, to be
+   * handed back to finish() or abandon().
+   */
+  long begin() {
+    this.inFlight.incrementAndGet();
+    return System.nanoTime();
+  }
+
+  /**
+   * Records a finished attempt. The status is null when no response was
+   * received at all, which always counts as an error.
+   */
+  void finish(long start, Integer status, boolean failed) {
+    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    this.inFlight.decrementAndGet();
+    this.requests.incrementAndGet();
+    this.totalLatency.addAndGet(elapsed);
+    this.latencies.incrementAndGet(bucket(elapsed));
+
+    long max = this.maxLatency.get();
+    while (elapsed > max && !this.maxLatency.compareAndSet(max, elapsed)) {
+      max = this.maxLatency.get();
+    }
+
+    if (status != null) {
+      AtomicLong count = this.statusCodes.get(status);
+
+      if (count == null) {
+        count = new AtomicLong();
+        AtomicLong existing = this.statusCodes.putIfAbsent(status, count);
+
+        if (existing != null) {
+          count = existing;
+        }
+      }
+
+      count.incrementAndGet();
+    }
+
+    if (failed || status == null || status >= 400) {
+      this.errors.incrementAndGet();
+    }
+  }
+
+  //An attempt that was cancelled before it finished
+  void abandon() {
+    this.inFlight.decrementAndGet();
+  }
+
+  //A call that was answered by an identical call already in flight
+  void recordCoalesced() {
+    this.coalesced.incrementAndGet();
+  }
+
+  //A response answered from the request's cache, either a 304 or a body
+  // identical to the last one
+  void recordUnchanged() {
+    this.unchanged.incrementAndGet();
+  }
+
+  void recordBytes(long bytes) {
+    this.responseBytes.addAndGet(bytes);
+  }
+
+  private static int bucket(long millis) {
+    for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+      if (millis <= LATENCY_BUCKETS[i]) {
+        return i;
+      }
+    }
+
+    return LATENCY_BUCKETS.length;
+  }
+
+  public PEService getService() {
+    return this.service;
+  }
+
+  public String getMethod() {
+    return this.method;
+  }
+
+  public String getEndpoint() {
+    return this.endpoint;
+  }
+
+  public int getInFlight() {
+    return this.inFlight.get();
+  }
+
+  public long getRequests() {
+    return this.requests.get();
+  }
+
+  public long getErrors() {
+    return this.errors.get();
+  }
+
+  public long getCoalesced() {
+    return this.coalesced.get();
+  }
+
+  public long getUnchanged() {
+    return this.unchanged.get();
+  }
+
+  //Decoded bytes of every response body read from this endpoint
+  public long getResponseBytes() {
+    return this.responseBytes.get();
+  }
+
+  public long getMeanLatency() {
+    long count = getRequests();
+    return (count == 0) ? 0 : this.totalLatency.get() / count;
+  }
+
+  public long getMaxLatency() {
+    return this.maxLatency.get();
+  }
+
+  /**
+   * Upper bound in milliseconds of the histogram bucket the given
+   * percentile (0 to 100) falls in, or the slowest latency seen if it
+   * falls in the overflow bucket.
+   */
+  public long getLatencyPercentile(double percentile) {
+    long total = 0;
+
+    for (int i = 0; i < this.latencies.length(); i++) {
+      total = total + this.latencies.get(i);
+    }
+
+    if (total == 0) {
+      return 0;
+    }
+
+    long rank = (long) Math.ceil(total * percentile / 100);
+    long seen = 0;
+
+    for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+      seen = seen + this.latencies.get(i);
+
+      if (seen >= rank) {
+        return LATENCY_BUCKETS[i];
+      }
+    }
+
+    return getMaxLatency();
+  }
+
+  /**
+   * Count of attempts per histogram bucket, keyed by the bucket's upper
+   * bound in milliseconds ("+Inf" for the overflow bucket).
+   */
+  public Map<String, Long> getLatencyHistogram() {
+    Map<String, Long> histogram = new LinkedHashMap<String, Long>();
+
+    for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+      histogram.put(String.valueOf(LATENCY_BUCKETS[i]), this.latencies.get(i));
+    }
+
+    histogram.put("+Inf", this.latencies.get(LATENCY_BUCKETS.length));
+
+    return histogram;
+  }
+
+  public Map<Integer, Long> getStatusCodes() {
+    Map<Integer, Long> codes = new TreeMap<Integer, Long>();
+
+    for (Map.Entry<Integer, AtomicLong> entry : this.statusCodes.entrySet()) {
+      codes.put(entry.getKey(), entry.getValue().get());
+    }
+
+    return codes;
+  }
+}
@@ -30,4 +30,12 @@ public class PEResponse {
   public Object getResponseBody() {
     return this.body;
   }
+
+  /**
+   * True when the body was streamed through a response handler rather
+   * than buffered as a JSON string.
+   */
+  public Boolean isDecoded() {
+    return (this.json == null);
+  }
 }
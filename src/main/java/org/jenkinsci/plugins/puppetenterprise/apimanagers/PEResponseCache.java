@@ -0,0 +1,57 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Small cache of decoded GET responses kept by a single PERequest, so a
+ * resource that's polled over and over is only parsed again when it has
+ * actually changed.
+ *
+ * Each entry remembers the validators the server sent (ETag and
+ * Last-Modified) for conditional requests, plus a hash of the body for
+ * services that don't send validators. The cache lives and dies with the
+ * request object, so it's dropped along with the build step that polled.
+ */
+final class PEResponseCache {
+  private static final int MAX_ENTRIES = 8;
+
+  //Bodies larger than this are never cached, they're streamed as usual
+  static final int MAX_ENTRY_BYTES = Integer.getInteger(PEResponseCache.class.getName() + ".maxEntryBytes", 1024 * 1024);
+
+  static final class Entry {
+    final String etag;
+    final String lastModified;
+    final String hash;
+    final PEResponse response;
+
+    Entry(String etag, String lastModified, String hash, PEResponse response) {
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.hash = hash;
+      this.response = response;
+    }
+  }
+
+  private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(MAX_ENTRIES, 0.75f, true) {
+    @Override protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+      return size() > MAX_ENTRIES;
+    }
+  };
+
+  synchronized Entry get(String key) {
+    return this.entries.get(key);
+  }
+
+  synchronized void put(String key, Entry entry) {
+    this.entries.put(key, entry);
+  }
+
+  synchronized void remove(String key) {
+    this.entries.remove(key);
+  }
+
+  synchronized void clear() {
+    this.entries.clear();
+  }
+}
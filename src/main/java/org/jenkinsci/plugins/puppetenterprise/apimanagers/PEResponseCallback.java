@@ -0,0 +1,9 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+/**
+ * Receives the elements of a JSON array response one at a time, as they
+ * are parsed, so the whole collection never has to be held in memory.
+ */
+public interface PEResponseCallback<T> {
+  void onElement(T element) throws Exception;
+}
@@ -0,0 +1,13 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Consumes a successful PE API response body straight off the wire.
+ *
+ * The reader is positioned at the start of the response document. Whatever
+ * the handler returns is exposed through {@link PEResponse#getResponseBody()}.
+ */
+public interface PEResponseHandler<T> {
+  T handle(JsonReader reader) throws Exception;
+}
@@ -0,0 +1,54 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when a failed PE API call is worth retrying and how long to
+ * wait before the next attempt.
+ *
+ * Waits grow exponentially with each attempt and are randomized between
+ * half and all of that amount, so many builds that saw the same failure
+ * at the same moment don't all come back at the same moment either.
+ */
+public final class PERetryPolicy {
+  private static final long BASE_DELAY_MILLIS = 500;
+  private static final long MAX_DELAY_MILLIS = 10000;
+
+  private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+    @Override public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "PE API retry scheduler");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  private PERetryPolicy() { }
+
+  /**
+   * Responses that mean the service is briefly unavailable, such as while
+   * pe-puppetserver restarts, rather than that the request was wrong.
+   */
+  public static boolean isRetriable(int responseCode) {
+    return (responseCode == 502 || responseCode == 503 || responseCode == 504);
+  }
+
+  /**
+   * Delay before the given retry, starting at 1 for the first retry.
+   */
+  public static long backoff(int retry) {
+    long cap = Math.min(MAX_DELAY_MILLIS, BASE_DELAY_MILLIS << Math.min(retry - 1, 16));
+    return ThreadLocalRandom.current().nextLong(cap / 2, cap + 1);
+  }
+
+  public static void sleep(int retry) throws InterruptedException {
+    Thread.sleep(backoff(retry));
+  }
+
+  public static void schedule(Runnable attempt, int retry) {
+    scheduler.schedule(attempt, backoff(retry), TimeUnit.MILLISECONDS);
+  }
+}
@@ -0,0 +1,163 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.ConnPoolControl;
+
+/**
+ * The Puppet Enterprise services the plugin talks to, along with the
+ * port each one listens on and how calls to it are tuned.
+ *
+ * Every setting can be overridden with a system property named after the
+ * service, e.g.
+ * org.jenkinsci.plugins.puppetenterprise.apimanagers.PEService.puppetdb.readTimeout
+ * Timeouts and cool downs are given in seconds, the coalesce window in
+ * milliseconds. Replicas are a comma separated list of host or host:port.
+ */
+public enum PEService {
+  ORCHESTRATOR("Orchestrator", 8143, 20, 60, false),
+  //Read-only replicas of PuppetDB can answer queries
+  PUPPETDB("PuppetDB", 8081, 10, 120, true),
+  //Code deploys are made with wait=true, so allow for a full r10k run
+  CODE_MANAGER("Code Manager", 8170, 4, 600, false);
+
+  private static final int CONNECT_TIMEOUT_SECONDS = 10;
+  private static final int MAX_ATTEMPTS = 3;
+  private static final int CIRCUIT_BREAKER_THRESHOLD = 5;
+  private static final int CIRCUIT_BREAKER_COOLDOWN_SECONDS = 30;
+
+  private final String displayName;
+  private final int port;
+  private final int maxConnections;
+  private final int readTimeoutSeconds;
+  private final boolean replicated;
+
+  PEService(String displayName, int port, int maxConnections, int readTimeoutSeconds, boolean replicated) {
+    this.displayName = displayName;
+    this.port = port;
+    this.maxConnections = maxConnections;
+    this.readTimeoutSeconds = readTimeoutSeconds;
+    this.replicated = replicated;
+  }
+
+  public String getDisplayName() {
+    return this.displayName;
+  }
+
+  public int getPort() {
+    return this.port;
+  }
+
+  public int getMaxConnections() {
+    return Integer.getInteger(getPropertyPrefix() + ".maxConnections", this.maxConnections);
+  }
+
+  public int getConnectTimeout() {
+    return Integer.getInteger(getPropertyPrefix() + ".connectTimeout", CONNECT_TIMEOUT_SECONDS) * 1000;
+  }
+
+  public int getReadTimeout() {
+    return Integer.getInteger(getPropertyPrefix() + ".readTimeout", this.readTimeoutSeconds) * 1000;
+  }
+
+  //Total attempts, including the first, for calls that are safe to retry
+  public int getMaxAttempts() {
+    return Math.max(1, Integer.getInteger(getPropertyPrefix() + ".maxAttempts", MAX_ATTEMPTS));
+  }
+
+  public int getCircuitBreakerThreshold() {
+    return Integer.getInteger(getPropertyPrefix() + ".circuitBreakerThreshold", CIRCUIT_BREAKER_THRESHOLD);
+  }
+
+  public long getCircuitBreakerCooldown() {
+    return Integer.getInteger(getPropertyPrefix() + ".circuitBreakerCooldown", CIRCUIT_BREAKER_COOLDOWN_SECONDS) * 1000L;
+  }
+
+  //How long, in milliseconds, a finished read can be handed to identical
+  // calls that come in after it. By default only calls that overlap share
+  public long getCoalesceWindow() {
+    return Long.getLong(getPropertyPrefix() + ".coalesceWindow", 0L);
+  }
+
+  /**
+   * Whether other hosts can serve this service's reads. Only PuppetDB has
+   * replicas; the orchestrator's jobs live on the master alone.
+   */
+  public boolean isReplicated() {
+    return this.replicated;
+  }
+
+  /**
+   * Other hosts serving this service besides the master, such as PuppetDB
+   * replicas. Reads are spread across them, see PEEndpoints. Always empty
+   * for services that aren't replicated.
+   */
+  public List<String> getReplicas() {
+    List<String> replicas = new ArrayList<String>();
+
+    if (!this.replicated) {
+      return replicas;
+    }
+    String property = System.getProperty(getPropertyPrefix() + ".replicas", "");
+
+    for (String replica : property.split(",")) {
+      if (!replica.trim().isEmpty()) {
+        replicas.add(replica.trim());
+      }
+    }
+
+    return replicas;
+  }
+
+  /**
+   * The connection pool route to this service on the given host. It's the
+   * route the clients plan for an https request to it, so limits set for
+   * it apply to the service's connections.
+   */
+  public HttpRoute getRoute(String host) {
+    return new HttpRoute(new HttpHost(host, this.port, "https"), null, true);
+  }
+
+  /**
+   * Sizes a client's connection pool so each service on the master gets
+   * its own share of connections. Shared by the blocking and async
+   * clients.
+   */
+  static void configureRoutes(ConnPoolControl<HttpRoute> pool, String masterUrl) {
+    int total = 0;
+
+    for (PEService service : PEService.values()) {
+      total = total + service.getMaxConnections();
+    }
+
+    pool.setMaxTotal(total);
+    pool.setDefaultMaxPerRoute(ORCHESTRATOR.getMaxConnections());
+
+    if (masterUrl == null || masterUrl.isEmpty()) {
+      return;
+    }
+
+    for (PEService service : PEService.values()) {
+      pool.setMaxPerRoute(service.getRoute(masterUrl), service.getMaxConnections());
+    }
+  }
+
+  public RequestConfig getRequestConfig() {
+    return RequestConfig.custom()
+      .setConnectTimeout(getConnectTimeout())
+      .setConnectionRequestTimeout(getConnectTimeout())
+      .setSocketTimeout(getReadTimeout())
+      .build();
+  }
+
+  public boolean isCompressionEnabled() {
+    return Boolean.parseBoolean(System.getProperty(getPropertyPrefix() + ".compression", "true"));
+  }
+
+  public String getPropertyPrefix() {
+    return PEService.class.getName() + "." + name().toLowerCase();
+  }
+}
@@ -0,0 +1,155 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.http.concurrent.FutureCallback;
+
+/**
+ * Merges identical concurrent PE API calls into a single network call.
+ *
+ * The first caller for a key makes the call. Anyone asking for the same
+ * key while it's in flight, or within the reuse window after it finished,
+ * gets the same response instead of making a call of their own. Failures
+ * are never reused once the call has finished.
+ *
+ * Coalesced responses are shared between every caller, so their bodies
+ * must be treated as read only.
+ */
+final class PESingleFlight {
+  private static final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<String, Flight>();
+
+  private PESingleFlight() { }
+
+  private static class Flight {
+    final PEFuture<PEResponse> future = new PEFuture<PEResponse>();
+    volatile long expires = Long.MAX_VALUE;
+
+    boolean isReusable(long now) {
+      return (now < this.expires);
+    }
+  }
+
+  /**
+   * Returns the response for the key, calling the function only if no
+   * identical call is in flight or reusable.
+   */
+  static PEResponse execute(String key, long reuseMillis, PERequestMetrics metrics, Callable<PEResponse> call)
+    throws Exception {
+
+    Flight flight = join(key);
+
+    if (flight != null) {
+      metrics.recordCoalesced();
+      return flight.future.await();
+    }
+
+    flight = new Flight();
+    Flight existing = flights.putIfAbsent(key, flight);
+
+    if (existing != null) {
+      metrics.recordCoalesced();
+      return existing.future.await();
+    }
+
+    try {
+      PEResponse response = call.call();
+      land(key, flight, reuseMillis);
+      flight.future.complete(response);
+      return response;
+    } catch(Exception e) {
+      flights.remove(key, flight);
+      flight.future.fail(e);
+      throw e;
+    }
+  }
+
+  /**
+   * Asynchronous version of execute(). The function is expected to start
+   * the call and return right away.
+   */
+  static PEFuture<PEResponse> executeAsync(final String key, final long reuseMillis, PERequestMetrics metrics,
+    Callable<PEFuture<PEResponse>> call) {
+
+    Flight flight = join(key);
+
+    if (flight != null) {
+      metrics.recordCoalesced();
+      return flight.future.fork();
+    }
+
+    final Flight leader = new Flight();
+    Flight existing = flights.putIfAbsent(key, leader);
+
+    if (existing != null) {
+      metrics.recordCoalesced();
+      return existing.future.fork();
+    }
+
+    try {
+      call.call().addCallback(new FutureCallback<PEResponse>() {
+        @Override public void completed(PEResponse response) {
+          land(key, leader, reuseMillis);
+          leader.future.complete(response);
+        }
+
+        @Override public void failed(Exception e) {
+          flights.remove(key, leader);
+          leader.future.fail(e);
+        }
+
+        @Override public void cancelled() {
+          flights.remove(key, leader);
+          leader.future.cancel(false);
+        }
+      });
+    } catch(Exception e) {
+      flights.remove(key, leader);
+      leader.future.fail(e);
+    }
+
+    //Hand out a separate future, so one waiter cancelling doesn't cancel
+    // the call for everyone else
+    return leader.future.fork();
+  }
+
+  //Returns the in-flight or reusable call for the key, if there is one
+  private static Flight join(String key) {
+    Flight flight = flights.get(key);
+
+    if (flight == null) {
+      return null;
+    }
+
+    if (flight.isReusable(System.currentTimeMillis())) {
+      return flight;
+    }
+
+    flights.remove(key, flight);
+    return null;
+  }
+
+  private static void land(String key, Flight flight, long reuseMillis) {
+    long now = System.currentTimeMillis();
+
+    if (reuseMillis <= 0) {
+      flights.remove(key, flight);
+    } else {
+      flight.expires = now + reuseMillis;
+      purge(now);
+    }
+  }
+
+  //Finished calls are normally dropped the next time their key is asked
+  // for, but keys that never come up again would be kept forever
+  private static void purge(long now) {
+    Iterator<Map.Entry<String, Flight>> entries = flights.entrySet().iterator();
+
+    while (entries.hasNext()) {
+      if (!entries.next().getValue().isReusable(now)) {
+        entries.remove();
+      }
+    }
+  }
+}
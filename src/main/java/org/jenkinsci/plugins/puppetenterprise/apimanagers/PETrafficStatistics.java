@@ -0,0 +1,61 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.util.EnumMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Running byte counts for responses received from each PE service, used
+ * to see how much response compression is saving.
+ */
+public final class PETrafficStatistics {
+  private static final EnumMap<PEService, PETrafficStatistics> statistics = new EnumMap<PEService, PETrafficStatistics>(PEService.class);
+
+  static {
+    for (PEService service : PEService.values()) {
+      statistics.put(service, new PETrafficStatistics());
+    }
+  }
+
+  private final AtomicLong responses = new AtomicLong();
+  private final AtomicLong compressedResponses = new AtomicLong();
+  private final AtomicLong wireBytes = new AtomicLong();
+  private final AtomicLong decodedBytes = new AtomicLong();
+
+  private PETrafficStatistics() { }
+
+  public static PETrafficStatistics get(PEService service) {
+    return statistics.get(service);
+  }
+
+  void record(boolean compressed, long wire, long decoded) {
+    this.responses.incrementAndGet();
+    this.wireBytes.addAndGet(wire);
+    this.decodedBytes.addAndGet(decoded);
+
+    if (compressed) {
+      this.compressedResponses.incrementAndGet();
+    }
+  }
+
+  public long getResponses() {
+    return this.responses.get();
+  }
+
+  public long getCompressedResponses() {
+    return this.compressedResponses.get();
+  }
+
+  //Bytes actually received over the network
+  public long getWireBytes() {
+    return this.wireBytes.get();
+  }
+
+  //Bytes after decompression, i.e. what would have been sent uncompressed
+  public long getDecodedBytes() {
+    return this.decodedBytes.get();
+  }
+
+  public long getSavedBytes() {
+    return getDecodedBytes() - getWireBytes();
+  }
+}
@@ -0,0 +1,26 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+import org.apache.http.concurrent.FutureCallback;
+
+/**
+ * The HTTP client PE API requests are sent with.
+ *
+ * PERequest builds requests, retries them and reads responses without
+ * knowing which client carried them, so the client can be swapped per
+ * Puppet Enterprise connection.
+ */
+public interface PETransport {
+  /**
+   * Sends the request and returns once the response headers are in. The
+   * caller must close the response.
+   */
+  PETransportResponse execute(PETransportRequest request) throws IOException;
+
+  /**
+   * Sends the request without blocking the caller. The callback is handed
+   * the response once its headers are in and must close it.
+   */
+  Future<?> executeAsync(PETransportRequest request, FutureCallback<PETransportResponse> callback) throws IOException;
+}
@@ -0,0 +1,67 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A PE API request as handed to a PETransport. It holds everything needed
+ * to send the request, so the same instance can be sent again on retry.
+ */
+public final class PETransportRequest {
+  private final PEService service;
+  private final String method;
+  private final URI uri;
+  private final Map<String, String> headers = new LinkedHashMap<String, String>();
+  private byte[] body = null;
+
+  public PETransportRequest(PEService service, String method, URI uri) {
+    this.service = service;
+    this.method = method;
+    this.uri = uri;
+  }
+
+  /**
+   * The same request sent to another URI, e.g. a replica of the service.
+   */
+  public PETransportRequest forURI(URI uri) {
+    if (uri.equals(this.uri)) {
+      return this;
+    }
+
+    PETransportRequest request = new PETransportRequest(this.service, this.method, uri);
+    request.headers.putAll(this.headers);
+    request.body = this.body;
+
+    return request;
+  }
+
+  public void addHeader(String name, String value) {
+    this.headers.put(name, value);
+  }
+
+  public void setBody(byte[] body) {
+    this.body = body;
+  }
+
+  public PEService getService() {
+    return this.service;
+  }
+
+  public String getMethod() {
+    return this.method;
+  }
+
+  public URI getURI() {
+    return this.uri;
+  }
+
+  public Map<String, String> getHeaders() {
+    return this.headers;
+  }
+
+  //Null if the request has no body
+  public byte[] getBody() {
+    return this.body;
+  }
+}
@@ -0,0 +1,22 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A PE API response as returned by a PETransport. Closing it hands the
+ * connection back to the transport, draining any unread body if needed.
+ */
+public interface PETransportResponse extends Closeable {
+  int getStatusCode();
+
+  //The first value of the named response header, or null if it wasn't sent
+  String getHeader(String name);
+
+  //The Content-Encoding header, or null if the body isn't encoded
+  String getContentEncoding();
+
+  //The raw, still encoded body, or null if the response has none
+  InputStream getContent() throws IOException;
+}
@@ -0,0 +1,48 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import org.jenkinsci.plugins.puppetenterprise.models.PuppetEnterpriseConfig;
+
+/**
+ * The HTTP clients PE API requests can be sent with.
+ */
+public enum PETransportType {
+  APACHE("Apache HttpClient"),
+  JDK("JDK HttpsURLConnection");
+
+  private final String displayName;
+
+  PETransportType(String displayName) {
+    this.displayName = displayName;
+  }
+
+  public String getDisplayName() {
+    return this.displayName;
+  }
+
+  public PETransport getTransport() {
+    switch (this) {
+      case JDK:
+        return PEJdkTransport.INSTANCE;
+      default:
+        return PEApacheTransport.INSTANCE;
+    }
+  }
+
+  /**
+   * The transport configured for the Puppet Enterprise connection.
+   */
+  public static PETransport getConfigured() {
+    return forName(PuppetEnterpriseConfig.getTransport()).getTransport();
+  }
+
+  //Unknown or missing names fall back to the Apache client
+  public static PETransportType forName(String name) {
+    for (PETransportType type : values()) {
+      if (type.name().equalsIgnoreCase(name)) {
+        return type;
+      }
+    }
+
+    return APACHE;
+  }
+}
@@ -0,0 +1,181 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLContexts;
+import org.apache.http.conn.ssl.SSLContextBuilder;
+import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
+
+/**
+ * Parsed trust material for a Puppet CA bundle.
+ *
+ * Parsing the PEM bundle, loading a KeyStore and initializing an SSLContext
+ * is expensive, so it's done once per bundle and cached by the bundle's
+ * SHA-256 fingerprint. Every client built for the same CA shares the same
+ * SSLContext, and with it the TLS session cache, so reconnecting to the
+ * master can resume a session instead of doing a full handshake.
+ */
+public final class PETrustMaterial {
+  private static final Logger logger = Logger.getLogger(PETrustMaterial.class.getName());
+  private static final int SESSION_CACHE_SIZE = 100;
+  private static final int SESSION_TIMEOUT_SECONDS = 60 * 60;
+
+  private static final ConcurrentHashMap<String, PETrustMaterial> cache = new ConcurrentHashMap<String, PETrustMaterial>();
+  private static volatile SSLConnectionSocketFactory bootstrapSocketFactory = null;
+
+  private final String fingerprint;
+  private final KeyStore trustStore;
+  private final SSLContext sslContext;
+  private final SSLConnectionSocketFactory socketFactory;
+
+  private PETrustMaterial(String fingerprint, String caBundle) throws IOException, GeneralSecurityException {
+    this.fingerprint = fingerprint;
+    this.trustStore = getTrustStore(new ByteArrayInputStream(caBundle.getBytes(StandardCharsets.UTF_8)));
+    this.sslContext = SSLContexts.custom().loadTrustMaterial(this.trustStore).build();
+
+    SSLSessionContext sessions = this.sslContext.getClientSessionContext();
+    if (sessions != null) {
+      sessions.setSessionCacheSize(SESSION_CACHE_SIZE);
+      sessions.setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+    }
+
+    this.socketFactory = new SSLConnectionSocketFactory(this.sslContext,
+      SSLConnectionSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER);
+  }
+
+  /**
+   * Returns the trust material for the given PEM bundle, parsing it only if
+   * this bundle hasn't been seen before.
+   */
+  public static PETrustMaterial forCertificate(String caBundle) throws IOException, GeneralSecurityException {
+    String fingerprint = fingerprint(caBundle);
+    PETrustMaterial material = cache.get(fingerprint);
+
+    if (material == null) {
+      material = new PETrustMaterial(fingerprint, caBundle);
+      PETrustMaterial existing = cache.putIfAbsent(fingerprint, material);
+
+      if (existing != null) {
+        material = existing;
+      }
+    }
+
+    return material;
+  }
+
+  /**
+   * Drops the cached trust material for a CA bundle that is no longer in use.
+   */
+  public static void evict(String caBundle) {
+    if (caBundle == null || caBundle.isEmpty()) {
+      return;
+    }
+
+    cache.remove(fingerprint(caBundle));
+  }
+
+  /**
+   * Socket factory used to download the CA certificate from a master we
+   * don't have trust material for yet. It accepts the self-signed Puppet CA.
+   */
+  public static SSLConnectionSocketFactory getBootstrapSocketFactory() throws java.security.NoSuchAlgorithmException,
+    java.security.KeyStoreException, java.security.KeyManagementException {
+
+    SSLConnectionSocketFactory factory = bootstrapSocketFactory;
+
+    if (factory == null) {
+      SSLContextBuilder builder = new SSLContextBuilder();
+      builder.loadTrustMaterial(null, new TrustSelfSignedStrategy());
+
+      factory = new SSLConnectionSocketFactory(builder.build());
+      bootstrapSocketFactory = factory;
+    }
+
+    return factory;
+  }
+
+  public static String fingerprint(String caBundle) {
+    return DigestUtils.sha256Hex(caBundle.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * The SHA-256 fingerprint of each certificate in the bundle, written the
+   * way `openssl x509 -fingerprint -sha256` and Puppet print them.
+   */
+  public static List<String> certificateFingerprints(String caBundle) throws GeneralSecurityException {
+    List<String> fingerprints = new ArrayList<String>();
+    InputStream in = new ByteArrayInputStream(caBundle.getBytes(StandardCharsets.UTF_8));
+
+    for (java.security.cert.Certificate cert : CertificateFactory.getInstance("X509").generateCertificates(in)) {
+      String hex = DigestUtils.sha256Hex(cert.getEncoded()).toUpperCase();
+      StringBuilder fingerprint = new StringBuilder();
+
+      for (int i = 0; i < hex.length(); i = i + 2) {
+        if (i > 0) {
+          fingerprint.append(':');
+        }
+
+        fingerprint.append(hex, i, i + 2);
+      }
+
+      fingerprints.add(fingerprint.toString());
+    }
+
+    return fingerprints;
+  }
+
+  public String getFingerprint() {
+    return this.fingerprint;
+  }
+
+  public KeyStore getTrustStore() {
+    return this.trustStore;
+  }
+
+  public SSLContext getSSLContext() {
+    return this.sslContext;
+  }
+
+  public SSLConnectionSocketFactory getSocketFactory() {
+    return this.socketFactory;
+  }
+
+  private static KeyStore getTrustStore(final InputStream pemBundle) throws IOException, GeneralSecurityException {
+    final KeyStore ks = KeyStore.getInstance(KeyStore.getDefaultType());
+    ks.load(null);
+
+    // load all certs
+    for (java.security.cert.Certificate cert : CertificateFactory.getInstance("X509")
+    .generateCertificates(pemBundle)) {
+      final X509Certificate crt = (X509Certificate) cert;
+
+      try {
+        //Named by fingerprint rather than subject, a renewed CA can keep the
+        // old one's subject and would otherwise replace it
+        final String alias = DigestUtils.sha256Hex(crt.getEncoded());
+        ks.setCertificateEntry(alias, crt);
+      } catch (KeyStoreException exp) {
+        logger.log(Level.WARNING, exp.getMessage());
+      }
+    }
+
+    return ks;
+  }
+}
@@ -5,6 +5,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import org.jenkinsci.plugins.puppetenterprise.models.PuppetEnterpriseConfig;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.PERequest;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEService;
 
 public abstract class PuppetCodeManagerV1 extends PERequest {
   private String getCodeManagerAddress() {
@@ -12,7 +13,11 @@ public abstract class PuppetCodeManagerV1 extends PERequest {
   }
 
   private Integer getCodeManagerPort() {
-    return 8170;
+    return PEService.CODE_MANAGER.getPort();
+  }
+
+  @Override protected PEService getService() {
+    return PEService.CODE_MANAGER;
   }
 
   protected URI getURI(String endpoint) throws Exception {
@@ -7,9 +7,9 @@ import java.lang.reflect.Type;
 import com.google.gson.reflect.TypeToken;
 import com.google.gson.internal.LinkedTreeMap;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonSyntaxException;
 import com.google.gson.annotations.SerializedName;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEJson;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEResponse;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.PuppetCodeManagerV1;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetcodemanagerv1.CodeManagerEnvironmentV1;
@@ -21,7 +21,7 @@ public class CodeManagerDeploysV1 extends PuppetCodeManagerV1 {
   private URI uri = null;
   private CodeManagerDeploysRequest request = null;
   private ArrayList<CodeManagerEnvironmentV1> deployedEnvironments = null;
-  Gson gson = new GsonBuilder().setDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'").create();
+  private static final Gson gson = PEJson.get();
 
   public CodeManagerDeploysV1() throws Exception {
     this.uri = getURI("/deploys");
@@ -41,15 +41,19 @@ public class CodeManagerDeploysV1 extends PuppetCodeManagerV1 {
   }
 
   public void execute() throws CodeManagerException, Exception {
-    PEResponse response = send(this.uri, this.request);
+    Type listOfEnvironmentsType = new TypeToken<ArrayList<CodeManagerEnvironmentV1>>(){}.getType();
+    PEResponse response = stream(this.uri, this.request, decode(gson, listOfEnvironmentsType));
 
     if (response.getResponseCode() == 401 || response.getResponseCode() == 403) {
       CodeManagerRBACError error = gson.fromJson(response.getJSON(), CodeManagerRBACError.class);
       throw new CodeManagerException(error.getKind(), error.getMessage(), error.getSubject());
     }
 
-    Type listOfEnvironmentsType = new TypeToken<ArrayList<CodeManagerEnvironmentV1>>(){}.getType();
-    this.deployedEnvironments = gson.fromJson(response.getJSON(), listOfEnvironmentsType);
+    if (response.isDecoded()) {
+      this.deployedEnvironments = (ArrayList<CodeManagerEnvironmentV1>) response.getResponseBody();
+    } else {
+      this.deployedEnvironments = gson.fromJson(response.getJSON(), listOfEnvironmentsType);
+    }
   }
 
   public ArrayList<CodeManagerEnvironmentV1> getErrors() {
@@ -5,6 +5,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import org.jenkinsci.plugins.puppetenterprise.models.PuppetEnterpriseConfig;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.PERequest;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEService;
 
 public abstract class PuppetDBV4 extends PERequest {
   private String getPuppetDBAddress() {
@@ -12,7 +13,16 @@ public abstract class PuppetDBV4 extends PERequest {
   }
 
   private Integer getPuppetDBPort() {
-    return 8081;
+    return PEService.PUPPETDB.getPort();
+  }
+
+  @Override protected PEService getService() {
+    return PEService.PUPPETDB;
+  }
+
+  //PuppetDB queries are POSTed, but never change anything
+  @Override protected boolean isIdempotent() {
+    return true;
   }
 
   protected URI getURI(String endpoint) throws Exception {
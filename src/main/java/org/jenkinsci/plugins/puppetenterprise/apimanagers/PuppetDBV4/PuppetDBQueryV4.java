@@ -7,10 +7,12 @@ import java.lang.reflect.Type;
 import com.google.gson.reflect.TypeToken;
 import com.google.gson.internal.LinkedTreeMap;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonSyntaxException;
 import com.google.gson.annotations.SerializedName;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEFuture;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEResponse;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEJson;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEResponseCallback;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.PuppetDBV4;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetdbv4.PuppetDBException;
 
@@ -21,7 +23,7 @@ public class PuppetDBQueryV4 extends PuppetDBV4 {
   //Note that dates are not parsed out of the returned JSON since we have no models
   // for GSON to know what should be parsed as a Date object.
   // TODO: Figure out a way to enable Date parsing with GSON without models
-  Gson gson = new GsonBuilder().setDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'").create();
+  private static final Gson gson = PEJson.get();
 
   public PuppetDBQueryV4() throws Exception {
     this.uri = getURI("/query/v4");
@@ -45,19 +47,51 @@ public class PuppetDBQueryV4 extends PuppetDBV4 {
   }
 
   public void execute() throws PuppetDBException, Exception {
-    PEResponse response = send(this.uri, this.request);
+    PEResponse response = stream(this.uri, this.request, decode(gson, ArrayList.class));
 
+    this.results = copyResults(checkResponse(response));
+  }
+
+  /**
+   * Runs the query and hands each result to the callback as it's parsed
+   * off the response, without collecting them. Returns the result count.
+   */
+  public Integer execute(PEResponseCallback<Object> callback) throws PuppetDBException, Exception {
+    PEResponse response = stream(this.uri, this.request, each(gson, null, Object.class, callback));
+
+    return (Integer) checkResponse(response).getResponseBody();
+  }
+
+  /**
+   * Non-blocking version of execute(). The returned future completes with
+   * the query results.
+   */
+  public PEFuture<ArrayList> executeAsync() throws Exception {
+    return streamAsync(this.uri, this.request, decode(gson, ArrayList.class)).then(new PEFuture.Function<PEResponse, ArrayList>() {
+      @Override public ArrayList apply(PEResponse response) throws Exception {
+        return copyResults(checkResponse(response));
+      }
+    });
+  }
+
+  //Identical queries running at the same time share one decoded response,
+  // so give each caller a list of its own to work with
+  private static ArrayList copyResults(PEResponse response) {
+    return new ArrayList((ArrayList) response.getResponseBody());
+  }
+
+  private PEResponse checkResponse(PEResponse response) throws PuppetDBException {
     if (response.getResponseCode() == 401 || response.getResponseCode() == 403) {
       PuppetDBRBACError error = gson.fromJson(response.getJSON(), PuppetDBRBACError.class);
       throw new PuppetDBException(error.getKind(), error.getMessage(), error.getSubject());
     }
 
-    if (isSuccessful(response)) {
-      this.results = gson.fromJson(response.getJSON(), ArrayList.class);
-    } else {
+    if (!isSuccessful(response) || !response.isDecoded()) {
       PuppetDBQueryError error = new PuppetDBQueryError(response.getJSON());
       throw new PuppetDBException(error.getKind(), error.getMessage(), error.getDetails());
     }
+
+    return response;
   }
 
   class PuppetDBRBACError {
@@ -5,6 +5,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import org.jenkinsci.plugins.puppetenterprise.models.PuppetEnterpriseConfig;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.PERequest;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEService;
 
 public abstract class PuppetOrchestratorV1 extends PERequest {
   private String getOrchestratorAddress() {
@@ -12,7 +13,11 @@ public abstract class PuppetOrchestratorV1 extends PERequest {
   }
 
   private Integer getOrchestratorPort() {
-    return 8143;
+    return PEService.ORCHESTRATOR.getPort();
+  }
+
+  @Override protected PEService getService() {
+    return PEService.ORCHESTRATOR;
   }
 
   protected URI getURI(String endpoint) throws Exception {
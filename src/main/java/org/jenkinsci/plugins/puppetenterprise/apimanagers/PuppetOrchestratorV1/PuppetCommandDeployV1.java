@@ -7,12 +7,15 @@ import com.google.gson.reflect.TypeToken;
 import com.google.gson.internal.LinkedTreeMap;
 import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEFuture;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.PERequest;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEJson;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEResponse;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.PuppetOrchestratorV1;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetOrchestratorException;
 
 public class PuppetCommandDeployV1 extends PuppetOrchestratorV1 {
+  private static final Gson gson = PEJson.get();
   private URI uri = null;
   private PuppetCommandDeployRequest  request  = null;
   private PuppetCommandDeployResponse response = null;
@@ -65,26 +68,42 @@ public class PuppetCommandDeployV1 extends PuppetOrchestratorV1 {
       return false;
     }
 
-    return true;
+    return peResponse.isDecoded();
   }
 
   public void execute() throws PuppetOrchestratorException, Exception {
-    Gson gson = new Gson();
-    PEResponse peResponse = send(this.uri, request);
+    PEResponse peResponse = stream(this.uri, request, decode(gson, PuppetCommandDeployResponse.class));
 
+    update(peResponse);
+  }
+
+  /**
+   * Non-blocking version of execute(). The returned future completes with
+   * the new job's name once the orchestrator has accepted it.
+   */
+  public PEFuture<String> executeAsync() throws Exception {
+    return streamAsync(this.uri, request, decode(gson, PuppetCommandDeployResponse.class)).then(new PEFuture.Function<PEResponse, String>() {
+      @Override public String apply(PEResponse peResponse) throws Exception {
+        update(peResponse);
+        return getName();
+      }
+    });
+  }
+
+  private synchronized void update(PEResponse peResponse) throws PuppetOrchestratorException {
     if (isSuccessful(peResponse)) {
-      response = gson.fromJson(peResponse.getJSON(), PuppetCommandDeployResponse.class);
+      response = (PuppetCommandDeployResponse) peResponse.getResponseBody();
     } else {
       PuppetCommandDeployError error = gson.fromJson(peResponse.getJSON(), PuppetCommandDeployError.class);
       throw new PuppetOrchestratorException(error.kind, error.msg, error.details);
     }
   }
 
-  public String getID() {
+  public synchronized String getID() {
     return response.getID();
   }
 
-  public String getName() {
+  public synchronized String getName() {
     return response.getName();
   }
 
@@ -0,0 +1,98 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1;
+
+import java.util.*;
+import java.net.URI;
+import com.google.gson.internal.LinkedTreeMap;
+import com.google.gson.Gson;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEFuture;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEJson;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEResponse;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PuppetOrchestratorV1;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetOrchestratorException;
+
+/**
+ * Stops a running job. Nodes that have already started their Puppet run
+ * finish it, nodes that haven't are skipped.
+ */
+public class PuppetCommandStopV1 extends PuppetOrchestratorV1 {
+  private static final Gson gson = PEJson.get();
+  private URI uri = null;
+  private PuppetCommandStopRequest request = null;
+  private PuppetCommandStopResponse response = null;
+
+  public PuppetCommandStopV1() throws Exception {
+    this.uri = getURI("/command/stop");
+    this.request = new PuppetCommandStopRequest();
+    this.response = new PuppetCommandStopResponse();
+  }
+
+  public void setJob(String name) {
+    this.request.job = name;
+  }
+
+  private Boolean isSuccessful(PEResponse peResponse) {
+    Integer code = peResponse.getResponseCode();
+    if (code == 400 || code == 404 || code == 401) {
+      return false;
+    }
+
+    return peResponse.isDecoded();
+  }
+
+  public void execute() throws PuppetOrchestratorException, Exception {
+    PEResponse peResponse = stream(this.uri, request, decode(gson, PuppetCommandStopResponse.class));
+
+    update(peResponse);
+  }
+
+  /**
+   * Non-blocking version of execute(). The returned future completes with
+   * the job's name once the orchestrator has accepted the stop.
+   */
+  public PEFuture<String> executeAsync() throws Exception {
+    return streamAsync(this.uri, request, decode(gson, PuppetCommandStopResponse.class)).then(new PEFuture.Function<PEResponse, String>() {
+      @Override public String apply(PEResponse peResponse) throws Exception {
+        update(peResponse);
+        return getName();
+      }
+    });
+  }
+
+  private synchronized void update(PEResponse peResponse) throws PuppetOrchestratorException {
+    if (isSuccessful(peResponse)) {
+      response = (PuppetCommandStopResponse) peResponse.getResponseBody();
+    } else {
+      PuppetCommandStopError error = gson.fromJson(peResponse.getJSON(), PuppetCommandStopError.class);
+      throw new PuppetOrchestratorException(error.kind, error.msg, error.details);
+    }
+  }
+
+  public synchronized String getName() {
+    return response.job.name;
+  }
+
+  //Number of the job's nodes in each state when it was stopped
+  public synchronized LinkedTreeMap<String, Integer> getNodeStates() {
+    return response.nodes;
+  }
+
+  class PuppetCommandStopRequest {
+    public String job = null;
+  }
+
+  class PuppetCommandStopResponse {
+    class PuppetCommandStopResponseJob {
+      public String id = "";
+      public String name = "";
+    }
+
+    private PuppetCommandStopResponseJob job = new PuppetCommandStopResponseJob();
+    private LinkedTreeMap<String, Integer> nodes = null;
+  }
+
+  class PuppetCommandStopError {
+    public String kind;
+    public String msg;
+    private LinkedTreeMap<String,Object> details;
+  }
+}
@@ -8,6 +8,7 @@ import com.google.gson.internal.LinkedTreeMap;
 import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.PERequest;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEJson;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEResponse;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.PuppetOrchestratorV1;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetOrchestratorException;
@@ -27,21 +28,26 @@ public class PuppetInventoryV1 extends PuppetOrchestratorV1 {
     this.request.nodes = nodes;
   }
 
+  //Inventory lookups are POSTed, but only read connection status
+  @Override protected boolean isIdempotent() {
+    return true;
+  }
+
   private Boolean isSuccessful(PEResponse peResponse) {
     Integer code = peResponse.getResponseCode();
     if (code == 400 || code == 404 || code == 401) {
       return false;
     }
 
-    return true;
+    return peResponse.isDecoded();
   }
 
   public ArrayList<PuppetInventoryItemV1> execute() throws PuppetOrchestratorException, Exception {
-    Gson gson = new Gson();
-    PEResponse peResponse = send(this.uri, request);
+    Gson gson = PEJson.get();
+    PEResponse peResponse = stream(this.uri, request, decode(gson, PuppetInventoryResponse.class));
 
     if (isSuccessful(peResponse)) {
-      response = gson.fromJson(peResponse.getJSON(), PuppetInventoryResponse.class);
+      response = (PuppetInventoryResponse) peResponse.getResponseBody();
     } else {
       PuppetInventoryError error = gson.fromJson(peResponse.getJSON(), PuppetInventoryError.class);
       throw new PuppetOrchestratorException(error.kind, error.msg, error.details);
@@ -0,0 +1,84 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1;
+
+import java.util.*;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEJson;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.puppetnodev1.PuppetNodeItemV1;
+
+public class PuppetJobEventV1 {
+  private static final Gson gson = PEJson.get();
+
+  private String id = null;
+  private String type = null;
+  private String timestamp = null;
+  private String message = null;
+  private PuppetJobEventDetails details = null;
+
+  public String getId() {
+    return this.id;
+  }
+
+  //e.g. node_running, node_finished or job_finished
+  public String getType() {
+    return this.type;
+  }
+
+  public String getMessage() {
+    return this.message;
+  }
+
+  public String getNode() {
+    return (this.details == null) ? null : this.details.node;
+  }
+
+  /**
+   * The node state this event leaves the node in, or null if the event
+   * isn't a node finishing its run.
+   */
+  public String getNodeState() {
+    if (this.type == null || getNode() == null) {
+      return null;
+    }
+
+    switch (this.type) {
+      case "node_finished": return "finished";
+      case "node_failed":   return "failed";
+      case "node_errored":  return "errored";
+      case "node_skipped":  return "skipped";
+      default:              return null;
+    }
+  }
+
+  /**
+   * The node's result in the same form the job's node list returns it, or
+   * null if the event isn't a node finishing its run or doesn't carry the
+   * run's details. The event's detail holds the same fields as a node's
+   * details.
+   */
+  public PuppetNodeItemV1 getNodeResult() {
+    String state = getNodeState();
+
+    if (state == null || this.details.detail == null) {
+      return null;
+    }
+
+    JsonObject item = new JsonObject();
+    item.add("name", new JsonPrimitive(getNode()));
+    item.add("state", new JsonPrimitive(state));
+
+    if (this.timestamp != null) {
+      item.add("timestamp", new JsonPrimitive(this.timestamp));
+    }
+
+    item.add("details", this.details.detail);
+
+    return gson.fromJson(item, PuppetNodeItemV1.class);
+  }
+
+  class PuppetJobEventDetails {
+    public String node = null;
+    public JsonObject detail = null;
+  }
+}
@@ -0,0 +1,93 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1;
+
+import java.util.*;
+import java.net.URI;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.internal.LinkedTreeMap;
+import com.google.gson.Gson;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEJson;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEResponse;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PuppetOrchestratorV1;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetOrchestratorException;
+
+/**
+ * Reads a job's events a batch at a time. Each call to next() returns only
+ * the events that happened since the previous call.
+ */
+public class PuppetJobEventsV1 extends PuppetOrchestratorV1 {
+  private static final Gson gson = PEJson.get();
+  private String endpoint = "/jobs/%s/events";
+  private String name = null;
+  private String start = null;
+  private boolean supported = true;
+
+  public PuppetJobEventsV1(String name) {
+    this.name = name;
+  }
+
+  //Id of the next event to read, null before the first batch
+  public String getStart() {
+    return this.start;
+  }
+
+  //False once the orchestrator has answered that it has no events for
+  // the job, e.g. older versions of PE without the endpoint
+  public boolean isSupported() {
+    return this.supported;
+  }
+
+  private Boolean isSuccessful(PEResponse peResponse) {
+    Integer code = peResponse.getResponseCode();
+    if (code == 400 || code == 404 || code == 401) {
+      return false;
+    }
+
+    return peResponse.isDecoded();
+  }
+
+  public ArrayList<PuppetJobEventV1> next() throws PuppetOrchestratorException, Exception {
+    String path = String.format(this.endpoint, this.name);
+
+    if (this.start != null) {
+      path = path + "?start=" + this.start;
+    }
+
+    PEResponse peResponse = stream(getURI(path), decode(gson, PuppetJobEventsResponse.class));
+
+    if (!isSuccessful(peResponse)) {
+      Integer code = peResponse.getResponseCode();
+
+      if (code == 404 || code == 405 || code == 501) {
+        this.supported = false;
+      }
+
+      PuppetJobEventsError error = gson.fromJson(peResponse.getJSON(), PuppetJobEventsError.class);
+      throw new PuppetOrchestratorException(error.kind, error.msg, error.details);
+    }
+
+    PuppetJobEventsResponse response = (PuppetJobEventsResponse) peResponse.getResponseBody();
+
+    if (response.nextEvents != null && response.nextEvents.event != null) {
+      this.start = response.nextEvents.event;
+    }
+
+    return (response.items == null) ? new ArrayList<PuppetJobEventV1>() : response.items;
+  }
+
+  class PuppetJobEventsResponse {
+    @SerializedName("next-events")
+    public PuppetJobEventsNext nextEvents = null;
+    public ArrayList<PuppetJobEventV1> items = null;
+  }
+
+  class PuppetJobEventsNext {
+    public String id = null;
+    public String event = null;
+  }
+
+  class PuppetJobEventsError {
+    public String kind;
+    public String msg;
+    private LinkedTreeMap<String,Object> details;
+  }
+}
@@ -0,0 +1,195 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1;
+
+import java.util.*;
+import java.net.URI;
+import com.google.gson.internal.LinkedTreeMap;
+import com.google.gson.Gson;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEFuture;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEJson;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEResponse;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PuppetOrchestratorV1;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.puppetnodev1.*;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetOrchestratorException;
+
+/**
+ * The nodes of a job, fetched a page at a time as they're iterated so
+ * large jobs never have to fit in one response.
+ *
+ * execute() fetches the first page. Every page after it is fetched when
+ * the iteration reaches it, with the page size grown while pages come back
+ * quickly and shrunk when they're slow. An iterator only holds the page
+ * it's on, so a pass over a large job never has all of its nodes in memory.
+ * The first page is handed to the first iterator and let go, iterating the
+ * nodes again fetches them again from the start. Orchestrators that don't
+ * page node lists return every node in the first page.
+ */
+public class PuppetJobNodesV1 extends PuppetOrchestratorV1 implements Iterable<PuppetNodeItemV1> {
+  private static final Gson gson = PEJson.get();
+  private static final int MIN_PAGE_SIZE = 50;
+  private static final int MAX_PAGE_SIZE = 5000;
+  private static final int INITIAL_PAGE_SIZE = Integer.getInteger(PuppetJobNodesV1.class.getName() + ".pageSize", 500);
+
+  //Pages are sized to come back in about this long
+  private static final long TARGET_PAGE_MILLIS = 2000;
+
+  private final URI uri;
+  private volatile int pageSize = Math.max(MIN_PAGE_SIZE, Math.min(MAX_PAGE_SIZE, INITIAL_PAGE_SIZE));
+  private volatile Page firstPage = null;
+  private volatile boolean fetched = false;
+
+  public PuppetJobNodesV1(URI uri) {
+    this.uri = uri;
+  }
+
+  //The nodes link comes from the job
+  @Override protected boolean isServiceLink(URI uri) {
+    return true;
+  }
+
+  public void execute() throws PuppetOrchestratorException, Exception {
+    this.firstPage = fetch(0);
+    this.fetched = true;
+  }
+
+  /**
+   * Non-blocking version of execute(). The returned future completes with
+   * this object once the first page has been fetched.
+   */
+  public PEFuture<PuppetJobNodesV1> executeAsync() throws Exception {
+    final int limit = this.pageSize;
+    final long started = System.currentTimeMillis();
+
+    return streamAsync(getPageURI(0, limit), decode(gson, PuppetNodeV1.class)).then(new PEFuture.Function<PEResponse, PuppetJobNodesV1>() {
+      @Override public PuppetJobNodesV1 apply(PEResponse peResponse) throws Exception {
+        firstPage = toPage(peResponse, 0, limit, started);
+        fetched = true;
+        return PuppetJobNodesV1.this;
+      }
+    });
+  }
+
+  @Override public Iterator<PuppetNodeItemV1> iterator() {
+    if (!this.fetched) {
+      throw new IllegalStateException("The job's nodes haven't been fetched yet");
+    }
+
+    return new NodeIterator(takeFirstPage());
+  }
+
+  //The first page fetched by execute() goes to the first iterator only, so
+  // it isn't kept around for as long as this object is
+  private synchronized Page takeFirstPage() {
+    Page page = this.firstPage;
+    this.firstPage = null;
+    return page;
+  }
+
+  private Boolean isSuccessful(PEResponse peResponse) {
+    Integer code = peResponse.getResponseCode();
+    if (code == 400 || code == 404 || code == 401) {
+      return false;
+    }
+
+    return peResponse.isDecoded();
+  }
+
+  private URI getPageURI(int offset, int limit) throws Exception {
+    String separator = (this.uri.getQuery() == null) ? "?" : "&";
+    return new URI(this.uri.toString() + separator + "limit=" + limit + "&offset=" + offset);
+  }
+
+  private Page fetch(int offset) throws PuppetOrchestratorException, Exception {
+    int limit = this.pageSize;
+    long started = System.currentTimeMillis();
+    PEResponse peResponse = stream(getPageURI(offset, limit), decode(gson, PuppetNodeV1.class));
+
+    return toPage(peResponse, offset, limit, started);
+  }
+
+  private Page toPage(PEResponse peResponse, int offset, int limit, long started) throws PuppetOrchestratorException {
+    if (!isSuccessful(peResponse)) {
+      PuppetJobNodesError error = gson.fromJson(peResponse.getJSON(), PuppetJobNodesError.class);
+      throw new PuppetOrchestratorException(error.kind, error.msg, error.details);
+    }
+
+    PuppetNodeV1 body = (PuppetNodeV1) peResponse.getResponseBody();
+    ArrayList<PuppetNodeItemV1> items = (body.getItems() == null) ? new ArrayList<PuppetNodeItemV1>() : body.getItems();
+
+    tune(limit, items.size(), System.currentTimeMillis() - started);
+
+    PuppetNodeV1.Pagination pagination = body.getPagination();
+    boolean last = (pagination == null
+      || items.size() < limit
+      || (pagination.getTotal() != null && offset + items.size() >= pagination.getTotal()));
+
+    return new Page(items, offset + items.size(), last);
+  }
+
+  private void tune(int limit, int returned, long elapsed) {
+    if (elapsed > TARGET_PAGE_MILLIS) {
+      this.pageSize = Math.max(MIN_PAGE_SIZE, limit / 2);
+    } else if (returned == limit && elapsed < TARGET_PAGE_MILLIS / 2) {
+      this.pageSize = Math.min(MAX_PAGE_SIZE, limit * 2);
+    }
+  }
+
+  private static class Page {
+    final ArrayList<PuppetNodeItemV1> items;
+    final int nextOffset;
+    final boolean last;
+
+    Page(ArrayList<PuppetNodeItemV1> items, int nextOffset, boolean last) {
+      this.items = items;
+      this.nextOffset = nextOffset;
+      this.last = last;
+    }
+  }
+
+  //Only holds the page it's on, the next one is fetched by its offset
+  private class NodeIterator implements Iterator<PuppetNodeItemV1> {
+    private Page page;
+    private int index = 0;
+
+    //Starts from the first page, fetching it again if it's been handed out
+    NodeIterator(Page page) {
+      this.page = page;
+    }
+
+    @Override public boolean hasNext() {
+      //Skip past empty pages until there's a node or no pages are left
+      while (this.page == null || this.index >= this.page.items.size()) {
+        if (this.page != null && this.page.last) {
+          return false;
+        }
+
+        try {
+          this.page = fetch((this.page == null) ? 0 : this.page.nextOffset);
+        } catch(Exception e) {
+          throw new IllegalStateException("Unable to fetch the job's nodes: " + e.getMessage(), e);
+        }
+
+        this.index = 0;
+      }
+
+      return true;
+    }
+
+    @Override public PuppetNodeItemV1 next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+
+      return this.page.items.get(this.index++);
+    }
+
+    @Override public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  class PuppetJobNodesError {
+    public String kind;
+    public String msg;
+    public LinkedTreeMap<String,Object> details;
+  }
+}
@@ -3,9 +3,30 @@ package org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.
 import java.io.*;
 import java.util.*;
 import java.util.Date;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
 import com.google.gson.internal.LinkedTreeMap;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEJson;
 
 public class PuppetJobReportNodeEventV1 implements Serializable {
+  //Reports carry an event for every resource on every node, by far the
+  // most numerous objects we parse, so skip reflection and read directly
+  public static final TypeAdapterFactory ADAPTER_FACTORY = new TypeAdapterFactory() {
+    @SuppressWarnings("unchecked")
+    @Override public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+      if (type.getRawType() != PuppetJobReportNodeEventV1.class) {
+        return null;
+      }
+
+      return (TypeAdapter<T>) new Adapter(gson);
+    }
+  };
+
   private Object new_value = null;
   private String report = null;
   private Boolean corrective_change = null;
@@ -137,4 +158,94 @@ public class PuppetJobReportNodeEventV1 implements Serializable {
   public String getMessage() {
     return this.message;
   }
+
+  private static class Adapter extends TypeAdapter<PuppetJobReportNodeEventV1> {
+    private final TypeAdapter<Date> dates;
+    private final TypeAdapter<Object> values;
+    private final TypeAdapter<ArrayList<String>> paths;
+
+    Adapter(Gson gson) {
+      this.dates = gson.getAdapter(Date.class);
+      this.values = gson.getAdapter(Object.class);
+      this.paths = gson.getAdapter(new TypeToken<ArrayList<String>>(){});
+    }
+
+    @Override public PuppetJobReportNodeEventV1 read(JsonReader reader) throws IOException {
+      if (reader.peek() == JsonToken.NULL) {
+        reader.nextNull();
+        return null;
+      }
+
+      PuppetJobReportNodeEventV1 event = new PuppetJobReportNodeEventV1();
+
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+
+        switch (name) {
+          case "new_value":             event.new_value = this.values.read(reader); break;
+          case "report":                event.report = PEJson.nextString(reader); break;
+          case "corrective_change":     event.corrective_change = PEJson.nextBoolean(reader); break;
+          case "run_start_time":        event.run_start_time = this.dates.read(reader); break;
+          case "property":              event.property = PEJson.nextString(reader); break;
+          case "file":                  event.file = PEJson.nextString(reader); break;
+          case "old_value":             event.old_value = this.values.read(reader); break;
+          case "containing_class":      event.containing_class = PEJson.nextString(reader); break;
+          case "line":                  event.line = PEJson.nextString(reader); break;
+          case "resource_type":         event.resource_type = PEJson.nextString(reader); break;
+          case "status":                event.status = PEJson.nextString(reader); break;
+          case "configuration_version": event.configuration_version = PEJson.nextString(reader); break;
+          case "resource_title":        event.resource_title = PEJson.nextString(reader); break;
+          case "environment":           event.environment = PEJson.nextString(reader); break;
+          case "timestamp":             event.timestamp = this.dates.read(reader); break;
+          case "run_end_time":          event.run_end_time = this.dates.read(reader); break;
+          case "report_receive_time":   event.report_receive_time = this.dates.read(reader); break;
+          case "containment_path":      event.containment_path = this.paths.read(reader); break;
+          case "certname":              event.certname = PEJson.nextString(reader); break;
+          case "message":               event.message = PEJson.nextString(reader); break;
+          default:                      reader.skipValue();
+        }
+      }
+      reader.endObject();
+
+      return event;
+    }
+
+    @Override public void write(JsonWriter writer, PuppetJobReportNodeEventV1 event) throws IOException {
+      if (event == null) {
+        writer.nullValue();
+        return;
+      }
+
+      writer.beginObject();
+      writer.name("new_value");
+      this.values.write(writer, event.new_value);
+      writer.name("report").value(event.report);
+      writer.name("corrective_change").value(event.corrective_change);
+      writer.name("run_start_time");
+      this.dates.write(writer, event.run_start_time);
+      writer.name("property").value(event.property);
+      writer.name("file").value(event.file);
+      writer.name("old_value");
+      this.values.write(writer, event.old_value);
+      writer.name("containing_class").value(event.containing_class);
+      writer.name("line").value(event.line);
+      writer.name("resource_type").value(event.resource_type);
+      writer.name("status").value(event.status);
+      writer.name("configuration_version").value(event.configuration_version);
+      writer.name("resource_title").value(event.resource_title);
+      writer.name("environment").value(event.environment);
+      writer.name("timestamp");
+      this.dates.write(writer, event.timestamp);
+      writer.name("run_end_time");
+      this.dates.write(writer, event.run_end_time);
+      writer.name("report_receive_time");
+      this.dates.write(writer, event.report_receive_time);
+      writer.name("containment_path");
+      this.paths.write(writer, event.containment_path);
+      writer.name("certname").value(event.certname);
+      writer.name("message").value(event.message);
+      writer.endObject();
+    }
+  }
 }
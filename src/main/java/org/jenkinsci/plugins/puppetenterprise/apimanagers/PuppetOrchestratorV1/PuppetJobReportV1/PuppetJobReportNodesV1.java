@@ -0,0 +1,103 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.puppetjobreportv1;
+
+import java.io.*;
+import java.util.*;
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEJson;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEJsonSpool;
+
+/**
+ * The node reports of a job, read from a spooled copy of the report
+ * document. Each pass over the reports parses them again one node at a
+ * time, so only the node being looked at is ever held in memory.
+ */
+public class PuppetJobReportNodesV1 implements Iterable<PuppetJobReportNodeV1>, Closeable {
+  private static final Gson gson = PEJson.get();
+  private final PEJsonSpool spool;
+
+  public PuppetJobReportNodesV1(PEJsonSpool spool) {
+    this.spool = spool;
+  }
+
+  @Override public Iterator<PuppetJobReportNodeV1> iterator() {
+    try {
+      return new NodeIterator(this.spool.open());
+    } catch(IOException e) {
+      throw new JsonIOException(e);
+    }
+  }
+
+  @Override public void close() {
+    this.spool.close();
+  }
+
+  private static class NodeIterator implements Iterator<PuppetJobReportNodeV1> {
+    private JsonReader reader;
+
+    NodeIterator(JsonReader reader) throws IOException {
+      this.reader = reader;
+
+      //Move to the first element of the report array
+      boolean found = false;
+
+      try {
+        reader.beginObject();
+        while (!found && reader.hasNext()) {
+          if (reader.nextName().equals("report") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+            reader.beginArray();
+            found = true;
+          } else {
+            reader.skipValue();
+          }
+        }
+      } finally {
+        if (!found) {
+          finish();
+        }
+      }
+    }
+
+    @Override public boolean hasNext() {
+      if (this.reader == null) {
+        return false;
+      }
+
+      try {
+        if (this.reader.hasNext()) {
+          return true;
+        }
+      } catch(IOException e) {
+        finish();
+        throw new JsonIOException(e);
+      }
+
+      finish();
+      return false;
+    }
+
+    @Override public PuppetJobReportNodeV1 next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+
+      return gson.fromJson(this.reader, PuppetJobReportNodeV1.class);
+    }
+
+    @Override public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    private void finish() {
+      try {
+        this.reader.close();
+      } catch(IOException e) {
+        //Nothing left to read
+      }
+
+      this.reader = null;
+    }
+  }
+}
@@ -7,8 +7,10 @@ import java.lang.reflect.Type;
 import com.google.gson.reflect.TypeToken;
 import com.google.gson.internal.LinkedTreeMap;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonSyntaxException;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEFuture;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEJson;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEJsonSpool;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEResponse;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.PuppetOrchestratorV1;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.puppetjobreportv1.*;
@@ -20,19 +22,20 @@ public class PuppetJobsIDV1 extends PuppetOrchestratorV1 {
   private PuppetJobsIDResponse response = null;
   private String name = "";
   private String state = "";
-  private ArrayList<PuppetNodeItemV1> nodes = new ArrayList();
-  private ArrayList<PuppetJobReportNodeV1> report = new ArrayList();
   private Integer nodeCount = null;
+  private LinkedTreeMap<String, Integer> nodeStates = null;
   private String environment = "";
-  Gson gson = new GsonBuilder().setDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'").create();
+  private static final Gson gson = PEJson.get();
 
   public PuppetJobsIDV1() {
     this.response = new PuppetJobsIDResponse();
+    enableResponseCache();
   }
 
   public PuppetJobsIDV1(String name) {
     this.name = name;
     this.response = new PuppetJobsIDResponse();
+    enableResponseCache();
   }
 
   public String getState(){
@@ -51,47 +54,101 @@ public class PuppetJobsIDV1 extends PuppetOrchestratorV1 {
     return this.name;
   }
 
-  public ArrayList<PuppetJobReportNodeV1> getReport() throws URISyntaxException, Exception {
-    URI uri = response.getReportURL().toURI();
-    PEResponse peResponse = send(uri);
-
-    if (isSuccessful(peResponse)) {
-      report = gson.fromJson(peResponse.getJSON(), PuppetJobReportV1.class).getReport();
-    } else {
-      PuppetJobsIDError error = gson.fromJson(peResponse.getJSON(), PuppetJobsIDError.class);
-      throw new PuppetOrchestratorException(error.kind, error.msg, error.details);
-    }
+  //The report link comes from the job, only the job itself is looked up
+  // at the master's address
+  @Override protected boolean isServiceLink(URI uri) {
+    return !uri.getPath().endsWith(String.format(this.endpoint, this.name));
+  }
 
-    return report;
+  public PuppetJobReportNodesV1 getReport() throws URISyntaxException, Exception {
+    return getReport(null);
   }
 
-  public ArrayList<PuppetNodeItemV1> getNodes() throws URISyntaxException, Exception {
-    URI uri = response.getNodesURL().toURI();
-    PEResponse peResponse = send(uri);
+  /**
+   * Fetches the job report, spooling it to a temp file in the directory if
+   * it's large. The caller should close the result once it's done with it.
+   * There's deliberately no async version, the async client buffers the
+   * whole response in memory before it can be spooled.
+   */
+  public PuppetJobReportNodesV1 getReport(File spoolDirectory) throws URISyntaxException, Exception {
+    URI uri = response.getReportURL().toURI();
+    PEResponse peResponse = stream(uri, spool(spoolDirectory));
+
+    return toReport(peResponse);
+  }
 
+  private PuppetJobReportNodesV1 toReport(PEResponse peResponse) throws PuppetOrchestratorException {
     if (isSuccessful(peResponse)) {
-      nodes = gson.fromJson(peResponse.getJSON(), PuppetNodeV1.class).getItems();
+      return new PuppetJobReportNodesV1((PEJsonSpool) peResponse.getResponseBody());
     } else {
       PuppetJobsIDError error = gson.fromJson(peResponse.getJSON(), PuppetJobsIDError.class);
       throw new PuppetOrchestratorException(error.kind, error.msg, error.details);
     }
+  }
+
+  /**
+   * Fetches the first page of the job's nodes. The rest are fetched as the
+   * result is iterated.
+   */
+  public PuppetJobNodesV1 getNodes() throws URISyntaxException, Exception {
+    PuppetJobNodesV1 nodes = new PuppetJobNodesV1(response.getNodesURL().toURI());
+    nodes.setToken(getToken());
+    nodes.execute();
 
     return nodes;
   }
 
+  /**
+   * Non-blocking version of getNodes().
+   */
+  public PEFuture<PuppetJobNodesV1> getNodesAsync() throws URISyntaxException, Exception {
+    PuppetJobNodesV1 nodes = new PuppetJobNodesV1(response.getNodesURL().toURI());
+    nodes.setToken(getToken());
+
+    return nodes.executeAsync();
+  }
+
   public Integer getNodeCount() {
     return this.nodeCount;
   }
 
+  /**
+   * Number of nodes in each state, e.g. running or finished, or null if the
+   * orchestrator doesn't report it. Only newer versions of PE do.
+   */
+  public LinkedTreeMap<String, Integer> getNodeStates() {
+    return this.nodeStates;
+  }
+
   public void execute() throws PuppetOrchestratorException, Exception {
     URI fullURI = getURI(String.format(this.endpoint, this.name));
-    PEResponse peResponse = send(fullURI);
+    PEResponse peResponse = stream(fullURI, decode(gson, PuppetJobsIDResponse.class));
+
+    update(peResponse);
+  }
 
+  /**
+   * Non-blocking version of execute(). The returned future completes with
+   * the job's state once the job details have been fetched.
+   */
+  public PEFuture<String> executeAsync() throws Exception {
+    URI fullURI = getURI(String.format(this.endpoint, this.name));
+
+    return streamAsync(fullURI, decode(gson, PuppetJobsIDResponse.class)).then(new PEFuture.Function<PEResponse, String>() {
+      @Override public String apply(PEResponse peResponse) throws Exception {
+        update(peResponse);
+        return getState();
+      }
+    });
+  }
+
+  private synchronized void update(PEResponse peResponse) throws PuppetOrchestratorException {
     if (isSuccessful(peResponse)) {
-      response = gson.fromJson(peResponse.getJSON(), PuppetJobsIDResponse.class);
+      response = (PuppetJobsIDResponse) peResponse.getResponseBody();
 
       this.state = response.state;
       this.nodeCount = response.node_count;
+      this.nodeStates = response.node_states;
     } else {
       PuppetJobsIDError error = gson.fromJson(peResponse.getJSON(), PuppetJobsIDError.class);
       throw new PuppetOrchestratorException(error.kind, error.msg, error.details);
@@ -104,7 +161,7 @@ public class PuppetJobsIDV1 extends PuppetOrchestratorV1 {
       return false;
     }
 
-    return true;
+    return response.isDecoded();
   }
 
   class PuppetJobsIDResponse {
@@ -114,28 +171,13 @@ public class PuppetJobsIDV1 extends PuppetOrchestratorV1 {
     public String name = "";
     public PuppetJobsIDResponseOptions options = new PuppetJobsIDResponseOptions();
     public Integer node_count = null;
-    public PuppetJobsIDResponseOwner owner = new PuppetJobsIDResponseOwner();
+    public LinkedTreeMap<String, Integer> node_states = null;
     public Date timestamp = null;
     public ArrayList<PuppetJobsIDResponseStatus> status = new ArrayList();
     private LinkedTreeMap<String,String> environment = new LinkedTreeMap();
     private LinkedTreeMap<String,URL> nodes = new LinkedTreeMap();
     private LinkedTreeMap<String,URL> report = new LinkedTreeMap();
 
-    class PuppetJobsIDResponseOwner {
-      public String email = null;
-      public Boolean is_revoked = null;
-      public Date last_login = null;
-      public Boolean is_remote = null;
-      public String login = null;
-      public ArrayList<Integer> inhereted_role_ids = null;
-      public ArrayList<String> group_ids = null;
-      public Boolean is_superuser = null;
-      public String id = null;
-      public ArrayList<Integer> role_ids = null;
-      public String display_name = null;
-      public Boolean is_group = null;
-    }
-
     class PuppetJobsIDResponseOptions {
       public Integer concurrency = null;
       public Boolean noop = null;
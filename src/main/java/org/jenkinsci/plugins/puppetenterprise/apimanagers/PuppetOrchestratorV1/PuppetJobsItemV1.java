@@ -0,0 +1,33 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1;
+
+import java.util.*;
+import com.google.gson.internal.LinkedTreeMap;
+
+public class PuppetJobsItemV1 {
+  private String name = null;
+  private String state = null;
+  private Integer node_count = null;
+  private LinkedTreeMap<String, Integer> node_states = null;
+  private Date timestamp = null;
+
+  public String getName() {
+    return this.name;
+  }
+
+  public String getState() {
+    return this.state;
+  }
+
+  public Integer getNodeCount() {
+    return this.node_count;
+  }
+
+  //Only reported by newer versions of PE
+  public LinkedTreeMap<String, Integer> getNodeStates() {
+    return this.node_states;
+  }
+
+  public Date getTimestamp() {
+    return this.timestamp;
+  }
+}
@@ -0,0 +1,94 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1;
+
+import java.util.*;
+import java.net.URI;
+import com.google.gson.internal.LinkedTreeMap;
+import com.google.gson.Gson;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEFuture;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEJson;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEResponse;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PuppetOrchestratorV1;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetOrchestratorException;
+
+/**
+ * Lists the jobs known to the orchestrator, most recent first.
+ */
+public class PuppetJobsV1 extends PuppetOrchestratorV1 {
+  private static final Gson gson = PEJson.get();
+  private Integer limit = null;
+  private PuppetJobsResponse response = new PuppetJobsResponse();
+
+  //Only list the given number of most recent jobs
+  public void setLimit(Integer limit) {
+    this.limit = limit;
+  }
+
+  //Asked for newest first explicitly, otherwise the limit could cut off
+  // the newest jobs instead of the oldest
+  private String getEndpoint() {
+    String endpoint = "/jobs?order_by=timestamp&order=desc";
+    return (this.limit == null) ? endpoint : endpoint + "&limit=" + this.limit;
+  }
+
+  private Boolean isSuccessful(PEResponse peResponse) {
+    Integer code = peResponse.getResponseCode();
+    if (code == 400 || code == 404 || code == 401) {
+      return false;
+    }
+
+    return peResponse.isDecoded();
+  }
+
+  public ArrayList<PuppetJobsItemV1> execute() throws PuppetOrchestratorException, Exception {
+    URI uri = getURI(getEndpoint());
+    PEResponse peResponse = stream(uri, decode(gson, PuppetJobsResponse.class));
+
+    return update(peResponse);
+  }
+
+  /**
+   * Non-blocking version of execute().
+   */
+  public PEFuture<ArrayList<PuppetJobsItemV1>> executeAsync() throws Exception {
+    URI uri = getURI(getEndpoint());
+
+    return streamAsync(uri, decode(gson, PuppetJobsResponse.class)).then(new PEFuture.Function<PEResponse, ArrayList<PuppetJobsItemV1>>() {
+      @Override public ArrayList<PuppetJobsItemV1> apply(PEResponse peResponse) throws Exception {
+        return update(peResponse);
+      }
+    });
+  }
+
+  private synchronized ArrayList<PuppetJobsItemV1> update(PEResponse peResponse) throws PuppetOrchestratorException {
+    if (isSuccessful(peResponse)) {
+      response = (PuppetJobsResponse) peResponse.getResponseBody();
+    } else {
+      PuppetJobsError error = gson.fromJson(peResponse.getJSON(), PuppetJobsError.class);
+      throw new PuppetOrchestratorException(error.kind, error.msg, error.details);
+    }
+
+    return response.getItems();
+  }
+
+  public ArrayList<PuppetJobsItemV1> getItems() {
+    return response.getItems();
+  }
+
+  class PuppetJobsResponse {
+    private ArrayList<PuppetJobsItemV1> items = null;
+
+    private ArrayList<PuppetJobsItemV1> getItems() {
+      if (this.items == null) {
+        return new ArrayList();
+      }
+
+      return this.items;
+    }
+  }
+
+  class PuppetJobsError {
+    public String kind;
+    public String msg;
+    private LinkedTreeMap<String,Object> details;
+  }
+}
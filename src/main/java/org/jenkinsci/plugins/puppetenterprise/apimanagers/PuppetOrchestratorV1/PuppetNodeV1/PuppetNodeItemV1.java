@@ -1,10 +1,32 @@
 package org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.puppetnodev1;
 
 import com.google.gson.annotations.SerializedName;
+import java.io.IOException;
 import java.net.*;
 import java.util.Date;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEJson;
 
 public class PuppetNodeItemV1 {
+  //Job node lists are fetched on every poll of a running job, so skip
+  // reflection and read the fields directly
+  public static final TypeAdapterFactory ADAPTER_FACTORY = new TypeAdapterFactory() {
+    @SuppressWarnings("unchecked")
+    @Override public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+      if (type.getRawType() != PuppetNodeItemV1.class) {
+        return null;
+      }
+
+      return (TypeAdapter<T>) new Adapter(gson);
+    }
+  };
+
   private Date timestamp = null;
   private String state = "";
   private String transaction_uuid = "";
@@ -79,4 +101,101 @@ public class PuppetNodeItemV1 {
       return this.hash;
     }
   }
+
+  private static class Adapter extends TypeAdapter<PuppetNodeItemV1> {
+    private final TypeAdapter<Date> dates;
+    private final TypeAdapter<URL> urls;
+    private final TypeAdapter<PuppetNodeMetricsV1> metrics;
+
+    Adapter(Gson gson) {
+      this.dates = gson.getAdapter(Date.class);
+      this.urls = gson.getAdapter(URL.class);
+      this.metrics = gson.getAdapter(PuppetNodeMetricsV1.class);
+    }
+
+    @Override public PuppetNodeItemV1 read(JsonReader reader) throws IOException {
+      if (reader.peek() == JsonToken.NULL) {
+        reader.nextNull();
+        return null;
+      }
+
+      PuppetNodeItemV1 item = new PuppetNodeItemV1();
+
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+
+        switch (name) {
+          case "timestamp":        item.timestamp = this.dates.read(reader); break;
+          case "state":            item.state = PEJson.nextString(reader); break;
+          case "transaction_uuid": item.transaction_uuid = PEJson.nextString(reader); break;
+          case "name":             item.name = PEJson.nextString(reader); break;
+          case "details":          item.details = readDetails(reader, item); break;
+          case "message":          item.message = PEJson.nextString(reader); break;
+          default:                 reader.skipValue();
+        }
+      }
+      reader.endObject();
+
+      return item;
+    }
+
+    private PuppetNodeItemDetails readDetails(JsonReader reader, PuppetNodeItemV1 item) throws IOException {
+      if (reader.peek() == JsonToken.NULL) {
+        reader.nextNull();
+        return null;
+      }
+
+      PuppetNodeItemDetails details = item.new PuppetNodeItemDetails();
+
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+
+        switch (name) {
+          case "report-url":  details.reportUrl = this.urls.read(reader); break;
+          case "metrics":     details.metrics = this.metrics.read(reader); break;
+          case "message":     details.message = PEJson.nextString(reader); break;
+          case "hash":        details.hash = PEJson.nextString(reader); break;
+          case "environment": details.environment = PEJson.nextString(reader); break;
+          default:            reader.skipValue();
+        }
+      }
+      reader.endObject();
+
+      return details;
+    }
+
+    @Override public void write(JsonWriter writer, PuppetNodeItemV1 item) throws IOException {
+      if (item == null) {
+        writer.nullValue();
+        return;
+      }
+
+      writer.beginObject();
+      writer.name("timestamp");
+      this.dates.write(writer, item.timestamp);
+      writer.name("state").value(item.state);
+      writer.name("transaction_uuid").value(item.transaction_uuid);
+      writer.name("name").value(item.name);
+      writer.name("details");
+
+      if (item.details == null) {
+        writer.nullValue();
+      } else {
+        writer.beginObject();
+        writer.name("report-url");
+        this.urls.write(writer, item.details.reportUrl);
+        writer.name("metrics");
+        this.metrics.write(writer, item.details.metrics);
+        writer.name("message").value(item.details.message);
+        writer.name("hash").value(item.details.hash);
+        writer.name("environment").value(item.details.environment);
+        writer.endObject();
+      }
+
+      writer.name("message").value(item.message);
+      writer.endObject();
+    }
+  }
 }
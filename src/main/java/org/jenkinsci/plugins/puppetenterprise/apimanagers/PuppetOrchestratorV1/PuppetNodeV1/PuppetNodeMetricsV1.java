@@ -1,6 +1,29 @@
 package org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.puppetnodev1;
 
+import java.io.IOException;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEJson;
+
 public class PuppetNodeMetricsV1 {
+  //One of these comes back for every node on every poll, so skip
+  // reflection and read the fields directly
+  public static final TypeAdapterFactory ADAPTER_FACTORY = new TypeAdapterFactory() {
+    @SuppressWarnings("unchecked")
+    @Override public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+      if (type.getRawType() != PuppetNodeMetricsV1.class) {
+        return null;
+      }
+
+      return (TypeAdapter<T>) new Adapter();
+    }
+  };
+
   private Integer total = null;
   private Integer failed = null;
   private Integer changed = null;
@@ -51,4 +74,57 @@ public class PuppetNodeMetricsV1 {
   public Integer getFailedToRestart() {
     return this.failed_to_restart;
   }
+
+  private static class Adapter extends TypeAdapter<PuppetNodeMetricsV1> {
+    @Override public PuppetNodeMetricsV1 read(JsonReader reader) throws IOException {
+      if (reader.peek() == JsonToken.NULL) {
+        reader.nextNull();
+        return null;
+      }
+
+      PuppetNodeMetricsV1 metrics = new PuppetNodeMetricsV1();
+
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+
+        switch (name) {
+          case "total":             metrics.total = PEJson.nextInteger(reader); break;
+          case "failed":            metrics.failed = PEJson.nextInteger(reader); break;
+          case "changed":           metrics.changed = PEJson.nextInteger(reader); break;
+          case "corrective_change": metrics.corrective_change = PEJson.nextInteger(reader); break;
+          case "skipped":           metrics.skipped = PEJson.nextInteger(reader); break;
+          case "restarted":         metrics.restarted = PEJson.nextInteger(reader); break;
+          case "scheduled":         metrics.scheduled = PEJson.nextInteger(reader); break;
+          case "out_of_sync":       metrics.out_of_sync = PEJson.nextInteger(reader); break;
+          case "failed_to_restart": metrics.failed_to_restart = PEJson.nextInteger(reader); break;
+          case "message":           metrics.message = PEJson.nextString(reader); break;
+          default:                  reader.skipValue();
+        }
+      }
+      reader.endObject();
+
+      return metrics;
+    }
+
+    @Override public void write(JsonWriter writer, PuppetNodeMetricsV1 metrics) throws IOException {
+      if (metrics == null) {
+        writer.nullValue();
+        return;
+      }
+
+      writer.beginObject();
+      writer.name("total").value(metrics.total);
+      writer.name("failed").value(metrics.failed);
+      writer.name("changed").value(metrics.changed);
+      writer.name("corrective_change").value(metrics.corrective_change);
+      writer.name("skipped").value(metrics.skipped);
+      writer.name("restarted").value(metrics.restarted);
+      writer.name("scheduled").value(metrics.scheduled);
+      writer.name("out_of_sync").value(metrics.out_of_sync);
+      writer.name("failed_to_restart").value(metrics.failed_to_restart);
+      writer.name("message").value(metrics.message);
+      writer.endObject();
+    }
+  }
 }
@@ -8,6 +8,7 @@ import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.p
 public class PuppetNodeV1 {
   private String message = null;
   private ArrayList<PuppetNodeItemV1> items = null;
+  private Pagination pagination = null;
 
   public String getMessage() {
     return this.message;
@@ -16,4 +17,27 @@ public class PuppetNodeV1 {
   public ArrayList<PuppetNodeItemV1> getItems() {
     return this.items;
   }
+
+  //Null if the orchestrator returned every node at once
+  public Pagination getPagination() {
+    return this.pagination;
+  }
+
+  public static class Pagination {
+    private Integer limit = null;
+    private Integer offset = null;
+    private Integer total = null;
+
+    public Integer getLimit() {
+      return this.limit;
+    }
+
+    public Integer getOffset() {
+      return this.offset;
+    }
+
+    public Integer getTotal() {
+      return this.total;
+    }
+  }
 }
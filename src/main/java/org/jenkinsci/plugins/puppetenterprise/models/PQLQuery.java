@@ -5,6 +5,7 @@ import java.util.*;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetdbv4.PuppetDBQueryV4;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetdbv4.PuppetDBException;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.PERequest;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEResponseCallback;
 import com.google.gson.internal.LinkedTreeMap;
 
 public class PQLQuery {
@@ -32,4 +33,14 @@ public class PQLQuery {
 
     this.results = query.getResults();
   }
+
+  //Streams each result to the callback instead of collecting them.
+  // Returns the number of results.
+  public Integer run(PEResponseCallback<Object> callback) throws PuppetDBException, Exception {
+    PuppetDBQueryV4 query = new PuppetDBQueryV4();
+    query.setQuery(this.query);
+    query.setToken(this.token);
+
+    return query.execute(callback);
+  }
 }
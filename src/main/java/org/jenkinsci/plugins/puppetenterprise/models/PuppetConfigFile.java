@@ -0,0 +1,384 @@
+package org.jenkinsci.plugins.puppetenterprise.models;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Settings read straight from a puppet.conf file, without starting a
+ * Ruby process for `puppet config print`.
+ *
+ * The file is parsed once and the result kept until the file changes. A
+ * watcher thread drops the parsed copy as soon as the file is written,
+ * replaced or removed. Where the directory can't be watched, the file's
+ * size and modification time are checked instead.
+ *
+ * Only plain settings are understood; $variable interpolation isn't done.
+ */
+public final class PuppetConfigFile {
+  private static final Logger logger = Logger.getLogger(PuppetConfigFile.class.getName());
+
+  public static final String DEFAULT_PATH = "/etc/puppetlabs/puppet/puppet.conf";
+
+  //Sections searched for connection settings, in order
+  private static final String[] SECTIONS = { "main", "agent" };
+
+  private static final Pattern SECTION = Pattern.compile("^\\[([^\\]]+)\\]$");
+  private static final Pattern SETTING = Pattern.compile("^([\\w.-]+)\\s*=\\s*(.*?)\\s*(\\{[^}]*\\})?$");
+
+  private static final ConcurrentHashMap<Path, PuppetConfigFile> watched = new ConcurrentHashMap<Path, PuppetConfigFile>();
+  private static WatchService watchService = null;
+
+  private static final PuppetConfigFile defaultFile = new PuppetConfigFile(new File(DEFAULT_PATH));
+
+  private final File file;
+  private volatile Snapshot snapshot = null;
+  private volatile boolean isWatched = false;
+  private volatile int generation = 0;
+
+  public PuppetConfigFile(File file) {
+    this.file = file;
+  }
+
+  public static PuppetConfigFile getDefault() {
+    return defaultFile;
+  }
+
+  private static class Snapshot {
+    final Map<String, Map<String, String>> sections;
+    final long length;
+    final long lastModified;
+
+    Snapshot(Map<String, Map<String, String>> sections, long length, long lastModified) {
+      this.sections = sections;
+      this.length = length;
+      this.lastModified = lastModified;
+    }
+  }
+
+  public boolean exists() {
+    return (getSnapshot().sections != null);
+  }
+
+  /**
+   * The value of a setting in the given section, or null if it isn't set
+   * there.
+   */
+  public String get(String section, String setting) {
+    Map<String, Map<String, String>> sections = getSnapshot().sections;
+
+    if (sections == null || !sections.containsKey(section)) {
+      return null;
+    }
+
+    return sections.get(section).get(setting);
+  }
+
+  /**
+   * The masters this node is configured to use, as host or host:port, in
+   * the order Puppet would try them. server_list takes precedence over
+   * server, the same as it does for the agent.
+   */
+  public List<String> getServerList() {
+    List<String> servers = new ArrayList<String>();
+    String serverList = lookup("server_list");
+
+    if (serverList != null) {
+      for (String server : serverList.split(",")) {
+        if (!server.trim().isEmpty()) {
+          servers.add(server.trim());
+        }
+      }
+    }
+
+    if (servers.isEmpty()) {
+      String server = lookup("server");
+
+      if (server != null && !server.isEmpty()) {
+        servers.add(server);
+      }
+    }
+
+    return servers;
+  }
+
+  /**
+   * Host name of the first configured master, or null if none is
+   * configured. IPv6 addresses are returned in brackets, ready to be put
+   * in a URL.
+   */
+  public String getServer() {
+    List<String> servers = getServerList();
+
+    if (servers.isEmpty()) {
+      return null;
+    }
+
+    String server = servers.get(0);
+
+    //[2001:db8::1] or [2001:db8::1]:8140
+    if (server.startsWith("[")) {
+      int end = server.indexOf(']');
+      return (end > 0) ? server.substring(0, end + 1) : server;
+    }
+
+    int port = server.lastIndexOf(':');
+
+    //A bare IPv6 address, which can't have a port
+    if (port > 0 && server.indexOf(':') != port) {
+      return "[" + server + "]";
+    }
+
+    if (port > 0) {
+      server = server.substring(0, port);
+    }
+
+    return server;
+  }
+
+  private String lookup(String setting) {
+    for (String section : SECTIONS) {
+      String value = get(section, setting);
+
+      if (value != null) {
+        return value;
+      }
+    }
+
+    return null;
+  }
+
+  //Drops the parsed copy, the file is read again on next use
+  public void invalidate() {
+    synchronized (this) {
+      this.generation++;
+      this.snapshot = null;
+    }
+  }
+
+  private Snapshot getSnapshot() {
+    Snapshot current = this.snapshot;
+
+    if (current != null && (this.isWatched || isCurrent(current))) {
+      return current;
+    }
+
+    synchronized (this) {
+      current = this.snapshot;
+
+      if (current != null && (this.isWatched || isCurrent(current))) {
+        return current;
+      }
+
+      watch();
+    }
+
+    //Read outside the lock so the watcher is never held up by a slow disk.
+    // If the file changes mid-read the result is used once but not kept.
+    int loading = this.generation;
+    current = load();
+
+    synchronized (this) {
+      if (loading == this.generation) {
+        this.snapshot = current;
+      }
+    }
+
+    return current;
+  }
+
+  private boolean isCurrent(Snapshot snapshot) {
+    return (snapshot.length == this.file.length() && snapshot.lastModified == this.file.lastModified());
+  }
+
+  private Snapshot load() {
+    long length = this.file.length();
+    long lastModified = this.file.lastModified();
+
+    if (!this.file.isFile()) {
+      return new Snapshot(null, length, lastModified);
+    }
+
+    Reader reader = null;
+
+    try {
+      reader = new InputStreamReader(new FileInputStream(this.file), StandardCharsets.UTF_8);
+      return new Snapshot(parse(reader), length, lastModified);
+    } catch(IOException e) {
+      logger.log(Level.WARNING, "Unable to read " + this.file + ": " + e.getMessage());
+      return new Snapshot(null, length, lastModified);
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch(IOException e) {
+          logger.log(Level.FINE, "Unable to close " + this.file + ": " + e.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * Parses puppet.conf into settings by section. Settings that appear
+   * before any section header belong to main, and any {owner = ...}
+   * metadata after a value is dropped.
+   */
+  static Map<String, Map<String, String>> parse(Reader input) throws IOException {
+    Map<String, Map<String, String>> sections = new HashMap<String, Map<String, String>>();
+    BufferedReader reader = new BufferedReader(input);
+    String section = "main";
+    String line;
+
+    while ((line = reader.readLine()) != null) {
+      line = line.trim();
+
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+
+      Matcher header = SECTION.matcher(line);
+      if (header.matches()) {
+        section = header.group(1).trim();
+        continue;
+      }
+
+      Matcher setting = SETTING.matcher(line);
+      if (setting.matches()) {
+        Map<String, String> settings = sections.get(section);
+
+        if (settings == null) {
+          settings = new HashMap<String, String>();
+          sections.put(section, settings);
+        }
+
+        settings.put(setting.group(1), unquote(setting.group(2)));
+      }
+    }
+
+    for (Map.Entry<String, Map<String, String>> entry : sections.entrySet()) {
+      entry.setValue(Collections.unmodifiableMap(entry.getValue()));
+    }
+
+    return sections;
+  }
+
+  private static String unquote(String value) {
+    if (value.length() >= 2 && ((value.startsWith("\"") && value.endsWith("\"")) || (value.startsWith("'") && value.endsWith("'")))) {
+      return value.substring(1, value.length() - 1);
+    }
+
+    return value;
+  }
+
+  //Registers the file's directory with the watcher, if it hasn't been
+  private void watch() {
+    if (this.isWatched) {
+      return;
+    }
+
+    File directory = this.file.getAbsoluteFile().getParentFile();
+
+    if (directory == null || !directory.isDirectory()) {
+      return;
+    }
+
+    try {
+      Path dir = directory.toPath();
+
+      dir.register(getWatchService(), StandardWatchEventKinds.ENTRY_CREATE,
+        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+
+      watched.put(this.file.getAbsoluteFile().toPath(), this);
+      this.isWatched = true;
+    } catch(IOException e) {
+      logger.log(Level.FINE, "Unable to watch " + directory + ", falling back to checking for changes: " + e.getMessage());
+    } catch(UnsupportedOperationException e) {
+      logger.log(Level.FINE, "Unable to watch " + directory + ", falling back to checking for changes: " + e.getMessage());
+    }
+  }
+
+  private static synchronized WatchService getWatchService() throws IOException {
+    if (watchService == null) {
+      watchService = FileSystems.getDefault().newWatchService();
+
+      Thread watcher = new Thread(new Runnable() {
+        @Override public void run() {
+          processEvents();
+        }
+      }, "Puppet config watcher");
+
+      watcher.setDaemon(true);
+      watcher.start();
+    }
+
+    return watchService;
+  }
+
+  private static void processEvents() {
+    while (true) {
+      WatchKey key;
+
+      try {
+        key = watchService.take();
+      } catch(InterruptedException e) {
+        return;
+      }
+
+      Path dir = (Path) key.watchable();
+
+      for (WatchEvent<?> event : key.pollEvents()) {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+          invalidateAll(dir);
+          continue;
+        }
+
+        PuppetConfigFile config = watched.get(dir.resolve((Path) event.context()));
+
+        if (config != null) {
+          config.invalidate();
+        }
+      }
+
+      //The directory itself is gone, go back to checking for changes
+      if (!key.reset()) {
+        for (PuppetConfigFile config : invalidateAll(dir)) {
+          config.isWatched = false;
+          watched.values().remove(config);
+        }
+      }
+    }
+  }
+
+  private static List<PuppetConfigFile> invalidateAll(Path dir) {
+    List<PuppetConfigFile> configs = new ArrayList<PuppetConfigFile>();
+
+    for (Map.Entry<Path, PuppetConfigFile> entry : watched.entrySet()) {
+      if (dir.equals(entry.getKey().getParent())) {
+        entry.getValue().invalidate();
+        configs.add(entry.getValue());
+      }
+    }
+
+    return configs;
+  }
+}
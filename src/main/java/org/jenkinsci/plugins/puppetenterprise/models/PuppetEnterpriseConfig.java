@@ -9,10 +9,13 @@ import jenkins.model.Jenkins;
 import java.io.Serializable;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.BufferedReader;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.apache.http.*;
 import org.apache.http.util.ExceptionUtils;
@@ -24,10 +27,32 @@ import org.apache.http.client.methods.*;
 import org.apache.http.impl.client.*;
 import org.apache.http.conn.ssl.*;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PETrustMaterial;
 
 public final class PuppetEnterpriseConfig implements Serializable {
   private static String puppetMasterUrl = null;
   private static String puppetMasterCACertificate = "";
+  private static String transport = null;
+
+  private static final Logger logger = Logger.getLogger(PuppetEnterpriseConfig.class.getName());
+
+  //Used when there's no saved address and puppet.conf doesn't name one,
+  // the same default Puppet itself uses
+  private static final String DEFAULT_PUPPET_MASTER = "puppet";
+  private static final long DISCOVERY_RETRY_MILLIS = 60 * 1000;
+
+  //CA certificate fetched from the master named in puppet.conf. It's saved
+  // with the rest of the config and trusted until the address changes.
+  private static String discoveredAddress = null;
+  private static String discoveredCACertificate = null;
+  private static long discoveredAt = 0;
+
+  //The last attempt to fetch it, which may have failed or still be running
+  private static String discoveryAddress = null;
+  private static long discoveryAttempted = 0;
+  private static boolean discovering = false;
 
   static {
     loadGlobalConfig();
@@ -53,22 +78,40 @@ public final class PuppetEnterpriseConfig implements Serializable {
     puppetMasterUrl = url;
 
     if (retrieveCACertificate) {
-      puppetMasterCACertificate = retrievePuppetMasterCACertificate();
+      replacePuppetMasterCACertificate(retrievePuppetMasterCACertificate());
     }
 
     save();
   }
 
   public static void setPuppetMasterCACertificate(String cert) {
-    puppetMasterCACertificate = cert;
+    replacePuppetMasterCACertificate(cert);
 
     try {
       save();
     } catch(IOException e) {e.printStackTrace();}
   }
 
-  public static String getPuppetMasterCACertificate() {
-    return puppetMasterCACertificate;
+  //Drop the cached trust material for the old certificate so it's
+  // rebuilt from the new one on the next request
+  private static void replacePuppetMasterCACertificate(String cert) {
+    String previous = puppetMasterCACertificate;
+    puppetMasterCACertificate = cert;
+
+    if (previous != null && !previous.equals(cert)) {
+      PETrustMaterial.evict(previous);
+    }
+  }
+
+  //Name of the PETransportType used to talk to the PE services. Null
+  // means the default.
+  public static String getTransport() {
+    return transport;
+  }
+
+  public static void setTransport(String name) throws IOException {
+    transport = name;
+    save();
   }
 
   private static String retrievePuppetMasterCACertificate() throws java.net.UnknownHostException, IOException,
@@ -81,15 +124,15 @@ public final class PuppetEnterpriseConfig implements Serializable {
     java.security.NoSuchAlgorithmException, java.security.KeyStoreException, java.security.KeyManagementException, org.apache.http.conn.HttpHostConnectException {
     String returnString = "";
 
-    SSLContextBuilder builder = new SSLContextBuilder();
-
-    builder.loadTrustMaterial(null, new TrustSelfSignedStrategy());
-
-    SSLConnectionSocketFactory sslsf = new SSLConnectionSocketFactory(builder.build());
+    SSLConnectionSocketFactory sslsf = PETrustMaterial.getBootstrapSocketFactory();
     CloseableHttpClient httpclient = HttpClients.custom().setSSLSocketFactory(sslsf).build();
 
-    HttpGet httpGet = new HttpGet("https://" + address + ":8140/puppet-ca/v1/certificate/ca");
-    returnString = IOUtils.toString(httpclient.execute(httpGet).getEntity().getContent());
+    try {
+      HttpGet httpGet = new HttpGet("https://" + address + ":8140/puppet-ca/v1/certificate/ca");
+      returnString = IOUtils.toString(httpclient.execute(httpGet).getEntity().getContent());
+    } finally {
+      httpclient.close();
+    }
 
     return returnString;
   }
@@ -103,90 +146,160 @@ public final class PuppetEnterpriseConfig implements Serializable {
         config = (HashMap) xml.unmarshal(config);
 
         puppetMasterUrl = (String) config.get("puppetMasterUrl");
-        puppetMasterCACertificate = (String) config.get("puppetMasterCACertificate");
+        replacePuppetMasterCACertificate((String) config.get("puppetMasterCACertificate"));
+        transport = (String) config.get("transport");
+
+        synchronized (PuppetEnterpriseConfig.class) {
+          discoveredAddress = (String) config.get("discoveredAddress");
+          discoveredCACertificate = (String) config.get("discoveredCACertificate");
+          Object at = config.get("discoveredAt");
+          discoveredAt = (at instanceof Long) ? (Long) at : 0;
+        }
       }
     } catch (IOException e) {
       e.printStackTrace();
     }
   }
 
-  @SuppressFBWarnings(
-    value = "SBSC_USE_STRINGBUFFER_CONCATENATION",
-    justification = "performance irrelevant compared to I/O, String much more convenient"
-  )
+  /**
+   * The configured master address, or when none has been saved, the
+   * server from this node's puppet.conf. Reading puppet.conf is memoized
+   * and nothing is saved, so this never starts a process, touches the
+   * network or writes the config file.
+   */
   public static String getPuppetMasterUrl() {
-    InputStreamReader is = null;
-    BufferedReader br = null;
-    Process puppetCmd = null;
-
-    if (puppetMasterUrl != null && !puppetMasterUrl.equals("")) {
-      return puppetMasterUrl;
-    } else {
-      String puppetConfigPath = "/etc/puppetlabs/puppet/puppet.conf";
-      File puppetFileHandler = new File(puppetConfigPath);
-      try {
-        if (puppetFileHandler.exists()) {
-          String cmd = "/opt/puppetlabs/bin/puppet config print server --config /etc/puppetlabs/puppet/puppet.conf";
-
-          puppetCmd = Runtime.getRuntime().exec(cmd);
-          puppetCmd.waitFor();
-          is = new InputStreamReader(puppetCmd.getInputStream(), "UTF-8");
-          br = new BufferedReader(is);
-
-          String line = "";
-
-          StringBuffer buf = new StringBuffer();
-          while ((line = br.readLine()) != null) {
-            buf.append(line);
-          }
-
-          is.close();
-          br.close();
-          puppetCmd.destroy();
-
-          puppetMasterUrl = buf.toString();
-        } else {
-          puppetMasterUrl = "puppet";
-        }
+    String url = puppetMasterUrl;
 
-        setPuppetMasterUrl(puppetMasterUrl);
-
-      //If we fail here, it's the same as not having a config
-      } catch(java.io.IOException e) {
-      } catch(java.security.NoSuchAlgorithmException e) {
-      } catch(java.security.KeyStoreException e) {
-      } catch(java.security.KeyManagementException e) {
-      } catch(InterruptedException e) {
-      } finally {
-        if (is != null) {
-          try {
-            is.close();
-          } catch(IOException e) {
-            e.printStackTrace();
-          }
-        }
+    if (url != null && !url.equals("")) {
+      return url;
+    }
 
-        if (br != null) {
-          try {
-            br.close();
-          } catch(IOException e) {
-            e.printStackTrace();
-          }
-        }
+    String server = PuppetConfigFile.getDefault().getServer();
 
-        if (puppetCmd != null) {
-          puppetCmd.destroy();
-        }
+    return (server != null) ? server : DEFAULT_PUPPET_MASTER;
+  }
+
+  /**
+   * The saved CA certificate, or when the master address comes from
+   * puppet.conf, the CA certificate fetched from that master the first
+   * time it's needed.
+   */
+  public static String getPuppetMasterCACertificate() {
+    String cert = puppetMasterCACertificate;
+
+    if ((cert != null && !cert.isEmpty()) || (puppetMasterUrl != null && !puppetMasterUrl.equals(""))) {
+      return cert;
+    }
+
+    return getDiscoveredCACertificate(getPuppetMasterUrl());
+  }
+
+  //The certificate is fetched without holding the lock, so requests that
+  // need it while it's being fetched carry on without it rather than wait
+  private static String getDiscoveredCACertificate(String address) {
+    long now = System.currentTimeMillis();
+
+    synchronized (PuppetEnterpriseConfig.class) {
+      if (address.equals(discoveredAddress) && discoveredCACertificate != null) {
+        return discoveredCACertificate;
       }
+
+      //Don't hold up every request retrying a master that's down
+      if (address.equals(discoveryAddress) && (discovering || now - discoveryAttempted < DISCOVERY_RETRY_MILLIS)) {
+        return "";
+      }
+
+      discoveryAddress = address;
+      discoveryAttempted = now;
+      discovering = true;
+    }
+
+    String cert = null;
+
+    try {
+      cert = retrievePuppetMasterCACertificate(address);
+    } catch(Exception e) {
+      logger.log(Level.WARNING, "Unable to retrieve the CA certificate from " + address + ": " + e.getMessage());
+    }
+
+    String previous;
+
+    synchronized (PuppetEnterpriseConfig.class) {
+      discovering = false;
+
+      if (cert == null || cert.isEmpty()) {
+        return "";
+      }
+
+      previous = discoveredCACertificate;
+      discoveredAddress = address;
+      discoveredCACertificate = cert;
+      discoveredAt = now;
+    }
+
+    //Trusted on first use, so leave a record an administrator can check
+    // against the CA on the master
+    logger.log(Level.WARNING, "Trusting the CA certificate fetched from " + address + ", SHA-256 fingerprint "
+      + StringUtils.join(getDiscoveredCACertificateFingerprints(), ", ")
+      + ". It's kept until the Puppet master address changes.");
+
+    if (previous != null && !previous.equals(cert)) {
+      PETrustMaterial.evict(previous);
+    }
+
+    try {
+      save();
+    } catch(IOException e) {
+      logger.log(Level.WARNING, "Unable to save the CA certificate fetched from " + address + ": " + e.getMessage());
+    }
+
+    return cert;
+  }
+
+  //Where the CA certificate in use was fetched from, or null if it wasn't
+  // fetched from the master named in puppet.conf
+  public static synchronized String getDiscoveredCACertificateAddress() {
+    if (discoveredCACertificate == null || (puppetMasterUrl != null && !puppetMasterUrl.equals(""))) {
+      return null;
+    }
+
+    return discoveredAddress;
+  }
+
+  public static synchronized Date getDiscoveredCACertificateDate() {
+    return (discoveredCACertificate == null) ? null : new Date(discoveredAt);
+  }
+
+  public static List<String> getDiscoveredCACertificateFingerprints() {
+    String cert;
+
+    synchronized (PuppetEnterpriseConfig.class) {
+      cert = discoveredCACertificate;
+    }
+
+    if (cert == null) {
+      return new ArrayList<String>();
     }
 
-    return PuppetEnterpriseConfig.puppetMasterUrl;
+    try {
+      return PETrustMaterial.certificateFingerprints(cert);
+    } catch(Exception e) {
+      logger.log(Level.WARNING, "Unable to read the CA certificate fetched from " + discoveredAddress + ": " + e.getMessage());
+      return new ArrayList<String>();
+    }
   }
 
   public static void save() throws IOException {
     HashMap config = new HashMap();
     config.put("puppetMasterUrl", puppetMasterUrl);
     config.put("puppetMasterCACertificate", puppetMasterCACertificate);
+    config.put("transport", transport);
+
+    synchronized (PuppetEnterpriseConfig.class) {
+      config.put("discoveredAddress", discoveredAddress);
+      config.put("discoveredCACertificate", discoveredCACertificate);
+      config.put("discoveredAt", discoveredAt);
+    }
 
     getConfigFile().write(config);
   }
@@ -2,24 +2,33 @@ package org.jenkinsci.plugins.puppetenterprise.models;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Executor;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetOrchestratorException;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetCommandDeployV1;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetCommandStopV1;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetInventoryItemV1;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetInventoryV1;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetJobsIDV1;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetJobNodesV1;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetJobEventV1;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetJobEventsV1;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.puppetjobreportv1.*;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.puppetnodev1.*;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEFuture;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.PERequest;
 import org.jenkinsci.plugins.puppetenterprise.models.UnknownPuppetJobReportType;
 import com.google.gson.internal.LinkedTreeMap;
 
 public class PuppetJob {
+  //How long stop() waits for nodes that already started to finish
+  public static final long DEFAULT_STOP_GRACE_MILLIS = Long.getLong(PuppetJob.class.getName() + ".stopGraceMillis", 60000);
+
   private ArrayList<String> inventory = null;
   private String state = null;
-  private String name = null;
+  private volatile String name = null;
   private String token = null;
-  private ArrayList<PuppetNodeItemV1> nodes = null;
-  private ArrayList<PuppetJobReportNodeV1> report = null;
+  private Iterable<PuppetNodeItemV1> nodes = null;
+  private PuppetJobReportNodesV1 report = null;
   private Integer nodeCount = null;
   private LinkedTreeMap scope = new LinkedTreeMap();
   private String target = null;
@@ -30,8 +39,16 @@ public class PuppetJob {
   private Boolean trace = null;
   private Boolean noop = null;
   private Boolean evalTrace = null;
-  private PuppetJobsIDV1 job = null;
+  private ArrayList<String> reports = null;
+  private volatile PuppetJobsIDV1 job = null;
   private PrintStream logger = null;
+  private File spoolDirectory = null;
+  private Integer minPollInterval = null;
+  private Integer maxPollInterval = null;
+  private PuppetJobPollSchedule pollSchedule = null;
+  private PuppetJobEventsV1 events = null;
+  private LinkedHashMap<String, PuppetNodeItemV1> nodeResults = null;
+  private PEFuture<String> stopRequest = null;
 
   public PuppetJob() { }
 
@@ -45,6 +62,24 @@ public class PuppetJob {
     this.logger = logger;
   }
 
+  //Where large job reports are spooled while they're read, normally the
+  // build's directory
+  public void setSpoolDirectory(File directory) {
+    this.spoolDirectory = directory;
+  }
+
+  //Bounds, in milliseconds, of the wait between polls while the job runs
+  public void setPollInterval(Integer min, Integer max) {
+    this.minPollInterval = min;
+    this.maxPollInterval = max;
+  }
+
+  //Reports that will be generated once the job is done, null for the
+  // default. Only the data those reports read is fetched.
+  public void setReports(ArrayList<String> reports) {
+    this.reports = reports;
+  }
+
   public void setTarget(String target) {
     this.target = target;
   }
@@ -115,22 +150,112 @@ public class PuppetJob {
 
   public void run() throws PuppetOrchestratorException, Exception {
     start();
+    prepareWatch();
+    awaitCompletion(Long.MAX_VALUE);
+    collectResults();
+  }
+
+  /**
+   * Picks up a job that was started earlier, e.g. before Jenkins
+   * restarted, so it can be watched without deploying it again.
+   */
+  public void attach(String name) {
+    this.name = name;
+    this.job = new PuppetJobsIDV1(name);
+  }
+
+  /**
+   * Receives the outcome of watch(). Calls are made on the executor
+   * passed to watch().
+   */
+  public interface Callback {
+    //The job is done and its results have been fetched
+    void onFinished();
+
+    void onError(Exception e);
+  }
+
+  /**
+   * Non-blocking version of waiting for the job in run(), for a job that
+   * has been started or attached. No thread is held while the job runs,
+   * new events are read and, once the job is done, its results are
+   * fetched on the executor.
+   */
+  public void watch(final Executor executor, final Callback callback) {
+    prepareWatch();
+
+    final PuppetJobWatcher watcher = PuppetJobWatcher.get();
+
+    watcher.watch(this.name, this.token, this.pollSchedule, new PuppetJobWatcher.Listener() {
+      @Override public void onUpdate(final PuppetJobWatcher.JobStatus status) {
+        if (status.isRunning()) {
+          executor.execute(new Runnable() {
+            @Override public void run() {
+              readEvents();
+            }
+          });
+
+          return;
+        }
+
+        watcher.unwatch(name, this);
+
+        executor.execute(new Runnable() {
+          @Override public void run() {
+            try {
+              collectResults();
+            } catch(Exception e) {
+              callback.onError(e);
+              return;
+            }
+
+            callback.onFinished();
+          }
+        });
+      }
+
+      @Override public void onError(final Exception e) {
+        watcher.unwatch(name, this);
 
-    do {
-      try {
-        Thread.sleep(500);
-      } catch(InterruptedException ex) {
-        Thread.currentThread().interrupt();
+        executor.execute(new Runnable() {
+          @Override public void run() {
+            callback.onError(e);
+          }
+        });
       }
+    });
+  }
+
+  private void prepareWatch() {
+    this.pollSchedule = new PuppetJobPollSchedule(this.minPollInterval, this.maxPollInterval);
+    this.events = new PuppetJobEventsV1(this.name);
+    this.events.setToken(this.token);
+    this.nodeResults = new LinkedHashMap<String, PuppetNodeItemV1>();
+  }
+
+  private void collectResults() throws PuppetOrchestratorException, Exception {
+    //Pick up whatever happened between the last read and the job ending
+    readEvents();
 
-      updateState();
-    } while(isRunning());
+    //Fetch the full details of the finished job, they hold the links to
+    // its nodes and report
+    updateState();
+
+    updateResults();
 
-    updateNodes();
-    updateReport();
+    //Only needed while polling
+    this.job.clearResponseCache();
   }
 
   public void start() throws PuppetOrchestratorException, Exception {
+    startAsync().await();
+  }
+
+  /**
+   * Non-blocking version of start(). The returned future completes with
+   * the job's name once the orchestrator has accepted the deploy.
+   */
+  public PEFuture<String> startAsync() throws Exception {
     PuppetCommandDeployV1 deployCommand = new PuppetCommandDeployV1();
 
     if (this.scope.isEmpty() && this.target != null) {
@@ -149,18 +274,201 @@ public class PuppetJob {
     deployCommand.setTrace(this.trace);
     deployCommand.setNoop(this.noop);
     deployCommand.setEvalTrace(this.evalTrace);
-    deployCommand.execute();
 
-    this.name = deployCommand.getName();
-    this.job = new PuppetJobsIDV1(this.name); //Create the JobID object
+    return deployCommand.executeAsync().then(new PEFuture.Function<String, String>() {
+      @Override public String apply(String started) {
+        name = started;
+        job = new PuppetJobsIDV1(started); //Create the JobID object
 
-    this.logger.println("Successfully started Puppet job " + this.name);
+        logger.println("Successfully started Puppet job " + started);
+
+        return started;
+      }
+    });
+  }
+
+  /**
+   * Asks the orchestrator to stop the job without waiting for it to
+   * answer. Only the first call sends the stop, later calls return the
+   * same request.
+   */
+  public synchronized PEFuture<String> requestStop() throws Exception {
+    if (this.stopRequest == null) {
+      PuppetCommandStopV1 command = new PuppetCommandStopV1();
+      command.setJob(this.name);
+      command.setToken(this.token);
+
+      this.stopRequest = command.executeAsync();
+    }
+
+    return this.stopRequest;
   }
 
   public void stop() throws PuppetOrchestratorException, Exception {
-    //TODO: Add ability to stop a running job
-    updateNodes();
-    updateReport();
+    stop(DEFAULT_STOP_GRACE_MILLIS);
+  }
+
+  /**
+   * Stops the job and waits up to graceMillis for the nodes that had
+   * already started their run to finish it, then fetches the nodes so
+   * generateStopReport() can tell which of them ran.
+   */
+  public void stop(long graceMillis) throws PuppetOrchestratorException, Exception {
+    requestStop().await();
+
+    if (this.pollSchedule == null) {
+      this.pollSchedule = new PuppetJobPollSchedule(this.minPollInterval, this.maxPollInterval);
+    }
+
+    if (!awaitCompletion(graceMillis)) {
+      this.logger.println("Puppet job " + this.name + " was still stopping after " + (graceMillis / 1000) + " seconds");
+    }
+
+    readEvents();
+    updateState();
+
+    if (hasAllNodeResults()) {
+      this.nodes = new ArrayList<PuppetNodeItemV1>(this.nodeResults.values());
+    } else {
+      this.nodes = this.job.getNodes();
+    }
+  }
+
+  /**
+   * Waits up to timeout milliseconds for the job to finish and returns
+   * whether it did. The job is polled by the shared PuppetJobWatcher rather
+   * than by this thread, which only reads the job's new events each time
+   * the job moves forward.
+   */
+  private boolean awaitCompletion(long timeout) throws Exception {
+    CompletionListener listener = new CompletionListener();
+    PuppetJobWatcher watcher = PuppetJobWatcher.get();
+    long started = System.currentTimeMillis();
+
+    watcher.watch(this.name, this.token, this.pollSchedule, listener);
+
+    try {
+      PuppetJobWatcher.JobStatus status = null;
+
+      //Orchestrators that don't report node states only move forward
+      // when the job ends, so read events at least this often regardless
+      while (status == null || status.isRunning()) {
+        long remaining = timeout - (System.currentTimeMillis() - started);
+
+        if (remaining <= 0) {
+          return false;
+        }
+
+        status = listener.await(Math.min(this.pollSchedule.getCeiling(), remaining));
+        readEvents();
+      }
+
+      this.state = status.getState();
+      this.nodeCount = status.getNodeCount();
+
+      return true;
+    } finally {
+      watcher.unwatch(this.name, listener);
+    }
+  }
+
+  private static class CompletionListener implements PuppetJobWatcher.Listener {
+    private PuppetJobWatcher.JobStatus status = null;
+    private Exception error = null;
+    private boolean updated = false;
+
+    @Override public synchronized void onUpdate(PuppetJobWatcher.JobStatus status) {
+      this.status = status;
+      this.updated = true;
+      notifyAll();
+    }
+
+    @Override public synchronized void onError(Exception e) {
+      this.error = e;
+      notifyAll();
+    }
+
+    //Waits for the next update, or for timeout milliseconds, and returns
+    // the latest status, null if the job hasn't been polled yet
+    synchronized PuppetJobWatcher.JobStatus await(long timeout) throws Exception {
+      if (this.error == null && !this.updated) {
+        wait(timeout);
+      }
+
+      this.updated = false;
+
+      if (this.error != null) {
+        throw this.error;
+      }
+
+      return this.status;
+    }
+  }
+
+  /**
+   * Reads the job's events since the last read, printing each node's
+   * result as it arrives and keeping it for the job's report. A read that
+   * fails is simply tried again next time. If the orchestrator doesn't
+   * have events at all, the nodes are fetched in one go once the job is
+   * done instead.
+   */
+  private synchronized void readEvents() {
+    if (this.events == null) {
+      return;
+    }
+
+    try {
+      for (PuppetJobEventV1 event : this.events.next()) {
+        String nodeState = event.getNodeState();
+
+        if (nodeState == null) {
+          continue;
+        }
+
+        this.logger.println((event.getMessage() != null) ? event.getMessage() : event.getNode() + " " + nodeState);
+
+        PuppetNodeItemV1 result = event.getNodeResult();
+
+        if (result != null) {
+          this.nodeResults.put(result.getName(), result);
+        }
+      }
+    } catch(Exception e) {
+      //Older orchestrators don't have the events endpoint, so there's no
+      // point asking again. Anything else is likely passing and the next
+      // read picks up where this one left off. The results read so far
+      // are kept either way, hasAllNodeResults() decides whether they're
+      // enough for the report.
+      if (!this.events.isSupported()) {
+        this.events = null;
+      }
+    }
+  }
+
+  //Whether the events gave a usable result for every node in the job
+  private synchronized boolean hasAllNodeResults() {
+    if (this.nodeResults == null || this.nodeCount == null || this.nodeResults.size() < this.nodeCount) {
+      return false;
+    }
+
+    for (PuppetNodeItemV1 node : this.nodeResults.values()) {
+      //There will be no metrics if the run failed
+      if (!node.getState().equals("failed") && !node.getState().equals("errored") && node.getMetrics() == null) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  //Number of times the job was polled while running, 0 before run()
+  public int getPollCount() {
+    return (this.pollSchedule == null) ? 0 : this.pollSchedule.getPolls();
+  }
+
+  //Milliseconds the job was polled for, 0 before run()
+  public long getPollDuration() {
+    return (this.pollSchedule == null) ? 0 : this.pollSchedule.getElapsed();
   }
 
   public Boolean failed() {
@@ -229,29 +537,80 @@ public class PuppetJob {
 
   public void update() throws PuppetOrchestratorException, Exception {
     updateState();
-    updateNodes();
-    updateReport();
+    updateResults();
   }
 
-  public ArrayList<PuppetNodeItemV1> getNodes() {
+  public Iterable<PuppetNodeItemV1> getNodes() {
     return this.nodes;
   }
 
-  public ArrayList<PuppetJobReportNodeV1> getNodeReports() {
+  public Iterable<PuppetJobReportNodeV1> getNodeReports() {
     return this.report;
   }
 
+  //Deletes the spooled job report, if any
+  public void discardReport() {
+    if (this.report != null) {
+      this.report.close();
+      this.report = null;
+    }
+  }
+
+  //Which nodes ran before the job was stopped, see stop()
+  public String generateStopReport() {
+    return new PuppetJobReport(this).formatStopReport();
+  }
+
   public String generateReport(ArrayList<String> reports) throws UnknownPuppetJobReportType {
     PuppetJobReport report = new PuppetJobReport(this);
     report.setReports(reports);
     return report.generateReport();
   }
 
-  private void updateNodes() throws PuppetOrchestratorException, Exception {
-    this.nodes = this.job.getNodes();
-  }
+  /**
+   * Fetches the nodes and the event report, whichever the requested
+   * reports read, at the same time. The report is streamed into its spool
+   * on this thread, the async client would buffer all of it in memory
+   * first, while the first page of nodes is fetched asynchronously.
+   */
+  private void updateResults() throws PuppetOrchestratorException, Exception {
+    PuppetJobReport required = new PuppetJobReport(this);
+    required.setReports(this.reports);
 
-  private void updateReport() throws PuppetOrchestratorException, Exception {
-    this.report = this.job.getReport();
+    PEFuture<PuppetJobNodesV1> nodes = null;
+
+    discardReport();
+    this.nodes = null;
+
+    if (required.needsNodes()) {
+      if (hasAllNodeResults()) {
+        this.nodes = new ArrayList<PuppetNodeItemV1>(this.nodeResults.values());
+      } else {
+        nodes = this.job.getNodesAsync();
+      }
+    }
+
+    //A spooled copy of the report is never left behind if fetching the
+    // nodes fails, and the nodes aren't waited for if the report fails
+    try {
+      if (required.needsNodeReports()) {
+        this.report = this.job.getReport(this.spoolDirectory);
+      }
+    } catch(Exception e) {
+      if (nodes != null) {
+        nodes.cancel(true);
+      }
+
+      throw e;
+    }
+
+    try {
+      if (nodes != null) {
+        this.nodes = nodes.await();
+      }
+    } catch(Exception e) {
+      discardReport();
+      throw e;
+    }
   }
 }
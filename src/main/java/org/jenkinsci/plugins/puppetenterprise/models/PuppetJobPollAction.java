@@ -0,0 +1,96 @@
+package org.jenkinsci.plugins.puppetenterprise.models;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import hudson.Util;
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+
+/**
+ * How many times each Puppet job in a build was polled, shown on the
+ * build's page next to what polling at a fixed interval would have cost.
+ */
+public class PuppetJobPollAction extends InvisibleAction {
+  //The interval jobs used to be polled at
+  private static final long FIXED_INTERVAL_MILLIS = 500;
+
+  private final List<Record> jobs = new ArrayList<Record>();
+
+  public static class Record {
+    private final String name;
+    private final int polls;
+    private final long duration;
+
+    public Record(String name, int polls, long duration) {
+      this.name = name;
+      this.polls = polls;
+      this.duration = duration;
+    }
+
+    public String getName() {
+      return this.name;
+    }
+
+    public int getPolls() {
+      return this.polls;
+    }
+
+    //Milliseconds from the job starting to it finishing
+    public long getDuration() {
+      return this.duration;
+    }
+
+    public String getDurationString() {
+      return Util.getTimeSpanString(this.duration);
+    }
+
+    public long getFixedIntervalPolls() {
+      return Math.max(1, this.duration / FIXED_INTERVAL_MILLIS);
+    }
+  }
+
+  /**
+   * Adds a job to the build's record, creating it if this is the first.
+   */
+  public static void record(Run<?, ?> run, String name, int polls, long duration) {
+    synchronized (run) {
+      PuppetJobPollAction action = run.getAction(PuppetJobPollAction.class);
+
+      if (action == null) {
+        action = new PuppetJobPollAction();
+        run.addAction(action);
+      }
+
+      action.add(new Record(name, polls, duration));
+    }
+  }
+
+  private synchronized void add(Record record) {
+    this.jobs.add(record);
+  }
+
+  public synchronized List<Record> getJobs() {
+    return Collections.unmodifiableList(new ArrayList<Record>(this.jobs));
+  }
+
+  public synchronized int getTotalPolls() {
+    int total = 0;
+
+    for (Record record : this.jobs) {
+      total = total + record.getPolls();
+    }
+
+    return total;
+  }
+
+  public synchronized long getTotalFixedIntervalPolls() {
+    long total = 0;
+
+    for (Record record : this.jobs) {
+      total = total + record.getFixedIntervalPolls();
+    }
+
+    return total;
+  }
+}
@@ -0,0 +1,99 @@
+package org.jenkinsci.plugins.puppetenterprise.models;
+
+import java.io.Serializable;
+
+/**
+ * Decides how long to wait between polls of a running Puppet job.
+ *
+ * Polls are fast while the job is starting and again once most nodes have
+ * finished, so the build notices the end of the job quickly. In between,
+ * every poll that shows no progress stretches the wait by half, up to the
+ * ceiling, and every poll that shows progress halves it again, down to
+ * the floor.
+ */
+public class PuppetJobPollSchedule implements Serializable {
+  public static final long DEFAULT_FLOOR_MILLIS = 500;
+  public static final long DEFAULT_CEILING_MILLIS = 10000;
+
+  //How long after the job starts to keep polling at the floor
+  private static final long WARM_UP_MILLIS = 10000;
+
+  //Fraction of nodes done after which polling goes back to the floor
+  private static final double NEAR_COMPLETION = 0.9;
+
+  private final long floor;
+  private final long ceiling;
+  private final long started;
+  private long delay;
+  private String lastProgress = null;
+  private int polls = 0;
+
+  public PuppetJobPollSchedule() {
+    this(null, null);
+  }
+
+  /**
+   * Floor and ceiling in milliseconds, null for the defaults.
+   */
+  public PuppetJobPollSchedule(Integer floor, Integer ceiling) {
+    this(floor, ceiling, System.currentTimeMillis());
+  }
+
+  //For a job that started at the given time
+  PuppetJobPollSchedule(Integer floor, Integer ceiling, long started) {
+    this.floor = (floor == null) ? DEFAULT_FLOOR_MILLIS : Math.max(1, floor);
+    this.ceiling = Math.max(this.floor, (ceiling == null) ? DEFAULT_CEILING_MILLIS : ceiling);
+    this.started = started;
+    this.delay = this.floor;
+  }
+
+  /**
+   * Records a poll and returns how long to wait before the next one.
+   *
+   * progress is anything that changes when the job moves forward, such as
+   * its state and node counts. done and total are the number of nodes
+   * that have finished and the number in the job, or null if the
+   * orchestrator didn't say.
+   */
+  public long next(String progress, Integer done, Integer total) {
+    boolean changed = (this.lastProgress == null || !this.lastProgress.equals(progress));
+    long elapsed = System.currentTimeMillis() - this.started;
+
+    this.polls++;
+    this.lastProgress = progress;
+
+    if (elapsed < WARM_UP_MILLIS || isNearCompletion(done, total)) {
+      this.delay = this.floor;
+    } else if (changed) {
+      this.delay = Math.max(this.floor, this.delay / 2);
+    } else {
+      this.delay = Math.min(this.ceiling, this.delay + (this.delay / 2));
+    }
+
+    return this.delay;
+  }
+
+  private static boolean isNearCompletion(Integer done, Integer total) {
+    if (done == null || total == null || total == 0) {
+      return false;
+    }
+
+    return ((double) done / total) >= NEAR_COMPLETION;
+  }
+
+  public int getPolls() {
+    return this.polls;
+  }
+
+  public long getElapsed() {
+    return System.currentTimeMillis() - this.started;
+  }
+
+  public long getFloor() {
+    return this.floor;
+  }
+
+  public long getCeiling() {
+    return this.ceiling;
+  }
+}
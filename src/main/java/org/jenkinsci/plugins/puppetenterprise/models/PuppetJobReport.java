@@ -11,10 +11,15 @@ import com.google.gson.internal.LinkedTreeMap;
 
 public class PuppetJobReport implements Serializable {
   private ArrayList<String> reportTypes = new ArrayList<String>();
-  private PuppetJob job = null;
+  private List<PuppetJob> jobs = null;
 
   public PuppetJobReport(PuppetJob job) {
-    this.job = job;
+    this(Arrays.asList(job));
+  }
+
+  //One report covering all the jobs, e.g. one per scope of a step
+  public PuppetJobReport(List<PuppetJob> jobs) {
+    this.jobs = new ArrayList<PuppetJob>(jobs);
   }
 
   public void setReports(ArrayList<String> reports) {
@@ -26,19 +31,28 @@ public class PuppetJobReport implements Serializable {
     }
   }
 
+  //Whether any of the requested reports list the job's nodes
+  public Boolean needsNodes() {
+    return this.reportTypes.contains("nodeSummary");
+  }
+
+  //Whether any of the requested reports read the job's resource events
+  public Boolean needsNodeReports() {
+    return (this.reportTypes.contains("nodeChanges") || this.reportTypes.contains("resourceChanges"));
+  }
+
   public String generateReport() throws UnknownPuppetJobReportType {
     StringBuilder formattedReport = new StringBuilder();
 
-    formattedReport.append("Puppet Job Name: " + job.getName() + "\n");
-    formattedReport.append("State: " + job.getState() + "\n");
+    formattedReport.append(formatJobs());
 
     if (!isEnvironmentEnforced()) {
       formattedReport.append("Environment: node's assigned environment\n");
     } else {
-      formattedReport.append("Environment: " + job.getEnvironment() + "\n");
+      formattedReport.append("Environment: " + this.jobs.get(0).getEnvironment() + "\n");
     }
 
-    formattedReport.append("Nodes: " + job.getNodeCount() + "\n\n");
+    formattedReport.append("Nodes: " + getNodeCount() + "\n\n");
 
     //Generate each of the requested reports
     for (String reportType : this.reportTypes) {
@@ -55,10 +69,104 @@ public class PuppetJobReport implements Serializable {
     return formattedReport.toString();
   }
 
+  private String formatJobs() {
+    StringBuilder formattedReport = new StringBuilder();
+
+    if (this.jobs.size() == 1) {
+      formattedReport.append("Puppet Job Name: " + this.jobs.get(0).getName() + "\n");
+      formattedReport.append("State: " + this.jobs.get(0).getState() + "\n");
+    } else {
+      formattedReport.append("Puppet Jobs: " + this.jobs.size() + "\n");
+
+      for (PuppetJob job : this.jobs) {
+        formattedReport.append("  " + job.getName() + " (" + job.getState() + ", " + job.getNodeCount() + " nodes)\n");
+      }
+    }
+
+    return formattedReport.toString();
+  }
+
+  private Integer getNodeCount() {
+    if (this.jobs.size() == 1) {
+      return this.jobs.get(0).getNodeCount();
+    }
+
+    Integer count = 0;
+
+    for (PuppetJob job : this.jobs) {
+      if (job.getNodeCount() != null) {
+        count = count + job.getNodeCount();
+      }
+    }
+
+    return count;
+  }
+
+  //The jobs' nodes one after the other, without reading them all in
+  private Iterable<PuppetNodeItemV1> getNodes() {
+    List<Iterable<PuppetNodeItemV1>> nodes = new ArrayList<Iterable<PuppetNodeItemV1>>();
+
+    for (PuppetJob job : this.jobs) {
+      if (job.getNodes() != null) {
+        nodes.add(job.getNodes());
+      }
+    }
+
+    return concat(nodes);
+  }
+
+  //The jobs' event reports one after the other, the same way
+  private Iterable<PuppetJobReportNodeV1> getNodeReports() {
+    List<Iterable<PuppetJobReportNodeV1>> reportNodes = new ArrayList<Iterable<PuppetJobReportNodeV1>>();
+
+    for (PuppetJob job : this.jobs) {
+      if (job.getNodeReports() != null) {
+        reportNodes.add(job.getNodeReports());
+      }
+    }
+
+    return concat(reportNodes);
+  }
+
+  private static <T> Iterable<T> concat(final List<Iterable<T>> iterables) {
+    if (iterables.size() == 1) {
+      return iterables.get(0);
+    }
+
+    return new Iterable<T>() {
+      @Override public Iterator<T> iterator() {
+        return new Iterator<T>() {
+          private final Iterator<Iterable<T>> remaining = iterables.iterator();
+          private Iterator<T> current = Collections.<T>emptyIterator();
+
+          @Override public boolean hasNext() {
+            while (!this.current.hasNext() && this.remaining.hasNext()) {
+              this.current = this.remaining.next().iterator();
+            }
+
+            return this.current.hasNext();
+          }
+
+          @Override public T next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+
+            return this.current.next();
+          }
+
+          @Override public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+    };
+  }
+
   private String formatSummaryReport() {
     StringBuilder formattedReport = new StringBuilder();
 
-    for (PuppetNodeItemV1 node : job.getNodes() ) {
+    for (PuppetNodeItemV1 node : getNodes()) {
       formattedReport.append(node.getName() + "\n");
 
       if (node.getEnvironment() != null && !isEnvironmentEnforced()) {
@@ -97,6 +205,39 @@ public class PuppetJobReport implements Serializable {
     return formattedReport.toString();
   }
 
+  public String formatStopReport() {
+    StringBuilder ran = new StringBuilder();
+    StringBuilder notRan = new StringBuilder();
+    Integer ranCount = 0;
+    Integer notRanCount = 0;
+
+    for (PuppetNodeItemV1 node : getNodes()) {
+      String state = node.getState();
+      String line = "  " + node.getName() + " (" + state + ")\n";
+
+      //Nodes that started their run before the stop carry on with it. A
+      // node without a state never got that far.
+      if ("finished".equals(state) || "failed".equals(state)
+          || "errored".equals(state) || "running".equals(state)) {
+        ran.append(line);
+        ranCount = ranCount + 1;
+      } else {
+        notRan.append(line);
+        notRanCount = notRanCount + 1;
+      }
+    }
+
+    StringBuilder formattedReport = new StringBuilder();
+
+    formattedReport.append(formatJobs() + "\n");
+    formattedReport.append("Nodes that ran: " + ranCount + "\n");
+    formattedReport.append(ran);
+    formattedReport.append("\nNodes that did not run: " + notRanCount + "\n");
+    formattedReport.append(notRan);
+
+    return formattedReport.toString();
+  }
+
   public String formatResourcesReport() {
     StringBuilder formattedReport = new StringBuilder();
     ArrayList<PuppetResource> resourceEvents = collectResourceEvents();
@@ -129,7 +270,7 @@ public class PuppetJobReport implements Serializable {
     formattedReport.append("Nodes with changes:\n");
     formattedReport.append("-------------------\n\n");
 
-    for (PuppetJobReportNodeV1 reportnode : job.getNodeReports()) {
+    for (PuppetJobReportNodeV1 reportnode : getNodeReports()) {
       formattedReport.append("  " + reportnode.getNode() + "\n");
 
       if (reportnode.getEvents().size() > 0) {
@@ -169,7 +310,7 @@ public class PuppetJobReport implements Serializable {
   private ArrayList<PuppetResource> collectResourceEvents() {
     ArrayList<PuppetResource> resources = new ArrayList();
 
-    for (PuppetJobReportNodeV1 reportnode: job.getNodeReports()) {
+    for (PuppetJobReportNodeV1 reportnode: getNodeReports()) {
       for (PuppetJobReportNodeEventV1 nodeEvent : reportnode.getEvents()) {
         PuppetResource resource = new PuppetResource(nodeEvent.getResourceName());
 
@@ -209,6 +350,7 @@ public class PuppetJobReport implements Serializable {
 
   private Boolean isEnvironmentEnforced() {
     //The orchestrator defaults to true if null, so null is true
-    return (job.getEnforceEnvironment() == null || job.getEnforceEnvironment());
+    Boolean enforced = this.jobs.get(0).getEnforceEnvironment();
+    return (enforced == null || enforced);
   }
 }
@@ -0,0 +1,77 @@
+package org.jenkinsci.plugins.puppetenterprise.models;
+
+import java.util.LinkedList;
+
+/**
+ * Limits how many Puppet jobs run at once across all of Jenkins.
+ *
+ * A build takes a slot before deploying a job and gives it back once the
+ * job is done. When none are free, the build's request is queued and run
+ * as soon as another build gives a slot back, so no thread is held while
+ * waiting. Slots are handed out in the order they were asked for.
+ */
+public final class PuppetJobSlots {
+  private static final PuppetJobSlots instance = new PuppetJobSlots(
+    Integer.getInteger("org.jenkinsci.plugins.workflow.steps.PuppetJobStep.sharedMaxInFlight", 20));
+
+  private final int size;
+  private final LinkedList<Runnable> waiting = new LinkedList<Runnable>();
+  private int used = 0;
+
+  PuppetJobSlots(int size) {
+    this.size = Math.max(1, size);
+  }
+
+  public static PuppetJobSlots get() {
+    return instance;
+  }
+
+  public int getSize() {
+    return this.size;
+  }
+
+  public synchronized int getUsed() {
+    return this.used;
+  }
+
+  public synchronized int getWaiting() {
+    return this.waiting.size();
+  }
+
+  /**
+   * Takes a slot and returns true if one is free. Otherwise the runnable
+   * is queued, returns false, and is run once a slot has been taken for
+   * it. Either way the slot has to be given back with release().
+   */
+  public synchronized boolean acquire(Runnable onAcquired) {
+    if (this.used < this.size) {
+      this.used = this.used + 1;
+      return true;
+    }
+
+    this.waiting.add(onAcquired);
+    return false;
+  }
+
+  //Takes a slot even if none are free, for jobs that are already running,
+  // e.g. ones picked back up after a restart
+  public synchronized void take() {
+    this.used = this.used + 1;
+  }
+
+  //Gives a slot back, handing it straight to the next waiting request
+  public void release() {
+    Runnable next;
+
+    synchronized (this) {
+      if (this.used > this.size || this.waiting.isEmpty()) {
+        this.used = Math.max(0, this.used - 1);
+        return;
+      }
+
+      next = this.waiting.removeFirst();
+    }
+
+    next.run();
+  }
+}
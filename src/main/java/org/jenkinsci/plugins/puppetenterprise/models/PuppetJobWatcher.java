@@ -0,0 +1,510 @@
+package org.jenkinsci.plugins.puppetenterprise.models;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.http.concurrent.FutureCallback;
+
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEFuture;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PERetryPolicy;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetOrchestratorException;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetJobsIDV1;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetJobsItemV1;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetJobsV1;
+
+/**
+ * Watches every running orchestrator job for the whole of Jenkins.
+ *
+ * Builds register the jobs they're waiting on instead of polling them
+ * themselves. A single thread sends the polls for the jobs that are due,
+ * batching all the jobs watched with the same token into one listing of
+ * the most recent jobs, and only falls back to fetching a job on its own
+ * when the listing doesn't include it. The polls are sent asynchronously,
+ * so the thread never waits on the orchestrator. Each job has one cached state however many
+ * builds are waiting on it, and listeners are told when it changes, so
+ * orchestrator traffic grows with the number of jobs rather than the
+ * number of waiting builds.
+ */
+public final class PuppetJobWatcher {
+  private static final Logger logger = Logger.getLogger(PuppetJobWatcher.class.getName());
+
+  //How often the watcher checks whether any job is due for a poll
+  private static final long TICK_MILLIS = 100;
+
+  //Jobs listed beyond the newest one seen, to allow for jobs started since
+  private static final int LIST_SLACK = 20;
+  private static final int MAX_LIST_LIMIT = Integer.getInteger(PuppetJobWatcher.class.getName() + ".maxListLimit", 500);
+
+  //Polls of a job in a row that can fail, e.g. while the orchestrator
+  // restarts, before its builds are told it can't be watched
+  private static final int MAX_FAILURES = Integer.getInteger(PuppetJobWatcher.class.getName() + ".maxFailures", 30);
+
+  private static final PuppetJobWatcher instance = new PuppetJobWatcher().start();
+
+  private final ConcurrentHashMap<String, WatchedJob> jobs = new ConcurrentHashMap<String, WatchedJob>();
+
+  //Held while adding or removing jobs and listeners, and while changing a
+  // job's status, so a job is never dropped while a listener is being
+  // added to it
+  private final Object lock = new Object();
+
+  //Tokens with a poll that hasn't answered yet
+  private final Set<String> polling = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  private ScheduledExecutorService scheduler = null;
+  private long newestJob = 0;
+
+  //Doesn't poll until it's started
+  PuppetJobWatcher() {
+  }
+
+  private PuppetJobWatcher start() {
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "Puppet job watcher");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+
+    this.scheduler.scheduleWithFixedDelay(new Runnable() {
+      @Override public void run() {
+        try {
+          tick();
+        } catch(RuntimeException e) {
+          logger.log(Level.WARNING, "Unexpected error while polling Puppet jobs", e);
+        }
+      }
+    }, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+
+    return this;
+  }
+
+  public static PuppetJobWatcher get() {
+    return instance;
+  }
+
+  /**
+   * Receives updates for a watched job. Calls are made on the watcher's
+   * or the HTTP client's threads and must not block.
+   */
+  public interface Listener {
+    //The job's state or node counts changed. The last call for a job is
+    // the one where it's no longer running.
+    void onUpdate(JobStatus status);
+
+    //The orchestrator turned down a poll of the job, or too many polls in
+    // a row failed. The job is no longer being watched.
+    void onError(Exception e);
+  }
+
+  /**
+   * A job's state as of its last poll.
+   */
+  public static final class JobStatus {
+    private final String name;
+    private final String state;
+    private final Integer nodeCount;
+    private final Map<String, Integer> nodeStates;
+
+    JobStatus(String name, String state, Integer nodeCount, Map<String, Integer> nodeStates) {
+      this.name = name;
+      this.state = state;
+      this.nodeCount = nodeCount;
+      this.nodeStates = (nodeStates == null) ? null : Collections.unmodifiableMap(new LinkedHashMap<String, Integer>(nodeStates));
+    }
+
+    public String getName() {
+      return this.name;
+    }
+
+    public String getState() {
+      return this.state;
+    }
+
+    public Integer getNodeCount() {
+      return this.nodeCount;
+    }
+
+    //Null if the orchestrator doesn't report it
+    public Map<String, Integer> getNodeStates() {
+      return this.nodeStates;
+    }
+
+    //Nodes that are done running, or null if the orchestrator doesn't say
+    public Integer getFinishedNodeCount() {
+      if (this.nodeStates == null) {
+        return null;
+      }
+
+      Integer finished = 0;
+
+      for (Map.Entry<String, Integer> entry : this.nodeStates.entrySet()) {
+        String nodeState = entry.getKey();
+
+        if (entry.getValue() != null && !nodeState.equals("new") && !nodeState.equals("ready") && !nodeState.equals("running")) {
+          finished = finished + entry.getValue();
+        }
+      }
+
+      return finished;
+    }
+
+    public boolean isRunning() {
+      return (this.state == null || (!this.state.equals("finished") && !this.state.equals("stopped") && !this.state.equals("failed")));
+    }
+
+    //Changes whenever the job moves forward
+    String getProgress() {
+      return this.state + " " + ((this.nodeStates == null) ? "" : this.nodeStates.toString());
+    }
+  }
+
+  private static class WatchedJob {
+    final String name;
+    final String token;
+    final PuppetJobPollSchedule schedule;
+
+    //Guarded by the watcher's lock
+    final List<Listener> listeners = new ArrayList<Listener>();
+    JobStatus status = null;
+    int failures = 0;
+
+    volatile long nextPoll;
+
+    //Kept between polls so its conditional requests can skip unchanged
+    // responses
+    PuppetJobsIDV1 details = null;
+
+    WatchedJob(String name, String token, PuppetJobPollSchedule schedule) {
+      this.name = name;
+      this.token = token;
+      this.schedule = schedule;
+      this.nextPoll = System.currentTimeMillis() + schedule.getFloor();
+    }
+  }
+
+  /**
+   * Starts telling the listener about the job. If the job is already
+   * watched, the token and schedule it was first watched with are kept.
+   */
+  public void watch(String name, String token, PuppetJobPollSchedule schedule, Listener listener) {
+    synchronized (this.lock) {
+      WatchedJob job = this.jobs.get(name);
+
+      if (job == null) {
+        job = new WatchedJob(name, token, schedule);
+        this.jobs.put(name, job);
+      }
+
+      job.listeners.add(listener);
+
+      //Catch the listener up if the job has been polled already. Done
+      // under the lock so an update racing with this one can't reach the
+      // listener twice.
+      if (job.status != null) {
+        listener.onUpdate(job.status);
+      }
+    }
+  }
+
+  public void unwatch(String name, Listener listener) {
+    synchronized (this.lock) {
+      WatchedJob job = this.jobs.get(name);
+
+      if (job != null) {
+        job.listeners.remove(listener);
+
+        if (job.listeners.isEmpty()) {
+          this.jobs.remove(name, job);
+        }
+      }
+    }
+  }
+
+  //Number of distinct jobs being watched
+  public int getWatchedCount() {
+    return this.jobs.size();
+  }
+
+  private void tick() {
+    long now = System.currentTimeMillis();
+    Map<String, List<WatchedJob>> byToken = new HashMap<String, List<WatchedJob>>();
+    Map<String, Boolean> isDue = new HashMap<String, Boolean>();
+
+    for (WatchedJob job : this.jobs.values()) {
+      String token = (job.token == null) ? "" : job.token;
+      List<WatchedJob> group = byToken.get(token);
+
+      if (group == null) {
+        group = new ArrayList<WatchedJob>();
+        byToken.put(token, group);
+        isDue.put(token, false);
+      }
+
+      group.add(job);
+
+      if (job.nextPoll <= now) {
+        isDue.put(token, true);
+      }
+    }
+
+    //When one job for a token is due, the listing brings every other job
+    // for that token up to date as well. A token whose last poll hasn't
+    // answered yet is left alone until it has.
+    for (Map.Entry<String, List<WatchedJob>> group : byToken.entrySet()) {
+      if (isDue.get(group.getKey()) && this.polling.add(group.getKey())) {
+        poll(group.getKey(), group.getValue(), now);
+      }
+    }
+  }
+
+  /**
+   * Lists enough of the most recent jobs to include the watched ones. The
+   * requests are sent without waiting for them, so a slow orchestrator
+   * doesn't hold up the polls for other tokens.
+   */
+  private void poll(final String key, final List<WatchedJob> watched, final long now) {
+    final String token = watched.get(0).token;
+    PEFuture<ArrayList<PuppetJobsItemV1>> listing;
+
+    try {
+      PuppetJobsV1 jobsList = new PuppetJobsV1();
+      jobsList.setToken(token);
+      jobsList.setLimit(getListLimit(watched));
+
+      listing = jobsList.executeAsync();
+    } catch(Exception e) {
+      listing = PEFuture.failed(e);
+    }
+
+    listing.addCallback(new FutureCallback<ArrayList<PuppetJobsItemV1>>() {
+      @Override public void completed(ArrayList<PuppetJobsItemV1> items) {
+        Map<String, PuppetJobsItemV1> listed = new HashMap<String, PuppetJobsItemV1>();
+
+        for (PuppetJobsItemV1 item : items) {
+          if (item.getName() != null) {
+            listed.put(item.getName(), item);
+            noteJob(item.getName());
+          }
+        }
+
+        polled(key, token, watched, now, listed);
+      }
+
+      //The jobs have to be fetched one by one instead
+      @Override public void failed(Exception e) {
+        logger.log(Level.FINE, "Unable to list Puppet jobs, fetching them one at a time: " + e.getMessage());
+        polled(key, token, watched, now, new HashMap<String, PuppetJobsItemV1>());
+      }
+
+      @Override public void cancelled() {
+        polled(key, token, watched, now, new HashMap<String, PuppetJobsItemV1>());
+      }
+    });
+  }
+
+  //Brings the watched jobs up to date from the listing, and fetches the
+  // due ones it didn't include, e.g. ones older than the jobs listed
+  private void polled(final String key, String token, List<WatchedJob> watched, long now, Map<String, PuppetJobsItemV1> listed) {
+    List<WatchedJob> missing = new ArrayList<WatchedJob>();
+
+    for (WatchedJob job : watched) {
+      PuppetJobsItemV1 item = listed.get(job.name);
+      boolean due = (job.nextPoll <= now);
+
+      if (item != null) {
+        update(job, new JobStatus(job.name, item.getState(), item.getNodeCount(), item.getNodeStates()), due);
+      } else if (due) {
+        missing.add(job);
+      }
+    }
+
+    //The token is polled again once every fetch has answered
+    final AtomicInteger remaining = new AtomicInteger(missing.size() + 1);
+    Runnable answered = new Runnable() {
+      @Override public void run() {
+        if (remaining.decrementAndGet() == 0) {
+          polling.remove(key);
+        }
+      }
+    };
+
+    for (WatchedJob job : missing) {
+      fetch(job, token, answered);
+    }
+
+    answered.run();
+  }
+
+  private void fetch(final WatchedJob job, String token, final Runnable answered) {
+    PEFuture<String> fetched;
+
+    try {
+      if (job.details == null) {
+        job.details = new PuppetJobsIDV1(job.name);
+        job.details.setToken(token);
+      }
+
+      fetched = job.details.executeAsync();
+    } catch(Exception e) {
+      fetched = PEFuture.failed(e);
+    }
+
+    fetched.addCallback(new FutureCallback<String>() {
+      @Override public void completed(String state) {
+        try {
+          update(job, new JobStatus(job.name, state, job.details.getNodeCount(), job.details.getNodeStates()), true);
+        } finally {
+          answered.run();
+        }
+      }
+
+      @Override public void failed(Exception e) {
+        try {
+          pollFailed(job, e);
+        } finally {
+          answered.run();
+        }
+      }
+
+      @Override public void cancelled() {
+        try {
+          pollFailed(job, new CancellationException());
+        } finally {
+          answered.run();
+        }
+      }
+    });
+  }
+
+  private synchronized void noteJob(String name) {
+    this.newestJob = Math.max(this.newestJob, getJobNumber(name));
+  }
+
+  //Job names are sequential numbers, so the listing needs to reach back
+  // from the newest job to the oldest one watched
+  private synchronized int getListLimit(List<WatchedJob> watched) {
+    long oldest = Long.MAX_VALUE;
+    long newest = this.newestJob;
+
+    for (WatchedJob job : watched) {
+      long number = getJobNumber(job.name);
+
+      if (number < 0) {
+        return MAX_LIST_LIMIT;
+      }
+
+      oldest = Math.min(oldest, number);
+      newest = Math.max(newest, number);
+    }
+
+    return (int) Math.max(1, Math.min(MAX_LIST_LIMIT, newest - oldest + 1 + LIST_SLACK));
+  }
+
+  private static long getJobNumber(String name) {
+    try {
+      return Long.parseLong(name);
+    } catch(NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  //Hands a polled status to the job's listeners. Only a job that was due
+  // moves along its schedule, the others merely picked up the status from
+  // a listing made for another job.
+  private void update(WatchedJob job, JobStatus status, boolean due) {
+    List<Listener> listeners;
+
+    synchronized (this.lock) {
+      job.failures = 0;
+
+      if (due) {
+        long delay = job.schedule.next(status.getProgress(), status.getFinishedNodeCount(), status.getNodeCount());
+        job.nextPoll = System.currentTimeMillis() + delay;
+      }
+
+      if (job.status != null && job.status.getProgress().equals(status.getProgress())) {
+        return;
+      }
+
+      job.status = status;
+
+      if (!status.isRunning()) {
+        this.jobs.remove(job.name, job);
+      }
+
+      listeners = new ArrayList<Listener>(job.listeners);
+    }
+
+    for (Listener listener : listeners) {
+      listener.onUpdate(status);
+    }
+  }
+
+  //A poll of the job that failed. Unless the orchestrator turned it down,
+  // the job is polled again after a backoff, and only given up on once
+  // too many polls in a row have failed.
+  private void pollFailed(WatchedJob job, Exception e) {
+    synchronized (this.lock) {
+      job.failures = job.failures + 1;
+
+      if (!(e instanceof PuppetOrchestratorException) && job.failures < MAX_FAILURES) {
+        job.nextPoll = System.currentTimeMillis() + Math.max(job.schedule.getFloor(), PERetryPolicy.backoff(job.failures));
+        logger.log(Level.FINE, "Unable to poll Puppet job " + job.name + ", trying again: " + e.getMessage());
+        return;
+      }
+    }
+
+    fail(job, e);
+  }
+
+  private void fail(WatchedJob job, Exception e) {
+    List<Listener> listeners;
+
+    synchronized (this.lock) {
+      this.jobs.remove(job.name, job);
+      listeners = new ArrayList<Listener>(job.listeners);
+    }
+
+    for (Listener listener : listeners) {
+      listener.onError(e);
+    }
+  }
+
+  //Delivers a status as a poll of the job would, for tests
+  void update(String name, JobStatus status, boolean due) {
+    WatchedJob job = this.jobs.get(name);
+
+    if (job != null) {
+      update(job, status, due);
+    }
+  }
+
+  //Delivers a failed poll of a job, for tests
+  void pollFailed(String name, Exception e) {
+    WatchedJob job = this.jobs.get(name);
+
+    if (job != null) {
+      pollFailed(job, e);
+    }
+  }
+
+  //Next poll of a watched job, for tests
+  long getNextPoll(String name) {
+    WatchedJob job = this.jobs.get(name);
+    return (job == null) ? -1 : job.nextPoll;
+  }
+}
@@ -0,0 +1,27 @@
+package org.jenkinsci.plugins.puppetenterprise.models;
+
+/**
+ * A number of nodes given either as a count like "10" or as a percentage
+ * of all the nodes like "95%", e.g. a rollout's wave sizes and failure
+ * threshold, or the quorum to wait for.
+ */
+public final class PuppetNodeCount {
+  private PuppetNodeCount() { }
+
+  //Turns a count or a percentage of the total into a number of nodes,
+  // rounding percentages up
+  public static int resolve(String amount, int total) {
+    String value = amount.trim();
+
+    try {
+      if (value.endsWith("%")) {
+        double percent = Double.parseDouble(value.substring(0, value.length() - 1).trim());
+        return (int) Math.ceil(total * percent / 100);
+      }
+
+      return Integer.parseInt(value);
+    } catch(NumberFormatException e) {
+      throw new IllegalArgumentException("Expected a number of nodes or a percentage, got: " + amount);
+    }
+  }
+}
@@ -0,0 +1,157 @@
+package org.jenkinsci.plugins.puppetenterprise.models;
+
+import java.io.PrintStream;
+import java.util.*;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetOrchestratorException;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetInventoryItemV1;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetInventoryV1;
+
+/**
+ * Tracks which of a list of nodes have connected to the orchestrator.
+ *
+ * Nodes stay connected once they've been seen connected, so each poll
+ * only asks the inventory about the nodes still pending, a chunk at a
+ * time. Polls back off while no new nodes connect, using the same
+ * schedule as polling a running job.
+ */
+public class PuppetNodeReadiness {
+  //Most nodes asked about in a single inventory request
+  private static final int CHUNK_SIZE = Integer.getInteger(PuppetNodeReadiness.class.getName() + ".chunkSize", 500);
+
+  private final List<String> nodes;
+  private final Set<String> connected = new LinkedHashSet<String>();
+  private final PuppetJobPollSchedule schedule;
+  private String token = null;
+  private int quorum;
+
+  public PuppetNodeReadiness(List<String> nodes) {
+    this(nodes, new PuppetJobPollSchedule());
+  }
+
+  PuppetNodeReadiness(List<String> nodes, PuppetJobPollSchedule schedule) {
+    this.nodes = new ArrayList<String>(new LinkedHashSet<String>(nodes));
+    this.schedule = schedule;
+    this.quorum = this.nodes.size();
+  }
+
+  public void setToken(String token) {
+    this.token = token;
+  }
+
+  //Nodes that need to connect before the wait is over, a count like "10"
+  // or a percentage like "95%". Defaults to all of them.
+  public void setQuorum(String quorum) {
+    if (quorum != null) {
+      this.quorum = Math.min(this.nodes.size(), Math.max(0, PuppetNodeCount.resolve(quorum, this.nodes.size())));
+    }
+  }
+
+  public int getQuorum() {
+    return this.quorum;
+  }
+
+  public boolean isQuorumReached() {
+    return (this.connected.size() >= this.quorum);
+  }
+
+  /**
+   * Polls until the quorum has connected or the deadline, in milliseconds
+   * since the epoch, has passed, and returns whether the quorum was
+   * reached. The orchestrator turning the request down fails the wait
+   * right away, anything else, e.g. the orchestrator restarting, is
+   * retried until the deadline.
+   */
+  public boolean await(long deadline, PrintStream logger) throws PuppetOrchestratorException, InterruptedException {
+    int reported = 0;
+
+    while (true) {
+      long wait;
+
+      try {
+        wait = poll();
+      } catch(PuppetOrchestratorException e) {
+        throw e;
+      } catch(Exception e) {
+        logger.println("Unable to check which nodes are connected, trying again: " + e.getMessage());
+        wait = next();
+      }
+
+      if (this.connected.size() != reported) {
+        reported = this.connected.size();
+        logger.println(reported + " of " + this.nodes.size() + " nodes connected");
+      }
+
+      if (isQuorumReached()) {
+        return true;
+      }
+
+      long remaining = deadline - System.currentTimeMillis();
+
+      if (remaining <= 0) {
+        return false;
+      }
+
+      Thread.sleep(Math.min(wait, remaining));
+    }
+  }
+
+  /**
+   * Asks the inventory about the pending nodes and returns how long to
+   * wait before the next poll.
+   */
+  public long poll() throws PuppetOrchestratorException, Exception {
+    List<String> pending = getPending();
+
+    for (int start = 0; start < pending.size(); start = start + CHUNK_SIZE) {
+      List<String> chunk = new ArrayList<String>(pending.subList(start, Math.min(pending.size(), start + CHUNK_SIZE)));
+
+      this.connected.addAll(fetchConnected(chunk));
+    }
+
+    return next();
+  }
+
+  //Which of the nodes the inventory says are connected
+  List<String> fetchConnected(List<String> chunk) throws PuppetOrchestratorException, Exception {
+    List<String> found = new ArrayList<String>();
+    PuppetInventoryV1 inventory = new PuppetInventoryV1();
+    inventory.setNodes(new ArrayList<String>(chunk));
+    inventory.setToken(this.token);
+
+    for (PuppetInventoryItemV1 node : inventory.execute()) {
+      if (node.getConnected() != null && node.getConnected()) {
+        found.add(node.getName());
+      }
+    }
+
+    return found;
+  }
+
+  private long next() {
+    return this.schedule.next(String.valueOf(this.connected.size()), this.connected.size(), this.nodes.size());
+  }
+
+  public List<String> getPending() {
+    List<String> pending = new ArrayList<String>();
+
+    for (String node : this.nodes) {
+      if (!this.connected.contains(node)) {
+        pending.add(node);
+      }
+    }
+
+    return pending;
+  }
+
+  public int getConnectedCount() {
+    return this.connected.size();
+  }
+
+  public int getNodeCount() {
+    return this.nodes.size();
+  }
+
+  public int getPollCount() {
+    return this.schedule.getPolls();
+  }
+}
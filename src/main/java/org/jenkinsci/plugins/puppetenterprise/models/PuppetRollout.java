@@ -0,0 +1,368 @@
+package org.jenkinsci.plugins.puppetenterprise.models;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.Executor;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetOrchestratorException;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.puppetnodev1.*;
+
+/**
+ * Runs Puppet across a list of nodes in waves, one orchestrator job per
+ * wave.
+ *
+ * Wave sizes are node counts or percentages of all the nodes, e.g. 1, "10%"
+ * and "50%", and the last size repeats until every node has had a wave.
+ * Up to maxInFlight waves run at once and the next wave is deployed as
+ * soon as one finishes, without holding a thread while they run. Each wave
+ * also takes one of the job slots shared by every build, see
+ * PuppetJobSlots, and waits for one when none are free. Once
+ * more nodes have failed than the failure threshold allows, no more waves
+ * are started and the ones still running are stopped.
+ */
+public class PuppetRollout {
+  private ArrayList<String> nodes = new ArrayList<String>();
+  private ArrayList<String> waves = new ArrayList<String>();
+  private Integer maxInFlight = 1;
+  private String failureThreshold = "0";
+  private String environment = null;
+  private Integer concurrency = null;
+  private Boolean noop = null;
+  private String token = null;
+  private PrintStream logger = null;
+  private File spoolDirectory = null;
+  private Executor executor = null;
+
+  private List<List<String>> plan = null;
+  private Integer failureBudget = 0;
+  private int nextWave = 0;
+  private int inFlight = 0;
+  private int completedWaves = 0;
+  private int failedNodes = 0;
+  private boolean aborted = false;
+  private Exception error = null;
+  private final List<PuppetJob> running = new ArrayList<PuppetJob>();
+
+  public void setNodes(List<String> nodes) {
+    this.nodes = new ArrayList<String>(nodes);
+  }
+
+  //Each wave's size, a count like "10" or a percentage like "10%"
+  public void setWaves(List<String> waves) {
+    this.waves = new ArrayList<String>(waves);
+  }
+
+  public void setMaxInFlight(Integer maxInFlight) {
+    this.maxInFlight = (maxInFlight == null) ? 1 : Math.max(1, maxInFlight);
+  }
+
+  //Failed nodes to tolerate, a count like "2" or a percentage like "5%"
+  public void setFailureThreshold(String failureThreshold) {
+    this.failureThreshold = (failureThreshold == null) ? "0" : failureThreshold;
+  }
+
+  public void setEnvironment(String environment) {
+    this.environment = environment;
+  }
+
+  public void setConcurrency(Integer concurrency) {
+    this.concurrency = concurrency;
+  }
+
+  public void setNoop(Boolean noop) {
+    this.noop = noop;
+  }
+
+  public void setToken(String token) {
+    this.token = token;
+  }
+
+  public void setLogger(PrintStream logger) {
+    this.logger = logger;
+  }
+
+  public void setSpoolDirectory(File directory) {
+    this.spoolDirectory = directory;
+  }
+
+  //Where finished waves are handled and the next ones deployed
+  public void setExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Splits the nodes into waves of the given sizes, repeating the last
+   * size until every node is in a wave.
+   */
+  public static List<List<String>> plan(List<String> nodes, List<String> waves) {
+    List<List<String>> plan = new ArrayList<List<String>>();
+    List<String> sizes = waves.isEmpty() ? Arrays.asList("100%") : waves;
+    int next = 0;
+
+    while (next < nodes.size()) {
+      String size = sizes.get(Math.min(plan.size(), sizes.size() - 1));
+      int count = Math.max(1, PuppetNodeCount.resolve(size, nodes.size()));
+      int end = Math.min(nodes.size(), next + count);
+
+      plan.add(new ArrayList<String>(nodes.subList(next, end)));
+      next = end;
+    }
+
+    return plan;
+  }
+
+  /**
+   * Runs every wave, or as many as the failure threshold allows, and
+   * returns once none are running. The calling thread only waits, the
+   * waves are deployed and watched on the executor.
+   */
+  public void run() throws PuppetOrchestratorException, Exception {
+    this.plan = plan(this.nodes, this.waves);
+    this.failureBudget = Math.max(0, PuppetNodeCount.resolve(this.failureThreshold, this.nodes.size()));
+
+    this.logger.println("Rolling out to " + this.nodes.size() + " nodes in " + this.plan.size() + " waves, "
+      + this.maxInFlight + " at a time, tolerating " + this.failureBudget + " failed nodes");
+
+    fill();
+
+    try {
+      synchronized (this) {
+        while (this.inFlight > 0 || (!this.aborted && this.error == null && this.nextWave < this.plan.size())) {
+          wait();
+        }
+      }
+    } catch(InterruptedException e) {
+      abort("the build was aborted");
+      throw e;
+    }
+
+    if (this.error != null) {
+      throw this.error;
+    }
+
+    this.logger.println("Rollout " + (this.aborted ? "aborted" : "finished") + ": " + this.completedWaves + " of "
+      + this.plan.size() + " waves ran, " + this.failedNodes + " nodes failed");
+  }
+
+  //Deploys waves until maxInFlight are running, every wave has been
+  // started or the rollout has stopped. A wave that has to wait for a
+  // shared job slot is deployed once another job gives one back.
+  private void fill() {
+    while (true) {
+      int index;
+
+      synchronized (this) {
+        if (this.aborted || this.error != null || this.nextWave >= this.plan.size() || this.inFlight >= this.maxInFlight) {
+          return;
+        }
+
+        index = this.nextWave;
+        this.nextWave = this.nextWave + 1;
+        this.inFlight = this.inFlight + 1;
+      }
+
+      final int wave = index;
+      boolean acquired = PuppetJobSlots.get().acquire(new Runnable() {
+        @Override public void run() {
+          //Off the thread that gave the slot back, deploying blocks
+          executor.execute(new Runnable() {
+            @Override public void run() {
+              deployWaiting(wave);
+            }
+          });
+        }
+      });
+
+      if (acquired) {
+        deploy(index);
+      } else {
+        this.logger.println("Wave " + (index + 1) + " of " + this.plan.size() + ": waiting for one of the "
+          + PuppetJobSlots.get().getSize() + " Puppet job slots shared by all builds");
+      }
+    }
+  }
+
+  //A wave that waited for a slot got one
+  private void deployWaiting(int index) {
+    boolean stopped;
+
+    synchronized (this) {
+      stopped = (this.aborted || this.error != null);
+
+      //The rollout stopped while the wave was waiting, so it's given up
+      if (stopped) {
+        this.inFlight = this.inFlight - 1;
+        notifyAll();
+      }
+    }
+
+    if (stopped) {
+      PuppetJobSlots.get().release();
+      return;
+    }
+
+    deploy(index);
+  }
+
+  private void deploy(final int index) {
+    final List<String> wave = this.plan.get(index);
+    final PuppetJob job = new PuppetJob();
+
+    job.setScope(null, new ArrayList<String>(wave), null);
+    job.setEnvironment(this.environment);
+    job.setConcurrency(this.concurrency);
+    job.setNoop(this.noop);
+    job.setToken(this.token);
+    job.setLogger(this.logger);
+    job.setSpoolDirectory(this.spoolDirectory);
+
+    this.logger.println("Wave " + (index + 1) + " of " + this.plan.size() + ": " + wave.size() + " nodes");
+
+    try {
+      job.start();
+    } catch(Exception e) {
+      fail(e);
+      return;
+    }
+
+    boolean stopping;
+
+    synchronized (this) {
+      this.running.add(job);
+      stopping = this.aborted;
+    }
+
+    //The rollout was aborted while the wave was being deployed, after
+    // abort() had already stopped the jobs it knew about. The job is
+    // still watched so its wave is accounted for once it stops.
+    if (stopping) {
+      stop(job);
+    }
+
+    job.watch(this.executor, new PuppetJob.Callback() {
+      @Override public void onFinished() {
+        finished(index, job);
+      }
+
+      @Override public void onError(Exception e) {
+        synchronized (PuppetRollout.this) {
+          running.remove(job);
+        }
+
+        fail(e);
+      }
+    });
+  }
+
+  private void finished(int index, PuppetJob job) {
+    int failed = 0;
+
+    //The nodes may still be paged in from the orchestrator, which can fail
+    // part way through
+    try {
+      if (job.getNodes() != null) {
+        for (PuppetNodeItemV1 node : job.getNodes()) {
+          if (node != null && ("failed".equals(node.getState()) || "errored".equals(node.getState()))) {
+            failed = failed + 1;
+          }
+        }
+      }
+    } catch(Exception e) {
+      job.discardReport();
+
+      synchronized (this) {
+        this.running.remove(job);
+      }
+
+      fail(e);
+      return;
+    }
+
+    job.discardReport();
+
+    this.logger.println("Wave " + (index + 1) + " of " + this.plan.size() + ": Puppet job " + job.getName() + " "
+      + job.getState() + ", " + failed + " nodes failed");
+
+    boolean overBudget;
+
+    synchronized (this) {
+      this.running.remove(job);
+      this.inFlight = this.inFlight - 1;
+      this.completedWaves = this.completedWaves + 1;
+      this.failedNodes = this.failedNodes + failed;
+      overBudget = (this.failedNodes > this.failureBudget);
+      notifyAll();
+    }
+
+    PuppetJobSlots.get().release();
+
+    if (overBudget) {
+      abort(this.failedNodes + " nodes failed, more than the " + this.failureBudget + " allowed");
+    } else {
+      fill();
+    }
+  }
+
+  private void fail(Exception e) {
+    synchronized (this) {
+      if (this.error == null) {
+        this.error = e;
+      }
+
+      this.inFlight = this.inFlight - 1;
+      notifyAll();
+    }
+
+    PuppetJobSlots.get().release();
+    abort("a wave couldn't be run");
+  }
+
+  //Stops starting waves and stops the ones still running
+  private void abort(String reason) {
+    List<PuppetJob> jobs;
+
+    synchronized (this) {
+      if (this.aborted) {
+        return;
+      }
+
+      this.aborted = true;
+      jobs = new ArrayList<PuppetJob>(this.running);
+      notifyAll();
+    }
+
+    this.logger.println("Stopping the rollout, " + reason);
+
+    for (PuppetJob job : jobs) {
+      stop(job);
+    }
+  }
+
+  private void stop(PuppetJob job) {
+    try {
+      job.requestStop();
+      this.logger.println("Stopping Puppet job " + job.getName());
+    } catch(Exception e) {
+      this.logger.println("Unable to stop Puppet job " + job.getName() + ": " + e.getMessage());
+    }
+  }
+
+  public synchronized boolean isAborted() {
+    return this.aborted;
+  }
+
+  public synchronized int getWaveCount() {
+    return (this.plan == null) ? 0 : this.plan.size();
+  }
+
+  public synchronized int getCompletedWaves() {
+    return this.completedWaves;
+  }
+
+  public synchronized int getFailedNodeCount() {
+    return this.failedNodes;
+  }
+
+  public synchronized int getFailureBudget() {
+    return this.failureBudget;
+  }
+}
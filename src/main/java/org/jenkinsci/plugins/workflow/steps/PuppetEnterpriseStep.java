@@ -29,6 +29,12 @@ public abstract class PuppetEnterpriseStep extends AbstractStepImpl implements S
   }
 
   public String getToken() {
+    return getToken(credentialsId);
+  }
+
+  //For step executions, which keep the credentials' id rather than the
+  // secret itself
+  protected static String getToken(String credentialsId) {
     return lookupCredentials(credentialsId).getSecret().toString();
   }
 
@@ -1,7 +1,5 @@
 package org.jenkinsci.plugins.workflow.steps;
 
-import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
-
 import java.util.*;
 import com.google.inject.Inject;
 import hudson.Extension;
@@ -11,8 +9,10 @@ import hudson.security.ACL;
 import java.util.ArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.concurrent.CancellationException;
 import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
 import org.apache.commons.lang.StringUtils;
+import hudson.model.Computer;
 import hudson.model.Run;
 import hudson.model.Item;
 import hudson.model.TaskListener;
@@ -22,7 +22,7 @@ import javax.annotation.Nonnull;
 
 import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
-import org.jenkinsci.plugins.workflow.steps.AbstractSynchronousStepExecution;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
 import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
 import org.jenkinsci.plugins.plaincredentials.*;
 import org.apache.commons.lang.StringUtils;
@@ -44,9 +44,14 @@ import com.google.gson.internal.LinkedTreeMap;
 
 import org.jenkinsci.plugins.puppetenterprise.PuppetEnterpriseManagement;
 import org.jenkinsci.plugins.puppetenterprise.models.PuppetJob;
+import org.jenkinsci.plugins.puppetenterprise.models.PuppetJobPollAction;
+import org.jenkinsci.plugins.puppetenterprise.models.PuppetJobReport;
+import org.jenkinsci.plugins.puppetenterprise.models.PuppetJobSlots;
 import org.jenkinsci.plugins.puppetenterprise.models.UnknownPuppetJobReportType;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetOrchestratorException;
 import org.jenkinsci.plugins.puppetenterprise.models.PEException;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEFuture;
+import org.apache.http.concurrent.FutureCallback;
 
 public final class PuppetJobStep extends PuppetEnterpriseStep implements Serializable {
 
@@ -59,6 +64,10 @@ public final class PuppetJobStep extends PuppetEnterpriseStep implements Seriali
   private String environment = null;
   private String credentialsId = "";
   private ArrayList<String> reports = null;
+  private Integer minPollInterval = null;
+  private Integer maxPollInterval = null;
+  private ArrayList scopes = null;
+  private Integer maxInFlight = null;
 
   @DataBoundSetter private void setTarget(String target) {
     this.target = Util.fixEmpty(target);
@@ -92,6 +101,22 @@ public final class PuppetJobStep extends PuppetEnterpriseStep implements Seriali
     this.application = application;
   }
 
+  @DataBoundSetter private void setMinPollInterval(Integer minPollInterval) {
+    this.minPollInterval = minPollInterval;
+  }
+
+  @DataBoundSetter private void setMaxPollInterval(Integer maxPollInterval) {
+    this.maxPollInterval = maxPollInterval;
+  }
+
+  @DataBoundSetter private void setScopes(ArrayList scopes) {
+    this.scopes = scopes;
+  }
+
+  @DataBoundSetter private void setMaxInFlight(Integer maxInFlight) {
+    this.maxInFlight = maxInFlight;
+  }
+
   public String getQuery() {
     return this.query;
   }
@@ -124,75 +149,529 @@ public final class PuppetJobStep extends PuppetEnterpriseStep implements Seriali
     return this.reports;
   }
 
-  @DataBoundConstructor public PuppetJobStep() { }
+  //Shortest wait between polls of the running job, in milliseconds
+  public Integer getMinPollInterval() {
+    return this.minPollInterval;
+  }
 
-  public static class PuppetJobStepExecution extends AbstractSynchronousStepExecution<Void> {
+  //Longest wait between polls of the running job, in milliseconds
+  public Integer getMaxPollInterval() {
+    return this.maxPollInterval;
+  }
+
+  //Several scopes to run a job for each, as maps with the same keys as the
+  // target, nodes, application and query parameters
+  public ArrayList getScopes() {
+    return this.scopes;
+  }
+
+  //Most of the scopes' jobs running at once
+  public Integer getMaxInFlight() {
+    return this.maxInFlight;
+  }
+
+  @DataBoundConstructor public PuppetJobStep() { }
 
-    @Inject private transient PuppetJobStep step;
+  /**
+   * Starts a job for each scope, at most maxInFlight of them at a time,
+   * and returns without holding a thread while they run. Once they're all
+   * done, a single report covers every job. The jobs' names are saved with
+   * the build, so after a restart the step picks the same jobs back up
+   * instead of deploying them again, and deploys the scopes that were
+   * still waiting for their turn.
+   */
+  public static class PuppetJobStepExecution extends AbstractStepExecutionImpl {
+    //Most jobs running at once for a step with several scopes that doesn't
+    // set maxInFlight. Every step's jobs also count against the limit
+    // shared by all builds, see PuppetJobSlots.
+    private static final int DEFAULT_MAX_IN_FLIGHT = Integer.getInteger(PuppetJobStep.class.getName() + ".maxInFlight", 4);
+
+    //Only injected on start, so start() copies what the step asked for
+    // into the fields below, which are kept with the build
+    @Inject(optional=true) private transient PuppetJobStep step;
     @StepContextParameter private transient Run<?, ?> run;
     @StepContextParameter private transient TaskListener listener;
 
-    @SuppressFBWarnings(
-      value = "DLS_DEAD_LOCAL_STORE",
-      justification = "Findbugs is wrong. The variable is not a dead store."
-    )
-    @Override protected Void run() throws Exception {
+    private String credentialsId = null;
+    private String environment = null;
+    private String target = null;
+    private String application = null;
+    private ArrayList nodes = null;
+    private String query = null;
+    private ArrayList scopes = null;
+    private ArrayList<String> reports = null;
+    private Boolean noop = false;
+    private Integer concurrency = null;
+    private Integer minPollInterval = null;
+    private Integer maxPollInterval = null;
+    private Integer maxInFlight = null;
+
+    //The job started for each scope, null until it's deployed
+    private ArrayList<String> jobNames = null;
+    private transient ArrayList<PuppetJob> jobs = null;
+    private transient int nextScope = 0;
+    private transient int inFlight = 0;
+    private transient Exception error = null;
+    private transient boolean finishing = false;
+    private transient volatile boolean stopping = false;
+    private transient boolean completed = false;
+
+    @Override public boolean start() throws Exception {
+      this.credentialsId = step.getCredentialsId();
+      this.environment = step.getEnvironment();
+      this.target = step.getTarget();
+      this.application = step.getApplication();
+      this.nodes = step.getNodes();
+      this.query = step.getQuery();
+      this.scopes = step.getScopes();
+      this.reports = step.getReports();
+      this.noop = step.getNoop();
+      this.concurrency = step.getConcurrency();
+      this.minPollInterval = step.getMinPollInterval();
+      this.maxPollInterval = step.getMaxPollInterval();
+      this.maxInFlight = step.getMaxInFlight();
+
+      int count = (this.scopes == null) ? 1 : this.scopes.size();
+
+      if (count == 0) {
+        throw new PEException("No scopes were given for the Puppet job", listener);
+      }
+
+      if (count > 1) {
+        listener.getLogger().println("Starting " + count + " Puppet jobs, " + Math.min(count, getMaxInFlight()) + " at a time");
+      }
+
+      this.jobNames = new ArrayList<String>(Collections.nCopies(count, (String) null));
+      this.jobs = new ArrayList<PuppetJob>(Collections.nCopies(count, (PuppetJob) null));
+
+      submit();
+
+      return false;
+    }
+
+    @Override public void onResume() {
+      super.onResume();
+
+      if (this.jobNames == null) {
+        complete(new Exception("Jenkins restarted before the Puppet job was started"));
+        return;
+      }
+
+      this.jobs = new ArrayList<PuppetJob>(Collections.nCopies(this.jobNames.size(), (PuppetJob) null));
+
+      try {
+        for (int index = 0; index < this.jobNames.size(); index++) {
+          String name = this.jobNames.get(index);
+
+          if (name == null) {
+            continue;
+          }
+
+          listener.getLogger().println("Resuming Puppet job " + name);
+
+          PuppetJob job = createJob(index);
+          job.attach(name);
+
+          synchronized (this) {
+            this.jobs.set(index, job);
+            this.inFlight = this.inFlight + 1;
+          }
+
+          //Already running, so it counts against the shared limit
+          // whether or not there's room
+          PuppetJobSlots.get().take();
+
+          watch(job);
+        }
+      } catch(Exception e) {
+        complete(e);
+        return;
+      }
+
+      submit();
+    }
+
+    //Sends the stops right away, then waits out the grace period and
+    // prints which nodes ran in the background
+    @Override public void stop(@Nonnull final Throwable cause) throws Exception {
+      final List<PuppetJob> stopped = new ArrayList<PuppetJob>();
+
+      synchronized (this) {
+        this.stopping = true;
+
+        if (this.jobs != null) {
+          for (PuppetJob job : this.jobs) {
+            if (job != null && job.getName() != null) {
+              stopped.add(job);
+            }
+          }
+        }
+      }
+
+      for (PuppetJob job : new ArrayList<PuppetJob>(stopped)) {
+        listener.getLogger().println("Stopping Puppet job " + job.getName());
+
+        try {
+          job.requestStop();
+        } catch(Exception e) {
+          listener.getLogger().println("Unable to stop Puppet job " + job.getName() + ": " + e.getMessage());
+          stopped.remove(job);
+        }
+      }
+
+      if (stopped.isEmpty()) {
+        complete(cause);
+        return;
+      }
+
+      Computer.threadPoolForRemoting.submit(new Runnable() {
+        @Override public void run() {
+          //The jobs were all sent their stop at once, so they share the
+          // grace period
+          long deadline = System.currentTimeMillis() + PuppetJob.DEFAULT_STOP_GRACE_MILLIS;
+
+          try {
+            for (PuppetJob job : stopped) {
+              try {
+                job.stop(Math.max(0, deadline - System.currentTimeMillis()));
+              } catch(Exception e) {
+                listener.getLogger().println("Unable to stop Puppet job " + job.getName() + ": " + e.getMessage());
+              }
+            }
+
+            listener.getLogger().println(new PuppetJobReport(stopped).formatStopReport());
+          } finally {
+            for (PuppetJob job : stopped) {
+              job.discardReport();
+            }
+
+            complete(cause);
+          }
+        }
+      });
+    }
+
+    @Override public synchronized String getStatus() {
+      List<String> started = new ArrayList<String>();
+
+      if (this.jobNames != null) {
+        for (String name : this.jobNames) {
+          if (name != null) {
+            started.add(name);
+          }
+        }
+      }
+
+      if (started.isEmpty()) {
+        return "Starting Puppet job";
+      }
+
+      return ((started.size() == 1) ? "Waiting for Puppet job " : "Waiting for Puppet jobs ") + StringUtils.join(started, ", ");
+    }
+
+    private int getMaxInFlight() {
+      return (this.maxInFlight == null) ? DEFAULT_MAX_IN_FLIGHT : Math.max(1, this.maxInFlight);
+    }
+
+    private PuppetJob createJob(int index) {
       PuppetJob job = new PuppetJob();
-      job.setConcurrency(step.getConcurrency());
-      job.setNoop(step.getNoop());
-      job.setEnvironment(step.getEnvironment());
-      job.setToken(step.getToken());
+      job.setConcurrency(this.concurrency);
+      job.setNoop(this.noop);
+      job.setEnvironment(this.environment);
+      job.setToken(getToken(this.credentialsId));
       job.setLogger(listener.getLogger());
+      job.setSpoolDirectory(run.getRootDir());
+      job.setPollInterval(this.minPollInterval, this.maxPollInterval);
+      job.setReports(this.reports);
+
+      String target = this.target;
+      String application = this.application;
+      ArrayList nodes = this.nodes;
+      String query = this.query;
+
+      if (this.scopes != null) {
+        Map scope = (Map) this.scopes.get(index);
+
+        target = getString(scope, "target");
+        application = getString(scope, "application");
+        nodes = (ArrayList) scope.get("nodes");
+        query = getString(scope, "query");
+      }
 
       // Target is still supported to support older versions of PE.
       // 2016.4 installs of PE should use the scope parameter when
       // creating orchestrator jobs.
-      if (step.getTarget() != null && !step.getTarget().isEmpty()) {
-        job.setTarget(step.getTarget());
+      if (target != null && !target.isEmpty()) {
+        job.setTarget(target);
       } else {
-        job.setScope(step.getApplication(), step.getNodes(), step.getQuery());
+        job.setScope(application, nodes, query);
+      }
+
+      return job;
+    }
+
+    private static String getString(Map scope, String key) {
+      Object value = scope.get(key);
+      return (value == null) ? null : value.toString();
+    }
+
+    //Deploys scopes until maxInFlight jobs are running, or finishes the
+    // step once every job is done. Each job also needs one of the slots
+    // shared by every build, a scope that has to wait for one is deployed
+    // once another job gives its slot back.
+    private void submit() {
+      while (true) {
+        int index;
+
+        synchronized (this) {
+          if (this.stopping || this.finishing) {
+            return;
+          }
+
+          if (this.error != null || this.inFlight >= getMaxInFlight() || this.nextScope >= this.jobNames.size()) {
+            if (this.inFlight > 0 || (this.error == null && this.nextScope < this.jobNames.size())) {
+              return;
+            }
+
+            this.finishing = true;
+            break;
+          }
+
+          index = this.nextScope;
+          this.nextScope = this.nextScope + 1;
+
+          //Picked back up after a restart
+          if (this.jobNames.get(index) != null) {
+            continue;
+          }
+
+          this.inFlight = this.inFlight + 1;
+        }
+
+        final int scope = index;
+        boolean acquired = PuppetJobSlots.get().acquire(new Runnable() {
+          @Override public void run() {
+            deployWaiting(scope);
+          }
+        });
+
+        if (acquired) {
+          deploy(index);
+        } else {
+          listener.getLogger().println("Waiting for one of the " + PuppetJobSlots.get().getSize()
+            + " Puppet job slots shared by all builds");
+        }
+      }
+
+      finish();
+    }
+
+    //A scope that waited for a slot got one
+    private void deployWaiting(int index) {
+      boolean failed;
+
+      synchronized (this) {
+        failed = (this.error != null);
+      }
+
+      //stop() came in while the scope was waiting
+      if (this.stopping) {
+        PuppetJobSlots.get().release();
+        return;
+      }
+
+      //Another scope failed while this one was waiting, so it's given up
+      // as if it had been done
+      if (failed) {
+        done(null);
+        return;
+      }
+
+      deploy(index);
+    }
+
+    private void deploy(final int index) {
+      final PuppetJob job = createJob(index);
+      PEFuture<String> started;
+
+      synchronized (this) {
+        this.jobs.set(index, job);
       }
 
       try {
-        String summary = "";
+        started = job.startAsync();
+      } catch(Exception e) {
+        done(e);
+        return;
+      }
 
-        job.run();
+      started.addCallback(new FutureCallback<String>() {
+        @Override public void completed(String name) {
+          synchronized (PuppetJobStepExecution.this) {
+            jobNames.set(index, name);
+          }
 
-        summary = "Puppet job " + job.getName() + " " + job.getState() + "\n";
+          //Saved now rather than whenever the build is next saved, so a
+          // restart from here on picks the job back up instead of deploying
+          // it again
+          getContext().saveState();
 
-        try {
-          listener.getLogger().println(job.generateReport(step.getReports()));
-        } catch(UnknownPuppetJobReportType e) {
-          throw new Exception(e.getMessage());
-        } catch(Exception e) {
-          StringBuilder bug = new StringBuilder();
-          bug.append("You found a bug! The Puppet Enterprise plugin received something ");
-          bug.append("in a job report it wasn't expecting. Please file a ticket here: ");
-          bug.append("https://issues.jenkins-ci.org/browse/JENKINS-42899?jql=project%20%3D%20JENKINS%20AND%20component%20%3D%20'puppet-enterprise-pipeline-plugin'\n\n");
-          bug.append("Include the following information:\n");
-          bug.append("Exception Type: " + e.getClass().getSimpleName() + "\n");
-          bug.append("Exception Message: " + e.getMessage() + "\n");
+          //stop() came in while the job was being deployed. The job isn't
+          // watched, so its slot is given back here.
+          if (stopping) {
+            PuppetJobSlots.get().release();
+
+            try {
+              job.requestStop();
+            } catch(Exception e) {
+              listener.getLogger().println("Unable to stop Puppet job " + name + ": " + e.getMessage());
+            }
+
+            return;
+          }
+
+          watch(job);
+        }
+
+        @Override public void failed(final Exception e) {
+          //Off the HTTP client's thread, finishing may generate the report
+          Computer.threadPoolForRemoting.submit(new Runnable() {
+            @Override public void run() {
+              done(e);
+            }
+          });
+        }
+
+        @Override public void cancelled() {
+          done(new CancellationException());
+        }
+      });
+    }
+
+    private void watch(final PuppetJob job) {
+      job.watch(Computer.threadPoolForRemoting, new PuppetJob.Callback() {
+        @Override public void onFinished() {
+          done(null);
+        }
+
+        @Override public void onError(Exception e) {
+          done(e);
+        }
+      });
+    }
+
+    //A job is done, or couldn't be deployed or watched, and gives its slot
+    // back. After the first failure no more scopes are deployed, but the
+    // jobs already running are still waited for.
+    private void done(Exception failure) {
+      synchronized (this) {
+        if (failure != null && this.error == null) {
+          this.error = failure;
+        }
+
+        this.inFlight = this.inFlight - 1;
+      }
+
+      PuppetJobSlots.get().release();
+      submit();
+    }
+
+    private void finish() {
+      //stop() reports on the jobs itself
+      if (this.stopping) {
+        return;
+      }
+
+      List<PuppetJob> finished = new ArrayList<PuppetJob>();
+
+      synchronized (this) {
+        for (PuppetJob job : this.jobs) {
+          if (job != null && job.getState() != null) {
+            finished.add(job);
+          }
+        }
+      }
 
-          throw new Exception(bug.toString());
+      try {
+        if (!finished.isEmpty()) {
+          for (PuppetJob job : finished) {
+            PuppetJobPollAction.record(run, job.getName(), job.getPollCount(), job.getPollDuration());
+          }
+
+          try {
+            PuppetJobReport report = new PuppetJobReport(finished);
+            report.setReports(this.reports);
+            listener.getLogger().println(report.generateReport());
+          } catch(UnknownPuppetJobReportType e) {
+            throw new Exception(e.getMessage());
+          } catch(Exception e) {
+            StringBuilder bug = new StringBuilder();
+            bug.append("You found a bug! The Puppet Enterprise plugin received something ");
+            bug.append("in a job report it wasn't expecting. Please file a ticket here: ");
+            bug.append("https://issues.jenkins-ci.org/browse/JENKINS-42899?jql=project%20%3D%20JENKINS%20AND%20component%20%3D%20'puppet-enterprise-pipeline-plugin'\n\n");
+            bug.append("Include the following information:\n");
+            bug.append("Exception Type: " + e.getClass().getSimpleName() + "\n");
+            bug.append("Exception Message: " + e.getMessage() + "\n");
+
+            throw new Exception(bug.toString());
+          }
         }
 
-        if (job.failed() || job.stopped()) {
-          throw new Exception(summary);
+        if (this.error instanceof PuppetOrchestratorException) {
+          throw orchestratorError((PuppetOrchestratorException) this.error);
+        } else if (this.error != null) {
+          throw this.error;
+        }
+
+        StringBuilder summary = new StringBuilder();
+
+        for (PuppetJob job : finished) {
+          if (job.failed() || job.stopped()) {
+            summary.append("Puppet job " + job.getName() + " " + job.getState() + "\n");
+          }
         }
-      } catch(PuppetOrchestratorException e) {
-        StringBuilder message = new StringBuilder();
-        message.append("Puppet Orchestrator Job Error\n");
-        message.append("Kind:    " + e.getKind() + "\n");
-        message.append("Message: " + e.getMessage() + "\n");
 
-        if (e.getDetails() != null) {
-          message.append("Details: " + e.getDetails().toString() + "\n");
+        if (summary.length() > 0) {
+          throw new Exception(summary.toString());
         }
 
-        throw new PEException(message.toString(), listener);
+        complete(null);
+      } catch(Exception e) {
+        complete(e);
+      } finally {
+        for (PuppetJob job : finished) {
+          job.discardReport();
+        }
       }
+    }
 
-      return null;
+    private PEException orchestratorError(PuppetOrchestratorException e) {
+      StringBuilder message = new StringBuilder();
+      message.append("Puppet Orchestrator Job Error\n");
+      message.append("Kind:    " + e.getKind() + "\n");
+      message.append("Message: " + e.getMessage() + "\n");
+
+      if (e.getDetails() != null) {
+        message.append("Details: " + e.getDetails().toString() + "\n");
+      }
+
+      return new PEException(message.toString(), listener);
+    }
+
+    //Ends the step with the failure, or successfully if it's null. Only
+    // the first call counts.
+    private synchronized void complete(Throwable failure) {
+      if (this.completed) {
+        return;
+      }
+
+      this.completed = true;
+
+      if (failure == null) {
+        getContext().onSuccess(null);
+      } else {
+        getContext().onFailure(failure);
+      }
     }
 
     private static final long serialVersionUID = 1L;
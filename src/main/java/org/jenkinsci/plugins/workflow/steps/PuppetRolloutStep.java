@@ -0,0 +1,232 @@
+package org.jenkinsci.plugins.workflow.steps;
+
+import java.util.*;
+import com.google.inject.Inject;
+import hudson.Extension;
+import hudson.Util;
+import hudson.util.ListBoxModel;
+import hudson.security.ACL;
+import hudson.model.Computer;
+import hudson.model.Run;
+import hudson.model.Item;
+import hudson.model.TaskListener;
+import java.io.Serializable;
+
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractSynchronousNonBlockingStepExecution;
+import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
+import org.jenkinsci.plugins.plaincredentials.*;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.AncestorInPath;
+
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.common.StandardListBoxModel;
+import com.cloudbees.plugins.credentials.domains.URIRequirementBuilder;
+
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEResponseCallback;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetdbv4.PuppetDBException;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetOrchestratorException;
+import org.jenkinsci.plugins.puppetenterprise.models.PEException;
+import org.jenkinsci.plugins.puppetenterprise.models.PQLQuery;
+import org.jenkinsci.plugins.puppetenterprise.models.PuppetRollout;
+
+public final class PuppetRolloutStep extends PuppetEnterpriseStep implements Serializable {
+
+  private String environment = null;
+  private ArrayList nodes = null;
+  private String query = null;
+  private ArrayList<String> waves = null;
+  private Integer maxInFlight = null;
+  private String failureThreshold = null;
+  private Integer concurrency = null;
+  private Boolean noop = false;
+
+  @DataBoundSetter private void setEnvironment(String environment) {
+    this.environment = environment;
+  }
+
+  @DataBoundSetter private void setNodes(ArrayList nodes) {
+    this.nodes = nodes;
+  }
+
+  @DataBoundSetter private void setQuery(String query) {
+    this.query = Util.fixEmpty(query);
+  }
+
+  @DataBoundSetter private void setWaves(ArrayList<String> waves) {
+    this.waves = waves;
+  }
+
+  @DataBoundSetter private void setMaxInFlight(Integer maxInFlight) {
+    this.maxInFlight = maxInFlight;
+  }
+
+  @DataBoundSetter private void setFailureThreshold(String failureThreshold) {
+    this.failureThreshold = Util.fixEmpty(failureThreshold);
+  }
+
+  @DataBoundSetter private void setConcurrency(Integer concurrency) {
+    this.concurrency = concurrency;
+  }
+
+  @DataBoundSetter private void setNoop(Boolean noop) {
+    this.noop = noop;
+  }
+
+  public String getEnvironment() {
+    return this.environment;
+  }
+
+  public ArrayList getNodes() {
+    return this.nodes;
+  }
+
+  //PQL query whose results' certnames are the nodes to roll out to
+  public String getQuery() {
+    return this.query;
+  }
+
+  //Size of each wave, a node count or a percentage of all the nodes
+  public ArrayList<String> getWaves() {
+    return this.waves;
+  }
+
+  //Most waves running at once, defaults to 1
+  public Integer getMaxInFlight() {
+    return this.maxInFlight;
+  }
+
+  //Failed nodes to tolerate before stopping, a count or a percentage,
+  // defaults to 0
+  public String getFailureThreshold() {
+    return this.failureThreshold;
+  }
+
+  public Integer getConcurrency() {
+    return this.concurrency;
+  }
+
+  public Boolean getNoop() {
+    return this.noop;
+  }
+
+  @DataBoundConstructor public PuppetRolloutStep() { }
+
+  public static class PuppetRolloutStepExecution extends AbstractSynchronousNonBlockingStepExecution<Void> {
+
+    @Inject private transient PuppetRolloutStep step;
+    @StepContextParameter private transient Run<?, ?> run;
+    @StepContextParameter private transient TaskListener listener;
+
+    @Override protected Void run() throws Exception {
+      List<String> nodes = getTargetNodes();
+
+      if (nodes.isEmpty()) {
+        listener.getLogger().println("No nodes to roll out to.");
+        return null;
+      }
+
+      PuppetRollout rollout = new PuppetRollout();
+      rollout.setNodes(nodes);
+      rollout.setWaves((step.getWaves() == null) ? new ArrayList<String>() : step.getWaves());
+      rollout.setMaxInFlight(step.getMaxInFlight());
+      rollout.setFailureThreshold(step.getFailureThreshold());
+      rollout.setEnvironment(step.getEnvironment());
+      rollout.setConcurrency(step.getConcurrency());
+      rollout.setNoop(step.getNoop());
+      rollout.setToken(step.getToken());
+      rollout.setLogger(listener.getLogger());
+      rollout.setSpoolDirectory(run.getRootDir());
+      rollout.setExecutor(Computer.threadPoolForRemoting);
+
+      try {
+        rollout.run();
+      } catch(IllegalArgumentException e) {
+        throw new PEException(e.getMessage(), listener);
+      } catch(PuppetOrchestratorException e) {
+        StringBuilder message = new StringBuilder();
+        message.append("Puppet Orchestrator Job Error\n");
+        message.append("Kind:    " + e.getKind() + "\n");
+        message.append("Message: " + e.getMessage() + "\n");
+
+        if (e.getDetails() != null) {
+          message.append("Details: " + e.getDetails().toString() + "\n");
+        }
+
+        throw new PEException(message.toString(), listener);
+      }
+
+      if (rollout.isAborted()) {
+        throw new Exception("Rollout stopped after " + rollout.getCompletedWaves() + " of " + rollout.getWaveCount()
+          + " waves, " + rollout.getFailedNodeCount() + " nodes failed");
+      }
+
+      return null;
+    }
+
+    private List<String> getTargetNodes() throws Exception {
+      final List<String> nodes = new ArrayList<String>();
+
+      if (step.getNodes() != null) {
+        for (Object node : step.getNodes()) {
+          nodes.add(node.toString());
+        }
+      }
+
+      if (step.getQuery() == null) {
+        return nodes;
+      }
+
+      PQLQuery query = new PQLQuery();
+      query.setQuery(step.getQuery());
+      query.setToken(step.getToken());
+
+      try {
+        query.run(new PEResponseCallback<Object>() {
+          @Override public void onElement(Object result) {
+            Object certname = (result instanceof Map) ? ((Map) result).get("certname") : result;
+
+            if (certname != null && !nodes.contains(certname.toString())) {
+              nodes.add(certname.toString());
+            }
+          }
+        });
+      } catch(PuppetDBException e) {
+        StringBuilder message = new StringBuilder();
+        message.append("PQL Query Error\n");
+        message.append("Kind:    " + e.getKind() + "\n");
+        message.append("Message: " + e.getMessage() + "\n");
+
+        throw new PEException(message.toString(), listener);
+      }
+
+      return nodes;
+    }
+
+    private static final long serialVersionUID = 1L;
+  }
+
+  @Extension public static final class DescriptorImpl extends AbstractStepDescriptorImpl {
+    public DescriptorImpl() {
+      super(PuppetRolloutStepExecution.class);
+    }
+
+    public ListBoxModel doFillCredentialsIdItems(@AncestorInPath Item context, @QueryParameter String source) {
+      if (context == null || !context.hasPermission(Item.CONFIGURE)) {
+        return new ListBoxModel();
+      }
+      return new StandardListBoxModel().withEmptySelection().withAll(
+      CredentialsProvider.lookupCredentials(StringCredentials.class, context, ACL.SYSTEM, URIRequirementBuilder.fromUri(source).build()));
+    }
+
+    @Override public String getFunctionName() {
+      return "puppetRollout";
+    }
+
+    @Override public String getDisplayName() {
+      return "Roll out a Puppet run in waves";
+    }
+  }
+}
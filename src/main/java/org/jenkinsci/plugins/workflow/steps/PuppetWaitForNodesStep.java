@@ -11,6 +11,7 @@ import hudson.security.ACL;
 import java.util.ArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.concurrent.TimeUnit;
 import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
 import org.apache.commons.lang.StringUtils;
 import hudson.model.Run;
@@ -22,7 +23,7 @@ import javax.annotation.Nonnull;
 
 import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
-import org.jenkinsci.plugins.workflow.steps.AbstractSynchronousStepExecution;
+import org.jenkinsci.plugins.workflow.steps.AbstractSynchronousNonBlockingStepExecution;
 import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
 import org.jenkinsci.plugins.plaincredentials.*;
 import org.apache.commons.lang.StringUtils;
@@ -43,7 +44,7 @@ import java.io.InputStreamReader;
 import com.google.gson.internal.LinkedTreeMap;
 
 import org.jenkinsci.plugins.puppetenterprise.PuppetEnterpriseManagement;
-import org.jenkinsci.plugins.puppetenterprise.models.PuppetJob;
+import org.jenkinsci.plugins.puppetenterprise.models.PuppetNodeReadiness;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetOrchestratorException;
 import org.jenkinsci.plugins.puppetenterprise.models.PEException;
 
@@ -51,56 +52,82 @@ public final class PuppetWaitForNodesStep extends PuppetEnterpriseStep implement
 
   private ArrayList<String> nodes = new ArrayList();
   private String credentialsId = "";
+  private Integer timeout = null;
+  private String quorum = null;
 
   @DataBoundSetter private void setNodes(ArrayList nodes) {
     this.nodes = nodes;
   }
 
+  @DataBoundSetter private void setTimeout(Integer timeout) {
+    this.timeout = timeout;
+  }
+
+  @DataBoundSetter private void setQuorum(String quorum) {
+    this.quorum = Util.fixEmpty(quorum);
+  }
+
   public ArrayList getNodes() {
     return this.nodes;
   }
 
+  //Minutes to wait for the nodes, defaults to 30
+  public Integer getTimeout() {
+    return this.timeout;
+  }
+
+  //Nodes that need to connect, a count or a percentage, defaults to all
+  public String getQuorum() {
+    return this.quorum;
+  }
+
   @DataBoundConstructor public PuppetWaitForNodesStep() { }
 
-  public static class PuppetWaitForNodesStepExecution extends AbstractSynchronousStepExecution<Void> {
+  //Runs on its own thread, so waiting for the nodes doesn't hold up the
+  // CPS VM thread
+  public static class PuppetWaitForNodesStepExecution extends AbstractSynchronousNonBlockingStepExecution<Void> {
+    private static final Integer DEFAULT_TIMEOUT_MINUTES = 30;
 
     @Inject private transient PuppetWaitForNodesStep step;
     @StepContextParameter private transient Run<?, ?> run;
     @StepContextParameter private transient TaskListener listener;
 
     @Override protected Void run() throws Exception {
-      PuppetJob job = new PuppetJob();
-      job.setInventory(step.getNodes());
-      job.setToken(step.getToken());
-      job.setLogger(listener.getLogger());
+      ArrayList<String> nodes = new ArrayList<String>();
+
+      for (Object node : step.getNodes()) {
+        nodes.add(node.toString());
+      }
+
+      PuppetNodeReadiness readiness = new PuppetNodeReadiness(nodes);
+      readiness.setToken(step.getToken());
+
+      try {
+        readiness.setQuorum(step.getQuorum());
+      } catch(IllegalArgumentException e) {
+        throw new PEException(e.getMessage(), listener);
+      }
+
+      Integer minutes = (step.getTimeout() == null) ? DEFAULT_TIMEOUT_MINUTES : step.getTimeout();
+      long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(minutes);
 
       try {
-        String summary = "";
-        Integer iterations = 0;
-
-        listener.getLogger().println("Waiting for up to 30 minutes for nodes to connect to Puppet Enterprise.");
-
-        do {
-          try {
-            Thread.sleep(500);
-            iterations = iterations + 1;
-          } catch(InterruptedException ex) {
-            Thread.currentThread().interrupt();
-          }
-        } while (!job.allNodesConnected() && iterations < 3600);
-
-        try {
-          listener.getLogger().println("All " + step.getNodes().size() + " are now connected.");
-        } catch(Exception e) {
-          StringBuilder bug = new StringBuilder();
-          bug.append("You found a bug! The Puppet Enterprise plugin received something ");
-          bug.append("in a job report it wasn't expecting. Please file a ticket here: ");
-          bug.append("https://issues.jenkins-ci.org/browse/JENKINS-42899?jql=project%20%3D%20JENKINS%20AND%20component%20%3D%20'puppet-enterprise-pipeline-plugin'\n\n");
-          bug.append("Include the following information:\n");
-          bug.append("Exception Type: " + e.getClass().getSimpleName() + "\n");
-          bug.append("Exception Message: " + e.getMessage() + "\n");
-
-          throw new Exception(bug.toString());
+        listener.getLogger().println("Waiting for up to " + minutes + " minutes for " + readiness.getQuorum() + " of "
+          + readiness.getNodeCount() + " nodes to connect to Puppet Enterprise.");
+
+        boolean reached = readiness.await(deadline, listener.getLogger());
+        List<String> pending = readiness.getPending();
+
+        if (!reached) {
+          throw new Exception("Only " + readiness.getConnectedCount() + " of " + readiness.getNodeCount() + " nodes connected within "
+            + minutes + " minutes, " + readiness.getQuorum() + " were needed. Not connected:\n  " + StringUtils.join(pending, "\n  "));
+        }
+
+        if (pending.isEmpty()) {
+          listener.getLogger().println("All " + readiness.getNodeCount() + " nodes are now connected.");
+        } else {
+          listener.getLogger().println(readiness.getConnectedCount() + " of " + readiness.getNodeCount()
+            + " nodes are now connected. Not connected yet:\n  " + StringUtils.join(pending, "\n  "));
         }
 
       } catch(PuppetOrchestratorException e) {
@@ -42,6 +42,7 @@ import com.google.gson.internal.LinkedTreeMap;
 
 import org.jenkinsci.plugins.puppetenterprise.PuppetEnterpriseManagement;
 import org.jenkinsci.plugins.puppetenterprise.models.PQLQuery;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEResponseCallback;
 import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetdbv4.PuppetDBException;
 import org.jenkinsci.plugins.puppetenterprise.models.PEException;
 
@@ -77,7 +78,6 @@ public final class QueryStep extends PuppetEnterpriseStep implements Serializabl
     @Override protected ArrayList run() throws Exception {
       PQLQuery query = new PQLQuery();
       ArrayList results = null;
-      ArrayList extractedResults = new ArrayList();
 
       query.setQuery(step.getQuery());
 
@@ -94,8 +94,30 @@ public final class QueryStep extends PuppetEnterpriseStep implements Serializabl
         throw new PEException(summary);
       }
 
+      final ArrayList extracted = new ArrayList();
+      Integer size = 0;
+
       try {
-        query.run();
+        //When extracting, pull the values out of each result as it's parsed
+        // rather than holding every full result in memory first
+        if (step.getExtract() != null) {
+          size = query.run(new PEResponseCallback<Object>() {
+            @Override public void onElement(Object result) {
+              Object value = extractValue((LinkedTreeMap) result, step.getExtract());
+
+              //Throw away null values
+              if (value != null) {
+                extracted.add(value);
+              }
+            }
+          });
+
+          results = extracted;
+        } else {
+          query.run();
+          results = query.getResults();
+          size = results.size();
+        }
       } catch(PuppetDBException e) {
         StringBuilder message = new StringBuilder();
         message.append("PQL Query Error\n");
@@ -105,43 +127,31 @@ public final class QueryStep extends PuppetEnterpriseStep implements Serializabl
         throw new PEException(message.toString(), listener);
       }
 
-      results = query.getResults();
-      Integer size = results.size();
       listener.getLogger().println(step.getQuery() + "\nQuery returned " + size.toString() + " results.");
 
-      //Extract out values if extract parameter is set
-      if (step.getExtract() != null) {
-        LinkedTreeMap currentHash = null;
-        Object value = null;
-
-        for (LinkedTreeMap result : (ArrayList<LinkedTreeMap>) results) {
-          currentHash = result;
-
-          for (String key : step.getExtract().split("\\.")) {
-            if (currentHash instanceof LinkedTreeMap) {
-              if (currentHash.get(key) instanceof LinkedTreeMap) {
-                currentHash = (LinkedTreeMap) currentHash.get(key);
-                value = currentHash.get(key);
-              } else {
-                value = currentHash.get(key);
-                break;
-              }
+      return results;
+    }
 
-            } else {
-              value = currentHash.get(key);
-            }
+    private static Object extractValue(LinkedTreeMap result, String extract) {
+      LinkedTreeMap currentHash = result;
+      Object value = null;
+
+      for (String key : extract.split("\\.")) {
+        if (currentHash instanceof LinkedTreeMap) {
+          if (currentHash.get(key) instanceof LinkedTreeMap) {
+            currentHash = (LinkedTreeMap) currentHash.get(key);
+            value = currentHash.get(key);
+          } else {
+            value = currentHash.get(key);
+            break;
           }
 
-          //Throw away null values
-          if (value != null) {
-            extractedResults.add(value);
-          }
+        } else {
+          value = currentHash.get(key);
         }
-
-        results = extractedResults;
       }
 
-      return results;
+      return value;
     }
 
     private static final long serialVersionUID = 1L;
@@ -18,59 +18,64 @@ class Puppet implements Serializable {
     String credentials
     String extract
 
-    node {
-      if (parameters.credentials) {
-        credentials = parameters.credentials
-      } else {
-        credentials = credentialsId
-      }
-
-      if(credentials == null) {
-        script.error(message: "No Credentials provided for puppet.query. Specify 'credentials' parameter or use puppet.credentials()")
-      }
+    if (parameters.credentials) {
+      credentials = parameters.credentials
+    } else {
+      credentials = credentialsId
+    }
 
-      if(parameters.extract){
-        extract = parameters.extract
-      }
+    if(credentials == null) {
+      script.error(message: "No Credentials provided for puppet.query. Specify 'credentials' parameter or use puppet.credentials()")
+    }
 
-      script.puppetQuery(query: query, credentialsId: credentials, extract: extract)
+    if(parameters.extract){
+      extract = parameters.extract
     }
+
+    script.puppetQuery(query: query, credentialsId: credentials, extract: extract)
   }
 
   public <V> V codeDeploy(Map parameters = [:], String env) {
     String credentials
 
-    node {
-      if (parameters.credentials) {
-        credentials = parameters.credentials
-      } else {
-        credentials = credentialsId
-      }
-
-      if(credentials == null) {
-        script.error(message: "No Credentials provided for puppet.codeDeploy. Specify 'credentials' parameter or use puppet.credentials()")
-      }
+    if (parameters.credentials) {
+      credentials = parameters.credentials
+    } else {
+      credentials = credentialsId
+    }
 
-      script.puppetCode(environment: env, credentialsId: credentials)
+    if(credentials == null) {
+      script.error(message: "No Credentials provided for puppet.codeDeploy. Specify 'credentials' parameter or use puppet.credentials()")
     }
+
+    script.puppetCode(environment: env, credentialsId: credentials)
   }
 
   public <V> V waitForNodes(Map parameters = [:], ArrayList nodes) {
     String credentials
+    Integer timeout = null
+    String quorum = null
 
-    node {
-      if (parameters.credentials) {
-        credentials = parameters.credentials
-      } else {
-        credentials = credentialsId
-      }
+    if (parameters.credentials) {
+      credentials = parameters.credentials
+    } else {
+      credentials = credentialsId
+    }
 
-      try {
-        script.puppetWaitForNodes(nodes: nodes, credentialsId: credentials)
-      } catch(err) {
-        script.error(message: err.message)
-      }
+    if (parameters.timeout) {
+      assert parameters.timeout instanceof Integer
+      timeout = parameters.timeout
+    }
 
+    //A count like 10 or a percentage like '95%'
+    if (parameters.quorum != null) {
+      quorum = parameters.quorum.toString()
+    }
+
+    try {
+      script.puppetWaitForNodes(nodes: nodes, credentialsId: credentials, timeout: timeout, quorum: quorum)
+    } catch(err) {
+      script.error(message: err.message)
     }
   }
 
@@ -83,88 +88,160 @@ class Puppet implements Serializable {
     Boolean noop = false
     Integer concurrency = null
     ArrayList reports = null
-
-    node {
-      if (parameters.reports) {
-        if (parameters.reports instanceof String) {
-          reports << parameters.reports
-        } else if (parameters.reports instanceof ArrayList<String>) {
-          reports = parameters.reports
-        } else {
-          throw "Unknown reports type"
-        }
-      }
-
-      if (parameters.credentials) {
-        credentials = parameters.credentials
+    Integer minPollInterval = null
+    Integer maxPollInterval = null
+    ArrayList scopes = null
+    Integer maxInFlight = null
+
+    if (parameters.reports) {
+      if (parameters.reports instanceof String) {
+        reports << parameters.reports
+      } else if (parameters.reports instanceof ArrayList<String>) {
+        reports = parameters.reports
       } else {
-        credentials = credentialsId
+        throw "Unknown reports type"
       }
+    }
 
-      if (parameters.application != null) {
-        assert parameters.application instanceof String
-        application = parameters.application
-      }
+    if (parameters.credentials) {
+      credentials = parameters.credentials
+    } else {
+      credentials = credentialsId
+    }
 
-      if (parameters.query != null) {
-        assert parameters.query instanceof String
-        query = parameters.query
-      }
+    if (parameters.application != null) {
+      assert parameters.application instanceof String
+      application = parameters.application
+    }
 
-      //Users should be allowed to pass empty lists
-      if (parameters.nodes != null) {
-        assert parameters.nodes instanceof java.util.ArrayList
-        nodes = parameters.nodes
-      }
+    if (parameters.query != null) {
+      assert parameters.query instanceof String
+      query = parameters.query
+    }
 
-      if (parameters.target) {
-        assert parameters.target instanceof String
-        target = parameters.target
-      }
+    //Users should be allowed to pass empty lists
+    if (parameters.nodes != null) {
+      assert parameters.nodes instanceof java.util.ArrayList
+      nodes = parameters.nodes
+    }
 
-      if (parameters.noop) {
-        assert parameters.noop instanceof Boolean
-        noop = parameters.noop
-      }
+    if (parameters.target) {
+      assert parameters.target instanceof String
+      target = parameters.target
+    }
 
-      if (parameters.concurrency) {
-        assert parameters.concurrency instanceof Integer
-        concurrency = parameters.concurrency
-      }
+    if (parameters.noop) {
+      assert parameters.noop instanceof Boolean
+      noop = parameters.noop
+    }
 
-      if (credentials == null) {
-        script.error(message: "No Credentials provided for puppet.run. Specify 'credentials' parameter or use puppet.credentials()")
-      }
+    if (parameters.concurrency) {
+      assert parameters.concurrency instanceof Integer
+      concurrency = parameters.concurrency
+    }
 
-      try {
-        script.puppetJob(environment: env, target: target, concurrency: concurrency, credentialsId: credentials, nodes: nodes, query: query, application: application, noop: noop, reports: reports)
-      } catch(err) {
-        script.error(message: err.message)
-      }
+    if (parameters.minPollInterval) {
+      assert parameters.minPollInterval instanceof Integer
+      minPollInterval = parameters.minPollInterval
     }
-  }
 
-  public <V> V hiera(Map parameters = [:]) {
-    String credentials
+    if (parameters.maxPollInterval) {
+      assert parameters.maxPollInterval instanceof Integer
+      maxPollInterval = parameters.maxPollInterval
+    }
 
-    assert parameters.scope instanceof String
-    assert parameters.key instanceof String
+    //Each scope is a map of target, nodes, application or query
+    if (parameters.scopes != null) {
+      assert parameters.scopes instanceof java.util.ArrayList
+      scopes = parameters.scopes
+    }
 
-    node {
-      def projectName = script.env.JOB_NAME
+    if (parameters.maxInFlight) {
+      assert parameters.maxInFlight instanceof Integer
+      maxInFlight = parameters.maxInFlight
+    }
+
+    if (credentials == null) {
+      script.error(message: "No Credentials provided for puppet.run. Specify 'credentials' parameter or use puppet.credentials()")
+    }
 
-      script.puppetHiera(scope: parameters.scope, key: parameters.key, source: projectName, value: parameters.value)
+    try {
+      script.puppetJob(environment: env, target: target, concurrency: concurrency, credentialsId: credentials, nodes: nodes, query: query, application: application, noop: noop, reports: reports, minPollInterval: minPollInterval, maxPollInterval: maxPollInterval, scopes: scopes, maxInFlight: maxInFlight)
+    } catch(err) {
+      script.error(message: err.message)
     }
   }
 
-  private <V> V node(Closure<V> body) {
-    if (script.env.NODE_NAME != null) {
-        // Already inside a node block.
-        body()
+  public <V> V rollout(Map parameters = [:], String env) {
+    String credentials
+    String query = null
+    ArrayList nodes = null
+    ArrayList waves = null
+    Integer maxInFlight = null
+    String failureThreshold = null
+    Boolean noop = false
+    Integer concurrency = null
+
+    if (parameters.credentials) {
+      credentials = parameters.credentials
     } else {
-        script.node {
-            body()
-        }
+      credentials = credentialsId
+    }
+
+    if (parameters.query != null) {
+      assert parameters.query instanceof String
+      query = parameters.query
+    }
+
+    if (parameters.nodes != null) {
+      assert parameters.nodes instanceof java.util.ArrayList
+      nodes = parameters.nodes
+    }
+
+    //Wave sizes can be counts like 10 or percentages like '10%'
+    if (parameters.waves != null) {
+      assert parameters.waves instanceof java.util.ArrayList
+      waves = parameters.waves.collect { it.toString() }
     }
+
+    if (parameters.maxInFlight) {
+      assert parameters.maxInFlight instanceof Integer
+      maxInFlight = parameters.maxInFlight
+    }
+
+    if (parameters.failureThreshold != null) {
+      failureThreshold = parameters.failureThreshold.toString()
+    }
+
+    if (parameters.noop) {
+      assert parameters.noop instanceof Boolean
+      noop = parameters.noop
+    }
+
+    if (parameters.concurrency) {
+      assert parameters.concurrency instanceof Integer
+      concurrency = parameters.concurrency
+    }
+
+    if (credentials == null) {
+      script.error(message: "No Credentials provided for puppet.rollout. Specify 'credentials' parameter or use puppet.credentials()")
+    }
+
+    try {
+      script.puppetRollout(environment: env, credentialsId: credentials, nodes: nodes, query: query, waves: waves, maxInFlight: maxInFlight, failureThreshold: failureThreshold, concurrency: concurrency, noop: noop)
+    } catch(err) {
+      script.error(message: err.message)
+    }
+  }
+
+  public <V> V hiera(Map parameters = [:]) {
+    String credentials
+
+    assert parameters.scope instanceof String
+    assert parameters.key instanceof String
+
+    def projectName = script.env.JOB_NAME
+
+    script.puppetHiera(scope: parameters.scope, key: parameters.key, source: projectName, value: parameters.value)
   }
 }
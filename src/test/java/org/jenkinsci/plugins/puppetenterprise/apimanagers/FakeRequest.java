@@ -0,0 +1,42 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.net.URI;
+import java.util.Map;
+import com.google.gson.Gson;
+
+/**
+ * Orchestrator request for unit tests, sent on a FakeTransport.
+ */
+class FakeRequest extends PERequest {
+  private static final Gson gson = PEJson.get();
+
+  private final FakeTransport transport;
+
+  FakeRequest(FakeTransport transport) {
+    this.transport = transport;
+  }
+
+  @Override protected PEService getService() {
+    return PEService.ORCHESTRATOR;
+  }
+
+  @Override PETransport getTransport() {
+    return this.transport;
+  }
+
+  void cacheResponses() {
+    enableResponseCache();
+  }
+
+  PEResponse get(URI uri) throws Exception {
+    return stream(uri, decode(gson, Map.class));
+  }
+
+  PEResponse getAsync(URI uri) throws Exception {
+    return streamAsync(uri, decode(gson, Map.class)).await();
+  }
+
+  PEResponse post(URI uri, Object body) throws Exception {
+    return send(uri, body);
+  }
+}
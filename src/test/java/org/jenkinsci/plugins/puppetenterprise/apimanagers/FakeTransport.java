@@ -0,0 +1,147 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import org.apache.http.concurrent.FutureCallback;
+
+/**
+ * Transport for unit tests that answers from a list of canned responses,
+ * in order, and keeps every request it was sent.
+ */
+class FakeTransport implements PETransport {
+  private final LinkedList<Object> answers = new LinkedList<Object>();
+  private final List<PETransportRequest> requests = new ArrayList<PETransportRequest>();
+
+  FakeTransport respond(int code, String body) {
+    return respond(code, body, new HashMap<String, String>());
+  }
+
+  FakeTransport respond(int code, String body, Map<String, String> headers) {
+    InputStream content = (body == null) ? null : new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    this.answers.add(new Response(code, content, headers));
+    return this;
+  }
+
+  //Answers with a body read from the stream as the response is consumed
+  FakeTransport stream(int code, InputStream body) {
+    this.answers.add(new Response(code, body, new HashMap<String, String>()));
+    return this;
+  }
+
+  FakeTransport fail(String message) {
+    return fail(new IOException(message));
+  }
+
+  //Fails the call with the exception. The blocking call can only throw
+  // IOExceptions, so it's wrapped in one if needed.
+  FakeTransport fail(Exception e) {
+    this.answers.add(e);
+    return this;
+  }
+
+  //Throws the exception straight out of the transport, as a bug in it
+  // would, instead of failing the call
+  FakeTransport crash(RuntimeException e) {
+    this.answers.add(new Crash(e));
+    return this;
+  }
+
+  List<PETransportRequest> getRequests() {
+    return this.requests;
+  }
+
+  List<URI> getURIs() {
+    List<URI> uris = new ArrayList<URI>();
+
+    for (PETransportRequest request : this.requests) {
+      uris.add(request.getURI());
+    }
+
+    return uris;
+  }
+
+  private synchronized Object answer(PETransportRequest request) {
+    this.requests.add(request);
+
+    if (this.answers.isEmpty()) {
+      return new IOException("No response left for " + request.getURI());
+    }
+
+    return this.answers.removeFirst();
+  }
+
+  @Override public PETransportResponse execute(PETransportRequest request) throws IOException {
+    Object answer = answer(request);
+
+    if (answer instanceof Crash) {
+      throw ((Crash) answer).exception;
+    } else if (answer instanceof IOException) {
+      throw (IOException) answer;
+    } else if (answer instanceof Exception) {
+      throw new IOException((Exception) answer);
+    }
+
+    return (Response) answer;
+  }
+
+  @Override public Future<?> executeAsync(PETransportRequest request, FutureCallback<PETransportResponse> callback) {
+    Object answer = answer(request);
+
+    if (answer instanceof Crash) {
+      throw ((Crash) answer).exception;
+    } else if (answer instanceof Exception) {
+      callback.failed((Exception) answer);
+    } else {
+      callback.completed((Response) answer);
+    }
+
+    return PEFuture.completed(null);
+  }
+
+  private static class Crash {
+    final RuntimeException exception;
+
+    Crash(RuntimeException exception) {
+      this.exception = exception;
+    }
+  }
+
+  private static class Response implements PETransportResponse {
+    private final int code;
+    private final InputStream body;
+    private final Map<String, String> headers;
+
+    Response(int code, InputStream body, Map<String, String> headers) {
+      this.code = code;
+      this.body = body;
+      this.headers = headers;
+    }
+
+    @Override public int getStatusCode() {
+      return this.code;
+    }
+
+    @Override public String getHeader(String name) {
+      return this.headers.get(name);
+    }
+
+    @Override public String getContentEncoding() {
+      return null;
+    }
+
+    @Override public InputStream getContent() {
+      return this.body;
+    }
+
+    @Override public void close() { }
+  }
+}
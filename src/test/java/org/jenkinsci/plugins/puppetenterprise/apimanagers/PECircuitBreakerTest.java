@@ -0,0 +1,211 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.net.URI;
+import java.util.concurrent.TimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.jenkinsci.plugins.puppetenterprise.models.PEException;
+
+public class PECircuitBreakerTest extends Assert {
+
+  private static int endpoints = 0;
+
+  private String thresholdProperty = PEService.ORCHESTRATOR.getPropertyPrefix() + ".circuitBreakerThreshold";
+  private String cooldownProperty = PEService.ORCHESTRATOR.getPropertyPrefix() + ".circuitBreakerCooldown";
+
+  @Before
+  public void setUp() {
+    System.setProperty(thresholdProperty, "2");
+  }
+
+  @After
+  public void tearDown() {
+    System.clearProperty(thresholdProperty);
+    System.clearProperty(cooldownProperty);
+  }
+
+  //Breakers are shared per endpoint, so every test gets its own
+  private PECircuitBreaker newBreaker() {
+    endpoints = endpoints + 1;
+    return PECircuitBreaker.forEndpoint(PEService.ORCHESTRATOR, URI.create("https://breaker-" + endpoints + ".example.com:8143/"));
+  }
+
+  //Opens the breaker with a cool down that's already over
+  private PECircuitBreaker newHalfOpenBreaker() {
+    System.setProperty(cooldownProperty, "0");
+
+    PECircuitBreaker breaker = newBreaker();
+    breaker.recordFailure();
+    breaker.recordFailure();
+
+    return breaker;
+  }
+
+  @Test
+  public void staysClosedBelowTheThreshold() throws Exception {
+    PECircuitBreaker breaker = newBreaker();
+    breaker.recordFailure();
+
+    assertFalse(breaker.isOpen());
+    assertFalse(breaker.checkAvailable());
+  }
+
+  @Test
+  public void opensAtTheThresholdAndFailsFast() throws Exception {
+    PECircuitBreaker breaker = newBreaker();
+    breaker.recordFailure();
+    breaker.recordFailure();
+
+    assertTrue(breaker.isOpen());
+    assertFalse(breaker.isAvailable());
+
+    try {
+      breaker.checkAvailable();
+      fail("Expected the open breaker to refuse the call");
+    } catch(PEException e) {
+      assertTrue(e.getMessage().contains("2 consecutive failures"));
+    }
+  }
+
+  @Test
+  public void successResetsTheFailureCount() throws Exception {
+    PECircuitBreaker breaker = newBreaker();
+    breaker.recordFailure();
+    breaker.recordSuccess();
+    breaker.recordFailure();
+
+    assertFalse(breaker.isOpen());
+  }
+
+  @Test
+  public void letsOneTrialThroughAfterTheCooldown() throws Exception {
+    PECircuitBreaker breaker = newHalfOpenBreaker();
+
+    assertTrue(breaker.checkAvailable());
+    assertFalse(breaker.isAvailable());
+
+    try {
+      breaker.checkAvailable();
+      fail("Expected a second call to wait for the trial");
+    } catch(PEException e) {
+      //Expected
+    }
+  }
+
+  @Test
+  public void successfulTrialClosesTheBreaker() throws Exception {
+    PECircuitBreaker breaker = newHalfOpenBreaker();
+
+    assertTrue(breaker.checkAvailable());
+    breaker.recordSuccess();
+
+    assertFalse(breaker.isOpen());
+    assertFalse(breaker.checkAvailable());
+  }
+
+  @Test
+  public void failedTrialReopensTheBreaker() throws Exception {
+    PECircuitBreaker breaker = newHalfOpenBreaker();
+
+    assertTrue(breaker.checkAvailable());
+
+    System.setProperty(cooldownProperty, "30");
+    breaker.recordFailure();
+
+    assertTrue(breaker.isOpen());
+    assertFalse(breaker.isAvailable());
+  }
+
+  @Test
+  public void cancelledTrialLetsTheNextCallThrough() throws Exception {
+    PECircuitBreaker breaker = newHalfOpenBreaker();
+
+    assertTrue(breaker.checkAvailable());
+    breaker.releaseTrial();
+
+    assertTrue(breaker.isAvailable());
+    assertTrue(breaker.checkAvailable());
+  }
+
+  @Test
+  public void poolTimeoutsDontOpenTheBreaker() throws Exception {
+    PECircuitBreaker breaker = newBreaker();
+    URI uri = URI.create(breaker.getEndpoint() + "/orchestrator/v1/jobs/81");
+    FakeTransport transport = new FakeTransport();
+
+    for (int i = 0; i < PEService.ORCHESTRATOR.getMaxAttempts(); i++) {
+      transport.fail(new ConnectionPoolTimeoutException("Timeout waiting for connection from pool"));
+    }
+
+    try {
+      new FakeRequest(transport).get(uri);
+      fail("Expected the call to fail");
+    } catch(PEException e) {
+      assertTrue(e.getMessage().contains("Timeout waiting for connection"));
+    }
+
+    assertFalse(breaker.isOpen());
+  }
+
+  @Test
+  public void asyncPoolTimeoutsDontOpenTheBreaker() throws Exception {
+    PECircuitBreaker breaker = newBreaker();
+    URI uri = URI.create(breaker.getEndpoint() + "/orchestrator/v1/jobs/81");
+    FakeTransport transport = new FakeTransport();
+
+    for (int i = 0; i < PEService.ORCHESTRATOR.getMaxAttempts(); i++) {
+      transport.fail(new TimeoutException("Connection lease request time out"));
+    }
+
+    try {
+      new FakeRequest(transport).getAsync(uri);
+      fail("Expected the call to fail");
+    } catch(PEException e) {
+      assertTrue(e.getMessage().contains("lease request time out"));
+    }
+
+    assertFalse(breaker.isOpen());
+  }
+
+  @Test
+  public void connectionFailuresStillOpenTheBreaker() throws Exception {
+    PECircuitBreaker breaker = newBreaker();
+    URI uri = URI.create(breaker.getEndpoint() + "/orchestrator/v1/jobs/81");
+    FakeTransport transport = new FakeTransport();
+
+    for (int i = 0; i < PEService.ORCHESTRATOR.getMaxAttempts(); i++) {
+      transport.fail("Connection refused");
+    }
+
+    try {
+      new FakeRequest(transport).get(uri);
+      fail("Expected the call to fail");
+    } catch(PEException e) {
+    }
+
+    assertTrue(breaker.isOpen());
+  }
+
+  @Test
+  public void poolTimeoutReleasesTheTrial() throws Exception {
+    PECircuitBreaker breaker = newHalfOpenBreaker();
+    URI uri = URI.create(breaker.getEndpoint() + "/orchestrator/v1/jobs/81");
+    System.setProperty(PEService.ORCHESTRATOR.getPropertyPrefix() + ".maxAttempts", "1");
+
+    //A failed trial would keep the breaker open from here on
+    System.setProperty(cooldownProperty, "60");
+
+    try {
+      new FakeRequest(new FakeTransport().fail(new ConnectionPoolTimeoutException("Timeout waiting for connection from pool"))).get(uri);
+      fail("Expected the call to fail");
+    } catch(PEException e) {
+    } finally {
+      System.clearProperty(PEService.ORCHESTRATOR.getPropertyPrefix() + ".maxAttempts");
+    }
+
+    assertTrue(breaker.isAvailable());
+  }
+}
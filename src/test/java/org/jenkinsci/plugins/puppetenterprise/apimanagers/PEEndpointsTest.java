@@ -0,0 +1,120 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PEEndpointsTest extends Assert {
+
+  private static final String MASTER = "master.example.com";
+  private static int hosts = 0;
+
+  private String replicasProperty = PEService.PUPPETDB.getPropertyPrefix() + ".replicas";
+  private String orchestratorReplicasProperty = PEService.ORCHESTRATOR.getPropertyPrefix() + ".replicas";
+  private URI query = URI.create("https://" + MASTER + ":8081/pdb/query/v4?query=nodes");
+
+  @After
+  public void tearDown() {
+    System.clearProperty(replicasProperty);
+    System.clearProperty(orchestratorReplicasProperty);
+  }
+
+  //Breakers and latencies are kept per host, so every test gets its own
+  private static String newHost() {
+    hosts = hosts + 1;
+    return "replica-" + hosts + ".example.com";
+  }
+
+  private static URI onHost(String host, int port) {
+    return URI.create("https://" + host + ":" + port + "/pdb/query/v4?query=nodes");
+  }
+
+  @Test
+  public void puppetDBReadsAreSpreadAcrossEveryReplica() throws Exception {
+    String first = newHost();
+    String second = newHost();
+    System.setProperty(replicasProperty, first + ", " + second + ":8082");
+
+    List<URI> targets = PEEndpoints.route(PEService.PUPPETDB, query, true, MASTER);
+
+    assertEquals(new HashSet<URI>(Arrays.asList(query, onHost(first, 8081), onHost(second, 8082))), new HashSet<URI>(targets));
+    assertEquals(3, targets.size());
+  }
+
+  @Test
+  public void orchestratorCallsAreNeverSpread() throws Exception {
+    System.setProperty(orchestratorReplicasProperty, newHost());
+    URI job = URI.create("https://" + MASTER + ":8143/orchestrator/v1/jobs/81");
+
+    assertTrue(PEService.ORCHESTRATOR.getReplicas().isEmpty());
+    assertEquals(Arrays.asList(job), PEEndpoints.route(PEService.ORCHESTRATOR, job, true, MASTER));
+  }
+
+  @Test
+  public void callsThatCantBeSpreadStayOnTheirHost() throws Exception {
+    System.setProperty(replicasProperty, newHost());
+
+    assertEquals(Arrays.asList(query), PEEndpoints.route(PEService.PUPPETDB, query, false, MASTER));
+    assertEquals(Arrays.asList(query), PEEndpoints.route(PEService.PUPPETDB, query, false));
+  }
+
+  @Test
+  public void uriOnAnotherHostIsUsedAsItIs() throws Exception {
+    System.setProperty(replicasProperty, newHost());
+    URI elsewhere = onHost("puppetdb.example.com", 8081);
+
+    assertEquals(Arrays.asList(elsewhere), PEEndpoints.route(PEService.PUPPETDB, elsewhere, true, MASTER));
+  }
+
+  @Test
+  public void hostsWithAnOpenBreakerGoLast() throws Exception {
+    String down = newHost();
+    String up = newHost();
+    System.setProperty(replicasProperty, down + "," + up);
+
+    PECircuitBreaker breaker = PECircuitBreaker.forEndpoint(PEService.PUPPETDB, onHost(down, 8081));
+    for (int i = 0; i < PEService.PUPPETDB.getCircuitBreakerThreshold(); i++) {
+      breaker.recordFailure();
+    }
+
+    for (int i = 0; i < 20; i++) {
+      List<URI> targets = PEEndpoints.route(PEService.PUPPETDB, query, true, MASTER);
+      assertEquals(onHost(down, 8081), targets.get(2));
+    }
+
+    List<URI> targets = PEEndpoints.route(PEService.PUPPETDB, query, true, MASTER);
+    assertFalse(PEEndpoints.isAnyAvailable(PEService.PUPPETDB, targets, 2));
+    assertTrue(PEEndpoints.isAnyAvailable(PEService.PUPPETDB, targets, 1));
+  }
+
+  @Test
+  public void fasterHostsAreTriedFirst() throws Exception {
+    String fast = newHost();
+    String slow = newHost();
+    System.setProperty(replicasProperty, fast + "," + slow);
+
+    long now = System.nanoTime();
+    PEEndpoints.recordLatency(onHost(fast, 8081), now - 1000000L);
+    PEEndpoints.recordLatency(onHost(slow, 8081), now - 2000000000L);
+    PEEndpoints.recordLatency(query, now - 500000000L);
+
+    int fastFirst = 0;
+
+    for (int i = 0; i < 100; i++) {
+      List<URI> targets = PEEndpoints.route(PEService.PUPPETDB, query, true, MASTER);
+
+      if (targets.get(0).equals(onHost(fast, 8081))) {
+        fastFirst = fastFirst + 1;
+
+        //After the weighted first pick the rest go fastest first
+        assertEquals(Arrays.asList(onHost(fast, 8081), query, onHost(slow, 8081)), targets);
+      }
+    }
+
+    assertTrue("The fastest host was picked first only " + fastFirst + " times", fastFirst > 90);
+  }
+}
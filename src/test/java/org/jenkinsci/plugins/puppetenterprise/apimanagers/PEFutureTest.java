@@ -0,0 +1,54 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PEFutureTest extends Assert {
+
+  private static final PEFuture.Function<String, Integer> LENGTH = new PEFuture.Function<String, Integer>() {
+    @Override public Integer apply(String input) {
+      return input.length();
+    }
+  };
+
+  @Test
+  public void cancellingThenCancelsTheSource() {
+    PEFuture<String> source = new PEFuture<String>();
+    PEFuture<Integer> length = source.then(LENGTH);
+
+    assertTrue(length.cancel(false));
+    assertTrue(source.isCancelled());
+  }
+
+  @Test
+  public void cancellingThenComposeCancelsTheCallInFlight() {
+    PEFuture<String> source = new PEFuture<String>();
+    final PEFuture<Integer> composed = new PEFuture<Integer>();
+
+    PEFuture<Integer> next = source.thenCompose(new PEFuture.Function<String, PEFuture<Integer>>() {
+      @Override public PEFuture<Integer> apply(String input) {
+        return composed;
+      }
+    });
+
+    source.complete("done");
+    next.cancel(false);
+
+    assertFalse(source.isCancelled());
+    assertTrue(composed.isCancelled());
+  }
+
+  @Test
+  public void cancellingAForkLeavesTheSourceRunning() throws Exception {
+    PEFuture<String> source = new PEFuture<String>();
+    PEFuture<String> first = source.fork();
+    PEFuture<String> second = source.fork();
+
+    first.cancel(false);
+    source.complete("done");
+
+    assertFalse(source.isCancelled());
+    assertTrue(first.isCancelled());
+    assertEquals("done", second.await());
+  }
+}
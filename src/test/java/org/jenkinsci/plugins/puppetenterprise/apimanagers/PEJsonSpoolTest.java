@@ -0,0 +1,119 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PEJsonSpoolTest extends Assert {
+
+  private static final Gson gson = PEJson.get();
+  private static final String DOCUMENT = "{\"items\":[{\"name\":\"node1.example.com\",\"state\":\"finished\"},{\"name\":\"node2.example.com\",\"state\":\"failed\"}],\"count\":2}";
+
+  private File directory;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("pe-json-spool").toFile();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(directory);
+  }
+
+  private PEJsonSpool copy(String json, long threshold) throws IOException {
+    return PEJsonSpool.copy(new JsonReader(new StringReader(json)), directory, threshold);
+  }
+
+  private static Map read(PEJsonSpool spool) throws IOException {
+    JsonReader reader = spool.open();
+
+    try {
+      return gson.fromJson(reader, Map.class);
+    } finally {
+      reader.close();
+    }
+  }
+
+  private int countFiles() {
+    return directory.listFiles().length;
+  }
+
+  @Test
+  public void smallDocumentsStayInMemory() throws Exception {
+    PEJsonSpool spool = copy(DOCUMENT, 1024);
+
+    assertFalse(spool.isSpooled());
+    assertEquals(0, countFiles());
+    assertEquals(2, ((List) read(spool).get("items")).size());
+  }
+
+  @Test
+  public void documentsOverTheThresholdSpillToDisk() throws Exception {
+    PEJsonSpool spool = copy(DOCUMENT, 16);
+
+    assertTrue(spool.isSpooled());
+    assertEquals(1, countFiles());
+    assertEquals(DOCUMENT.length(), spool.length());
+
+    //Can be read as many times as needed
+    assertEquals(read(spool), read(spool));
+    assertEquals("node2.example.com", ((Map) ((List) read(spool).get("items")).get(1)).get("name"));
+  }
+
+  @Test
+  public void documentExactlyAtTheThresholdStaysInMemory() throws Exception {
+    PEJsonSpool spool = copy(DOCUMENT, DOCUMENT.length());
+
+    assertFalse(spool.isSpooled());
+  }
+
+  @Test
+  public void closeDeletesTheSpilledFile() throws Exception {
+    PEJsonSpool spool = copy(DOCUMENT, 16);
+    spool.close();
+
+    assertEquals(0, countFiles());
+  }
+
+  @Test
+  public void failedCopyLeavesNoFileBehind() throws Exception {
+    try {
+      copy("{\"items\":[{\"name\":\"node1.example.com\"},", 16);
+      fail("Expected the truncated document to fail");
+    } catch(IOException e) {
+      //Expected
+    }
+
+    assertEquals(0, countFiles());
+  }
+
+  @Test
+  public void spillingDeletesFilesFromBeforeTheRestart() throws Exception {
+    File stale = new File(directory, "pe-response123.json");
+    FileUtils.writeStringToFile(stale, DOCUMENT);
+    stale.setLastModified(0);
+
+    File unrelated = new File(directory, "build.xml");
+    FileUtils.writeStringToFile(unrelated, "<build/>");
+    unrelated.setLastModified(0);
+
+    PEJsonSpool current = copy(DOCUMENT, 16);
+    PEJsonSpool another = copy(DOCUMENT, 16);
+
+    assertFalse(stale.exists());
+    assertTrue(unrelated.exists());
+    assertEquals(3, countFiles());
+    assertEquals(read(current), read(another));
+  }
+}
@@ -0,0 +1,169 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.jenkinsci.plugins.puppetenterprise.models.PEException;
+
+public class PERequestRetryTest extends Assert {
+
+  private static int hosts = 0;
+
+  private String maxAttemptsProperty = PEService.ORCHESTRATOR.getPropertyPrefix() + ".maxAttempts";
+  private URI uri;
+  private FakeTransport transport;
+  private FakeRequest request;
+
+  @Before
+  public void setUp() {
+    //Breakers are kept per host, so failures in one test don't open it
+    // for the next
+    hosts = hosts + 1;
+    uri = URI.create("https://retry-" + hosts + ".example.com:8143/orchestrator/v1/jobs/81");
+    transport = new FakeTransport();
+    request = new FakeRequest(transport);
+    System.setProperty(maxAttemptsProperty, "2");
+  }
+
+  @After
+  public void tearDown() {
+    System.clearProperty(maxAttemptsProperty);
+  }
+
+  @Test
+  public void getIsRetriedAfterAConnectionFailure() throws Exception {
+    transport.fail("Connection refused");
+    transport.respond(200, "{\"state\":\"running\"}");
+
+    PEResponse response = request.get(uri);
+
+    assertEquals(Integer.valueOf(200), response.getResponseCode());
+    assertEquals(Arrays.asList(uri, uri), transport.getURIs());
+  }
+
+  @Test
+  public void getIsRetriedAfterServiceUnavailable() throws Exception {
+    transport.respond(503, "{}");
+    transport.respond(200, "{\"state\":\"running\"}");
+
+    PEResponse response = request.get(uri);
+
+    assertEquals(Integer.valueOf(200), response.getResponseCode());
+    assertEquals(2, transport.getRequests().size());
+  }
+
+  @Test
+  public void asyncGetIsRetried() throws Exception {
+    transport.respond(503, "{}");
+    transport.respond(200, "{\"state\":\"running\"}");
+
+    PEResponse response = request.getAsync(uri);
+
+    assertEquals(Integer.valueOf(200), response.getResponseCode());
+    assertEquals(2, transport.getRequests().size());
+  }
+
+  @Test
+  public void getGivesUpAfterMaxAttempts() throws Exception {
+    transport.fail("Connection refused");
+    transport.fail("Connection refused");
+    transport.respond(200, "{\"state\":\"running\"}");
+
+    try {
+      request.get(uri);
+      fail("Expected the call to give up");
+    } catch(PEException e) {
+      assertEquals("Connection refused", e.getMessage());
+    }
+
+    assertEquals(2, transport.getRequests().size());
+  }
+
+  @Test
+  public void lastRetriableResponseIsReturned() throws Exception {
+    transport.respond(503, "{\"kind\":\"unavailable\"}");
+    transport.respond(503, "{\"kind\":\"unavailable\"}");
+
+    PEResponse response = request.get(uri);
+
+    assertEquals(Integer.valueOf(503), response.getResponseCode());
+    assertEquals(2, transport.getRequests().size());
+  }
+
+  @Test
+  public void clientErrorsAreNotRetried() throws Exception {
+    transport.respond(404, "{\"kind\":\"puppetlabs.orchestrator/unknown-job\"}");
+
+    PEResponse response = request.get(uri);
+
+    assertEquals(Integer.valueOf(404), response.getResponseCode());
+    assertEquals(1, transport.getRequests().size());
+  }
+
+  @Test
+  public void postIsNotRetried() throws Exception {
+    transport.fail("Connection reset");
+    transport.respond(202, "{}");
+
+    try {
+      request.post(uri, new HashMap<String, String>());
+      fail("Expected the POST not to be retried");
+    } catch(PEException e) {
+      assertEquals("Connection reset", e.getMessage());
+    }
+
+    assertEquals(1, transport.getRequests().size());
+    assertEquals("POST", transport.getRequests().get(0).getMethod());
+  }
+
+  @Test
+  public void retriedAttemptsAreNotLeftInFlight() throws Exception {
+    PERequestMetrics metrics = PERequestMetrics.forRequest(PEService.ORCHESTRATOR, "GET", uri);
+    long requests = metrics.getRequests();
+    transport.fail("Connection refused");
+    transport.respond(503, "{}");
+
+    request.get(uri);
+
+    assertEquals(0, metrics.getInFlight());
+    assertEquals(requests + 2, metrics.getRequests());
+  }
+
+  @Test
+  public void unexpectedTransportErrorIsNotLeftInFlight() throws Exception {
+    PERequestMetrics metrics = PERequestMetrics.forRequest(PEService.ORCHESTRATOR, "GET", uri);
+    long errors = metrics.getErrors();
+    transport.crash(new IllegalStateException("Connection manager shut down"));
+
+    try {
+      request.get(uri);
+      fail("Expected the transport's error to be thrown");
+    } catch(IllegalStateException e) {
+      //Expected
+    }
+
+    assertEquals(0, metrics.getInFlight());
+    assertEquals(errors + 1, metrics.getErrors());
+  }
+
+  @Test
+  public void asyncCallTheTransportRefusesIsNotLeftInFlight() throws Exception {
+    PERequestMetrics metrics = PERequestMetrics.forRequest(PEService.ORCHESTRATOR, "GET", uri);
+    long errors = metrics.getErrors();
+    transport.crash(new IllegalStateException("Connection manager shut down"));
+
+    try {
+      request.getAsync(uri);
+      fail("Expected the transport's error to fail the call");
+    } catch(IllegalStateException e) {
+      //Expected
+    }
+
+    assertEquals(0, metrics.getInFlight());
+    assertEquals(errors + 1, metrics.getErrors());
+  }
+}
@@ -0,0 +1,113 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PEResponseCacheTest extends Assert {
+
+  private static int jobs = 0;
+
+  private URI uri;
+  private FakeTransport transport;
+  private FakeRequest request;
+
+  @Before
+  public void setUp() {
+    jobs = jobs + 1;
+    uri = URI.create("https://master.example.com:8143/orchestrator/v1/jobs/cache-" + jobs);
+    transport = new FakeTransport();
+    request = new FakeRequest(transport);
+    request.cacheResponses();
+  }
+
+  private static Map<String, String> headers(String name, String value) {
+    Map<String, String> headers = new HashMap<String, String>();
+    headers.put(name, value);
+    return headers;
+  }
+
+  private PERequestMetrics getMetrics() {
+    return PERequestMetrics.forRequest(PEService.ORCHESTRATOR, "GET", uri);
+  }
+
+  @Test
+  public void notModifiedReturnsTheCachedResponse() throws Exception {
+    transport.respond(200, "{\"state\":\"running\"}", headers("ETag", "\"v1\""));
+    transport.respond(304, null, headers("ETag", "\"v1\""));
+
+    PEResponse first = request.get(uri);
+    PEResponse second = request.get(uri);
+
+    assertSame(first.getResponseBody(), second.getResponseBody());
+    assertEquals("\"v1\"", transport.getRequests().get(1).getHeaders().get("If-None-Match"));
+    assertEquals(1, getMetrics().getUnchanged());
+  }
+
+  @Test
+  public void lastModifiedIsSentBack() throws Exception {
+    String modified = "Sun, 18 Oct 2026 10:00:00 GMT";
+    transport.respond(200, "{\"state\":\"running\"}", headers("Last-Modified", modified));
+    transport.respond(304, null);
+
+    PEResponse first = request.get(uri);
+    PEResponse second = request.get(uri);
+
+    assertSame(first.getResponseBody(), second.getResponseBody());
+    assertEquals(modified, transport.getRequests().get(1).getHeaders().get("If-Modified-Since"));
+  }
+
+  @Test
+  public void notModifiedIsReturnedToAsyncCalls() throws Exception {
+    transport.respond(200, "{\"state\":\"running\"}", headers("ETag", "\"v1\""));
+    transport.respond(304, null);
+
+    PEResponse first = request.getAsync(uri);
+    PEResponse second = request.getAsync(uri);
+
+    assertSame(first.getResponseBody(), second.getResponseBody());
+  }
+
+  @Test
+  public void identicalBodyIsNotParsedAgain() throws Exception {
+    transport.respond(200, "{\"state\":\"running\"}");
+    transport.respond(200, "{\"state\":\"running\"}");
+
+    PEResponse first = request.get(uri);
+    PEResponse second = request.get(uri);
+
+    assertSame(first.getResponseBody(), second.getResponseBody());
+    assertEquals(1, getMetrics().getUnchanged());
+  }
+
+  @Test
+  public void changedBodyIsParsed() throws Exception {
+    transport.respond(200, "{\"state\":\"running\"}", headers("ETag", "\"v1\""));
+    transport.respond(200, "{\"state\":\"finished\"}", headers("ETag", "\"v2\""));
+    transport.respond(304, null);
+
+    request.get(uri);
+    PEResponse changed = request.get(uri);
+    PEResponse cached = request.get(uri);
+
+    assertEquals("finished", ((Map) changed.getResponseBody()).get("state"));
+    assertSame(changed.getResponseBody(), cached.getResponseBody());
+    assertEquals("\"v2\"", transport.getRequests().get(2).getHeaders().get("If-None-Match"));
+  }
+
+  @Test
+  public void requestsWithoutACacheAreNotConditional() throws Exception {
+    FakeRequest uncached = new FakeRequest(transport);
+    transport.respond(200, "{\"state\":\"running\"}", headers("ETag", "\"v1\""));
+    transport.respond(200, "{\"state\":\"running\"}", headers("ETag", "\"v1\""));
+
+    PEResponse first = uncached.get(uri);
+    PEResponse second = uncached.get(uri);
+
+    assertNotSame(first.getResponseBody(), second.getResponseBody());
+    assertNull(transport.getRequests().get(1).getHeaders().get("If-None-Match"));
+  }
+}
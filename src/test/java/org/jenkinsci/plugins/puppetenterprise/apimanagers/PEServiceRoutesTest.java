@@ -0,0 +1,52 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.DefaultRoutePlanner;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PEServiceRoutesTest extends Assert {
+
+  //The route the client would plan for a request to the URL
+  private static HttpRoute plan(String url) throws Exception {
+    HttpGet request = new HttpGet(url);
+    HttpHost target = new HttpHost(request.getURI().getHost(), request.getURI().getPort(), request.getURI().getScheme());
+
+    return new DefaultRoutePlanner(null).determineRoute(target, request, HttpClientContext.create());
+  }
+
+  @Test
+  public void serviceRouteMatchesThePlannedRoute() throws Exception {
+    assertEquals(plan("https://master.example.com:8081/pdb/query/v4"), PEService.PUPPETDB.getRoute("master.example.com"));
+  }
+
+  @Test
+  public void eachServiceGetsItsOwnLimit() throws Exception {
+    PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager();
+    PEService.configureRoutes(manager, "master.example.com");
+
+    assertEquals(PEService.PUPPETDB.getMaxConnections(),
+      manager.getStats(plan("https://master.example.com:8081/pdb/query/v4")).getMax());
+    assertEquals(PEService.CODE_MANAGER.getMaxConnections(),
+      manager.getStats(plan("https://master.example.com:8170/code-manager/v1/deploys")).getMax());
+    assertEquals(PEService.ORCHESTRATOR.getMaxConnections(),
+      manager.getStats(plan("https://master.example.com:8143/orchestrator/v1/jobs")).getMax());
+
+    manager.shutdown();
+  }
+
+  @Test
+  public void otherHostsGetTheDefaultLimit() throws Exception {
+    PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager();
+    PEService.configureRoutes(manager, "master.example.com");
+
+    assertEquals(PEService.ORCHESTRATOR.getMaxConnections(),
+      manager.getStats(plan("https://replica.example.com:8081/pdb/query/v4")).getMax());
+
+    manager.shutdown();
+  }
+}
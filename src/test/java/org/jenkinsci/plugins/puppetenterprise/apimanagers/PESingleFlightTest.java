@@ -0,0 +1,191 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.net.URI;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.jenkinsci.plugins.puppetenterprise.models.PEException;
+
+public class PESingleFlightTest extends Assert {
+
+  private static int keys = 0;
+
+  private String key;
+  private PERequestMetrics metrics;
+  private long coalescedBefore;
+  private AtomicInteger calls;
+
+  @Before
+  public void setUp() {
+    keys = keys + 1;
+    key = "GET https://master.example.com:8143/single-flight/" + keys;
+    metrics = PERequestMetrics.forRequest(PEService.ORCHESTRATOR, "GET", URI.create("https://master.example.com:8143/single-flight/" + keys));
+    //The key's number is templated out of the metrics, so every test shares them
+    coalescedBefore = metrics.getCoalesced();
+    calls = new AtomicInteger();
+  }
+
+  //Starts a call and hands back the future the test finishes it with
+  private Callable<PEFuture<PEResponse>> pending(final PEFuture<PEResponse> future) {
+    return new Callable<PEFuture<PEResponse>>() {
+      @Override public PEFuture<PEResponse> call() {
+        calls.incrementAndGet();
+        return future;
+      }
+    };
+  }
+
+  private void awaitCoalesced(long expected) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+
+    while (metrics.getCoalesced() - coalescedBefore < expected) {
+      assertTrue("Timed out waiting for the call to be joined", System.currentTimeMillis() < deadline);
+      Thread.sleep(5);
+    }
+  }
+
+  @Test
+  public void overlappingAsyncCallsShareOneCall() throws Exception {
+    PEFuture<PEResponse> call = new PEFuture<PEResponse>();
+    PEResponse response = new PEResponse("body", 200);
+
+    PEFuture<PEResponse> first = PESingleFlight.executeAsync(key, 0, metrics, pending(call));
+    PEFuture<PEResponse> second = PESingleFlight.executeAsync(key, 0, metrics, pending(new PEFuture<PEResponse>()));
+
+    call.complete(response);
+
+    assertSame(response, first.await());
+    assertSame(response, second.await());
+    assertEquals(1, calls.get());
+    assertEquals(1, metrics.getCoalesced() - coalescedBefore);
+  }
+
+  @Test
+  public void overlappingAsyncCallsShareAFailure() throws Exception {
+    PEFuture<PEResponse> call = new PEFuture<PEResponse>();
+    PEException failure = new PEException("Orchestrator is down");
+
+    PEFuture<PEResponse> first = PESingleFlight.executeAsync(key, 0, metrics, pending(call));
+    PEFuture<PEResponse> second = PESingleFlight.executeAsync(key, 0, metrics, pending(new PEFuture<PEResponse>()));
+
+    call.fail(failure);
+
+    for (PEFuture<PEResponse> future : new PEFuture[] { first, second }) {
+      try {
+        future.await();
+        fail("Expected the shared call's failure");
+      } catch(PEException e) {
+        assertSame(failure, e);
+      }
+    }
+
+    assertEquals(1, calls.get());
+  }
+
+  @Test
+  public void failuresAreNotReusedWithinTheWindow() throws Exception {
+    PEFuture<PEResponse> call = new PEFuture<PEResponse>();
+    PESingleFlight.executeAsync(key, 60000, metrics, pending(call));
+    call.fail(new PEException("Orchestrator is down"));
+
+    PEResponse response = new PEResponse("body", 200);
+    PEFuture<PEResponse> retry = PESingleFlight.executeAsync(key, 60000, metrics, pending(PEFuture.completed(response)));
+
+    assertSame(response, retry.await());
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  public void responsesAreReusedWithinTheWindow() throws Exception {
+    PEResponse response = new PEResponse("body", 200);
+
+    PESingleFlight.executeAsync(key, 60000, metrics, pending(PEFuture.completed(response))).await();
+    PEFuture<PEResponse> later = PESingleFlight.executeAsync(key, 60000, metrics, pending(new PEFuture<PEResponse>()));
+
+    assertSame(response, later.await());
+    assertEquals(1, calls.get());
+  }
+
+  @Test
+  public void oneWaiterCancellingLeavesTheCallRunning() throws Exception {
+    PEFuture<PEResponse> call = new PEFuture<PEResponse>();
+    PEResponse response = new PEResponse("body", 200);
+
+    PEFuture<PEResponse> first = PESingleFlight.executeAsync(key, 0, metrics, pending(call));
+    PEFuture<PEResponse> second = PESingleFlight.executeAsync(key, 0, metrics, pending(new PEFuture<PEResponse>()));
+
+    first.cancel(false);
+    call.complete(response);
+
+    assertFalse(call.isCancelled());
+    assertSame(response, second.await());
+
+    try {
+      first.await();
+      fail("Expected the cancelled waiter to stay cancelled");
+    } catch(CancellationException e) {
+      //Expected
+    }
+  }
+
+  @Test
+  public void blockingCallersShareAFailure() throws Exception {
+    final CountDownLatch entered = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final PEException failure = new PEException("Orchestrator is down");
+    final AtomicReference<Exception> leaderError = new AtomicReference<Exception>();
+    final AtomicReference<Exception> followerError = new AtomicReference<Exception>();
+
+    Thread leader = new Thread(new Runnable() {
+      @Override public void run() {
+        try {
+          PESingleFlight.execute(key, 0, metrics, new Callable<PEResponse>() {
+            @Override public PEResponse call() throws Exception {
+              calls.incrementAndGet();
+              entered.countDown();
+              release.await(5, TimeUnit.SECONDS);
+              throw failure;
+            }
+          });
+        } catch(Exception e) {
+          leaderError.set(e);
+        }
+      }
+    });
+
+    Thread follower = new Thread(new Runnable() {
+      @Override public void run() {
+        try {
+          PESingleFlight.execute(key, 0, metrics, new Callable<PEResponse>() {
+            @Override public PEResponse call() {
+              calls.incrementAndGet();
+              return new PEResponse("body", 200);
+            }
+          });
+        } catch(Exception e) {
+          followerError.set(e);
+        }
+      }
+    });
+
+    leader.start();
+    assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+    follower.start();
+    awaitCoalesced(1);
+    release.countDown();
+
+    leader.join(5000);
+    follower.join(5000);
+
+    assertSame(failure, leaderError.get());
+    assertSame(failure, followerError.get());
+    assertEquals(1, calls.get());
+  }
+}
@@ -0,0 +1,61 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.security.KeyStore;
+import java.util.Collections;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PETrustMaterialTest extends Assert {
+
+  //Two CA certificates with the same subject, as when a Puppet CA is
+  // regenerated on the same master
+  private static final String OLD_CA = ""
+    + "-----BEGIN CERTIFICATE-----\n"
+    + "MIICLjCCAZegAwIBAgIUFmkRrDu3/6/eFS7DEF/EWo1pAp4wDQYJKoZIhvcNAQEL\n"
+    + "BQAwKDEmMCQGA1UEAwwdUHVwcGV0IENBOiBwdXBwZXQuZXhhbXBsZS5jb20wIBcN\n"
+    + "MjYxMDE4MDc1MzIyWhgPMjEyNjA5MjQwNzUzMjJaMCgxJjAkBgNVBAMMHVB1cHBl\n"
+    + "dCBDQTogcHVwcGV0LmV4YW1wbGUuY29tMIGfMA0GCSqGSIb3DQEBAQUAA4GNADCB\n"
+    + "iQKBgQCpQvuj1fQlWsYfOcsbh2j4SkCutadDcdiv8sjF6HAxqbhVvRlf84Ex/BRm\n"
+    + "oZAgLEFyTEaUFwcxZ4VdOgtPdORSOCMWwD92cC54vn9sXV5rRDz1m0o8CzfqGO2d\n"
+    + "kPhGWoEkHLaXXL23oTbMotGTcnd2CiRil1mr3c1PdUwpqLeDAQIDAQABo1MwUTAd\n"
+    + "BgNVHQ4EFgQULf1USOCTEsos6iT4/FoXYsjGHAMwHwYDVR0jBBgwFoAULf1USOCT\n"
+    + "Esos6iT4/FoXYsjGHAMwDwYDVR0TAQH/BAUwAwEB/zANBgkqhkiG9w0BAQsFAAOB\n"
+    + "gQBqahdofto71Qw43P+cAkp7svfVrn5/KxBpP2LznmomKnF5IOVM8bAPTLtWBY4+\n"
+    + "W9qAlS2xC4Ie+9zs6tbfUtrBmrAJOoPBjubLOqnV+Z/z42Uzntw6c0yk4BzeV8NH\n"
+    + "aJYcML0fX+OFb5auQjos0YVfbWKHOY23qDAxX1G6FmeiHg==\n"
+    + "-----END CERTIFICATE-----\n";
+
+  private static final String NEW_CA = ""
+    + "-----BEGIN CERTIFICATE-----\n"
+    + "MIICLjCCAZegAwIBAgIUTdsQU6gRyGX+heKHgF78QC6U6VwwDQYJKoZIhvcNAQEL\n"
+    + "BQAwKDEmMCQGA1UEAwwdUHVwcGV0IENBOiBwdXBwZXQuZXhhbXBsZS5jb20wIBcN\n"
+    + "MjYxMDE4MDc1MzIyWhgPMjEyNjA5MjQwNzUzMjJaMCgxJjAkBgNVBAMMHVB1cHBl\n"
+    + "dCBDQTogcHVwcGV0LmV4YW1wbGUuY29tMIGfMA0GCSqGSIb3DQEBAQUAA4GNADCB\n"
+    + "iQKBgQC5My7j6erKE5vZNfNNyVRPl5JmN6osv3yQ162PNP2QW2H3tL8bBWrn2d+A\n"
+    + "i7Cyq7OsTUeNAAUjJ1tGDOPJAZJvAvrMlajn2TtU3xRND1ZvuJeYRYwX+S/8VOk7\n"
+    + "gj1nqjzINKsMuRNbPVJJX4adS+SIfleOl7ZBJeelTs/XJVbfwQIDAQABo1MwUTAd\n"
+    + "BgNVHQ4EFgQUOlADh5rWpuaWp3iO0xpqU8ieXNEwHwYDVR0jBBgwFoAUOlADh5rW\n"
+    + "puaWp3iO0xpqU8ieXNEwDwYDVR0TAQH/BAUwAwEB/zANBgkqhkiG9w0BAQsFAAOB\n"
+    + "gQCGNflNZ7/Rin++xI2x/R9Z9I8WTUJvZ0L6d5z9+AJSj9BzECuCzW772+RsTsdk\n"
+    + "gPQ+APClDCUNhRvgpBOlmItHYG9zLuPDV2BngALQ2MxU6ZPpsfzMBs9jFkkX5bnh\n"
+    + "8pnzWyH/b7V6iYeEMYRwT26OH9o4j1zfHEdOuZN1/58Yaw==\n"
+    + "-----END CERTIFICATE-----\n";
+
+  @Test
+  public void certificatesWithTheSameSubjectAreAllTrusted() throws Exception {
+    KeyStore trustStore = PETrustMaterial.forCertificate(OLD_CA + NEW_CA).getTrustStore();
+
+    assertEquals(2, trustStore.size());
+
+    for (String alias : Collections.list(trustStore.aliases())) {
+      assertNotNull(trustStore.getCertificate(alias));
+    }
+  }
+
+  @Test
+  public void theSameCertificateTwiceIsTrustedOnce() throws Exception {
+    KeyStore trustStore = PETrustMaterial.forCertificate(OLD_CA + OLD_CA).getTrustStore();
+
+    assertEquals(1, trustStore.size());
+  }
+}
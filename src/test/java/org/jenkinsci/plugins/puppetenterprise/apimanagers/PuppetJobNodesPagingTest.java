@@ -0,0 +1,88 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.net.URI;
+import java.util.Iterator;
+import org.junit.Assert;
+import org.junit.Test;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetJobNodesV1;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.puppetnodev1.PuppetNodeItemV1;
+
+public class PuppetJobNodesPagingTest extends Assert {
+
+  private static String page(int offset, int count, int total) {
+    StringBuilder body = new StringBuilder("{\"items\":[");
+
+    for (int i = 0; i < count; i++) {
+      body.append((i == 0) ? "" : ",").append("{\"name\":\"node").append(offset + i).append(".example.com\",\"state\":\"finished\"}");
+    }
+
+    return body.append("],\"pagination\":{\"limit\":500,\"offset\":").append(offset)
+      .append(",\"total\":").append(total).append("}}").toString();
+  }
+
+  private static PuppetJobNodesV1 nodes(final FakeTransport transport) throws Exception {
+    PuppetJobNodesV1 nodes = new PuppetJobNodesV1(new URI("https://nodes.example.com:8143/orchestrator/v1/jobs/9001/nodes")) {
+      @Override PETransport getTransport() {
+        return transport;
+      }
+    };
+
+    nodes.setToken("token");
+    return nodes;
+  }
+
+  private static int count(PuppetJobNodesV1 nodes) {
+    int count = 0;
+
+    for (PuppetNodeItemV1 node : nodes) {
+      count = count + 1;
+    }
+
+    return count;
+  }
+
+  @Test
+  public void laterPagesAreFetchedByOffset() throws Exception {
+    FakeTransport transport = new FakeTransport()
+      .respond(200, page(0, 500, 600))
+      .respond(200, page(500, 100, 600));
+
+    PuppetJobNodesV1 nodes = nodes(transport);
+    nodes.execute();
+
+    assertEquals(600, count(nodes));
+    assertEquals(2, transport.getRequests().size());
+    assertTrue(transport.getURIs().get(1).getQuery().contains("offset=500"));
+  }
+
+  @Test
+  public void iteratingAgainStartsOverFromTheFirstPage() throws Exception {
+    FakeTransport transport = new FakeTransport()
+      .respond(200, page(0, 500, 600))
+      .respond(200, page(500, 100, 600))
+      //The page size has grown by now, so the rest comes back at once
+      .respond(200, page(0, 600, 600));
+
+    PuppetJobNodesV1 nodes = nodes(transport);
+    nodes.execute();
+
+    assertEquals(600, count(nodes));
+    assertEquals(600, count(nodes));
+    assertEquals(3, transport.getRequests().size());
+    assertTrue(transport.getURIs().get(2).getQuery().contains("offset=0"));
+  }
+
+  @Test
+  public void firstPageIsOnlyFetchedOnceForASinglePass() throws Exception {
+    FakeTransport transport = new FakeTransport()
+      .respond(200, page(0, 3, 3));
+
+    PuppetJobNodesV1 nodes = nodes(transport);
+    nodes.execute();
+
+    Iterator<PuppetNodeItemV1> iterator = nodes.iterator();
+
+    assertEquals("node0.example.com", iterator.next().getName());
+    assertEquals(1, transport.getRequests().size());
+  }
+}
@@ -0,0 +1,162 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetJobsIDV1;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.puppetjobreportv1.PuppetJobReportNodeV1;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.puppetjobreportv1.PuppetJobReportNodesV1;
+
+public class PuppetJobReportStreamingTest extends Assert {
+
+  private File directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("pe-report-test").toFile();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    FileUtils.deleteDirectory(directory);
+  }
+
+  private File[] spooled() {
+    File[] files = directory.listFiles(new FileFilter() {
+      @Override public boolean accept(File file) {
+        return file.getName().startsWith("pe-response");
+      }
+    });
+
+    return (files == null) ? new File[0] : files;
+  }
+
+  //A job report generated as it's read, which notes whether the spool had
+  // already spilled to disk by the time most of it had been read
+  private class GeneratedReport extends InputStream {
+    private final int nodes;
+    private byte[] chunk = "{\"report\":[".getBytes(StandardCharsets.UTF_8);
+    private int index = 0;
+    private int node = 0;
+    private long read = 0;
+    private boolean ended = false;
+    boolean spilledWhileReading = false;
+
+    GeneratedReport(int nodes) {
+      this.nodes = nodes;
+    }
+
+    @Override public int read() {
+      if (this.index >= this.chunk.length && !nextChunk()) {
+        return -1;
+      }
+
+      this.read = this.read + 1;
+
+      if (!this.spilledWhileReading && this.read > PEJsonSpool.THRESHOLD + 1024 * 1024 && this.read % 65536 == 0) {
+        for (File file : spooled()) {
+          this.spilledWhileReading = this.spilledWhileReading || file.length() > PEJsonSpool.THRESHOLD;
+        }
+      }
+
+      return this.chunk[this.index++] & 0xff;
+    }
+
+    private boolean nextChunk() {
+      String next;
+
+      if (this.node < this.nodes) {
+        next = ((this.node == 0) ? "" : ",") + "{\"node\":\"node" + this.node + ".example.com\",\"state\":\"finished\",\"events\":[]}";
+        this.node = this.node + 1;
+      } else if (!this.ended) {
+        next = "]}";
+        this.ended = true;
+      } else {
+        return false;
+      }
+
+      this.chunk = next.getBytes(StandardCharsets.UTF_8);
+      this.index = 0;
+      return true;
+    }
+
+    long getLength() {
+      return this.read;
+    }
+  }
+
+  private PuppetJobsIDV1 job(final FakeTransport transport) {
+    PuppetJobsIDV1 job = new PuppetJobsIDV1("9001") {
+      @Override PETransport getTransport() {
+        return transport;
+      }
+
+      @Override protected URI getURI(String endpoint) throws Exception {
+        return new URI("https://report.example.com:8143/orchestrator/v1" + endpoint);
+      }
+    };
+
+    job.setToken("token");
+    return job;
+  }
+
+  @Test
+  public void largeReportIsSpilledToDiskAsItStreamsIn() throws Exception {
+    int nodes = (int) (PEJsonSpool.THRESHOLD * 3 / 2 / 60);
+    GeneratedReport body = new GeneratedReport(nodes);
+    FakeTransport transport = new FakeTransport()
+      .respond(200, "{\"name\":\"9001\",\"state\":\"finished\","
+        + "\"report\":{\"id\":\"https://report.example.com:8143/orchestrator/v1/jobs/9001/report\"}}")
+      .stream(200, body);
+
+    PuppetJobsIDV1 job = job(transport);
+    job.execute();
+
+    PuppetJobReportNodesV1 report = job.getReport(directory);
+
+    try {
+      assertTrue(body.getLength() > PEJsonSpool.THRESHOLD);
+      assertTrue("The report was held in memory before it was spooled", body.spilledWhileReading);
+
+      int count = 0;
+
+      for (PuppetJobReportNodeV1 node : report) {
+        count = count + 1;
+      }
+
+      assertEquals(nodes, count);
+    } finally {
+      report.close();
+    }
+
+    assertEquals(0, spooled().length);
+  }
+
+  @Test
+  public void smallReportStaysInMemory() throws Exception {
+    FakeTransport transport = new FakeTransport()
+      .respond(200, "{\"name\":\"9001\",\"state\":\"finished\","
+        + "\"report\":{\"id\":\"https://report.example.com:8143/orchestrator/v1/jobs/9001/report\"}}")
+      .stream(200, new GeneratedReport(3));
+
+    PuppetJobsIDV1 job = job(transport);
+    job.execute();
+
+    PuppetJobReportNodesV1 report = job.getReport(directory);
+
+    try {
+      assertEquals(0, spooled().length);
+      assertTrue(report.iterator().hasNext());
+    } finally {
+      report.close();
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package org.jenkinsci.plugins.puppetenterprise.apimanagers;
+
+import java.net.URI;
+import org.junit.Assert;
+import org.junit.Test;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetJobsV1;
+
+public class PuppetJobsListingTest extends Assert {
+
+  private static PuppetJobsV1 jobs(final FakeTransport transport) {
+    PuppetJobsV1 jobs = new PuppetJobsV1() {
+      @Override PETransport getTransport() {
+        return transport;
+      }
+
+      @Override protected URI getURI(String endpoint) throws Exception {
+        return new URI("https://jobs.example.com:8143/orchestrator/v1" + endpoint);
+      }
+    };
+
+    jobs.setToken("token");
+    return jobs;
+  }
+
+  @Test
+  public void newestJobsAreListedFirst() throws Exception {
+    FakeTransport transport = new FakeTransport().respond(200, "{\"items\":[]}");
+    PuppetJobsV1 jobs = jobs(transport);
+    jobs.setLimit(20);
+    jobs.execute();
+
+    String query = transport.getURIs().get(0).getQuery();
+
+    assertTrue(query.contains("order_by=timestamp"));
+    assertTrue(query.contains("order=desc"));
+    assertTrue(query.contains("limit=20"));
+  }
+
+  @Test
+  public void newestJobsAreListedFirstWithoutALimit() throws Exception {
+    FakeTransport transport = new FakeTransport().respond(200, "{\"items\":[]}");
+    jobs(transport).executeAsync().await();
+
+    String query = transport.getURIs().get(0).getQuery();
+
+    assertTrue(query.contains("order_by=timestamp"));
+    assertTrue(query.contains("order=desc"));
+    assertFalse(query.contains("limit="));
+  }
+}
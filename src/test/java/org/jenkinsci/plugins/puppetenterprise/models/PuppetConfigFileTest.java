@@ -0,0 +1,170 @@
+package org.jenkinsci.plugins.puppetenterprise.models;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PuppetConfigFileTest extends Assert {
+
+  private File directory;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("puppet-conf").toFile();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(directory);
+  }
+
+  private static Map<String, Map<String, String>> parse(String... lines) throws IOException {
+    StringBuilder conf = new StringBuilder();
+
+    for (String line : lines) {
+      conf.append(line).append("\n");
+    }
+
+    return PuppetConfigFile.parse(new StringReader(conf.toString()));
+  }
+
+  private PuppetConfigFile write(String... lines) throws IOException {
+    File file = new File(directory, "puppet.conf");
+    FileUtils.writeLines(file, Arrays.asList(lines));
+
+    return new PuppetConfigFile(file);
+  }
+
+  @Test
+  public void settingsAreGroupedBySection() throws Exception {
+    Map<String, Map<String, String>> sections = parse(
+      "[main]",
+      "certname = jenkins.example.com",
+      "",
+      "[agent]",
+      "server = puppet.example.com",
+      "environment = production");
+
+    assertEquals("jenkins.example.com", sections.get("main").get("certname"));
+    assertEquals("puppet.example.com", sections.get("agent").get("server"));
+    assertEquals("production", sections.get("agent").get("environment"));
+    assertNull(sections.get("main").get("server"));
+  }
+
+  @Test
+  public void settingsBeforeAnySectionBelongToMain() throws Exception {
+    Map<String, Map<String, String>> sections = parse(
+      "server = puppet.example.com",
+      "[agent]",
+      "runinterval = 30m");
+
+    assertEquals("puppet.example.com", sections.get("main").get("server"));
+    assertEquals("30m", sections.get("agent").get("runinterval"));
+  }
+
+  @Test
+  public void commentsAndBlankLinesAreSkipped() throws Exception {
+    Map<String, Map<String, String>> sections = parse(
+      "# Managed by Puppet",
+      "   ",
+      "[main]",
+      "  # server = old.example.com",
+      "server = puppet.example.com");
+
+    assertEquals(1, sections.get("main").size());
+    assertEquals("puppet.example.com", sections.get("main").get("server"));
+  }
+
+  @Test
+  public void metadataAfterAValueIsDropped() throws Exception {
+    Map<String, Map<String, String>> sections = parse(
+      "[main]",
+      "ssldir = /etc/puppetlabs/puppet/ssl { owner = service, mode = 0771 }",
+      "logdir = /var/log/puppetlabs/puppet {owner=service}");
+
+    assertEquals("/etc/puppetlabs/puppet/ssl", sections.get("main").get("ssldir"));
+    assertEquals("/var/log/puppetlabs/puppet", sections.get("main").get("logdir"));
+  }
+
+  @Test
+  public void quotesAndWhitespaceAroundValuesAreStripped() throws Exception {
+    Map<String, Map<String, String>> sections = parse(
+      "[main]",
+      "  server   =   \"puppet.example.com\"  ",
+      "environment='production'");
+
+    assertEquals("puppet.example.com", sections.get("main").get("server"));
+    assertEquals("production", sections.get("main").get("environment"));
+  }
+
+  @Test
+  public void serverListTakesPrecedenceOverServer() throws Exception {
+    PuppetConfigFile conf = write(
+      "[main]",
+      "server = puppet.example.com",
+      "server_list = compiler1.example.com:8140, compiler2.example.com ,");
+
+    assertEquals(Arrays.asList("compiler1.example.com:8140", "compiler2.example.com"), conf.getServerList());
+    assertEquals("compiler1.example.com", conf.getServer());
+  }
+
+  @Test
+  public void mainIsSearchedBeforeAgent() throws Exception {
+    PuppetConfigFile conf = write(
+      "[agent]",
+      "server = agent.example.com",
+      "[main]",
+      "server = main.example.com");
+
+    assertEquals("main.example.com", conf.getServer());
+  }
+
+  @Test
+  public void serverFallsBackToAgent() throws Exception {
+    PuppetConfigFile conf = write(
+      "[main]",
+      "certname = jenkins.example.com",
+      "[agent]",
+      "server = agent.example.com");
+
+    assertEquals("agent.example.com", conf.getServer());
+  }
+
+  @Test
+  public void bracketedIPv6AddressesKeepTheirBrackets() throws Exception {
+    assertEquals("[2001:db8::1]", write("server_list = [2001:db8::1]:8140").getServer());
+    assertEquals("[2001:db8::1]", write("server = [2001:db8::1]").getServer());
+  }
+
+  @Test
+  public void bareIPv6AddressesAreBracketed() throws Exception {
+    assertEquals("[2001:db8::1]", write("server = 2001:db8::1").getServer());
+  }
+
+  @Test
+  public void missingFileHasNoServer() throws Exception {
+    PuppetConfigFile conf = new PuppetConfigFile(new File(directory, "missing.conf"));
+
+    assertFalse(conf.exists());
+    assertNull(conf.getServer());
+  }
+
+  @Test
+  public void changesAreReadAfterInvalidate() throws Exception {
+    PuppetConfigFile conf = write("server = old.example.com");
+    assertEquals("old.example.com", conf.getServer());
+
+    FileUtils.writeStringToFile(new File(directory, "puppet.conf"), "server = new.example.com\n");
+    conf.invalidate();
+
+    assertEquals("new.example.com", conf.getServer());
+  }
+}
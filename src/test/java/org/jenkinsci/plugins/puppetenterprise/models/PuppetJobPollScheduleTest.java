@@ -0,0 +1,106 @@
+package org.jenkinsci.plugins.puppetenterprise.models;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PuppetJobPollScheduleTest extends Assert {
+
+  //A job that started long enough ago to be past the warm up
+  private static PuppetJobPollSchedule running(Integer floor, Integer ceiling) {
+    return new PuppetJobPollSchedule(floor, ceiling, System.currentTimeMillis() - 60000);
+  }
+
+  @Test
+  public void pollsAtTheFloorWhileWarmingUp() {
+    PuppetJobPollSchedule schedule = new PuppetJobPollSchedule(1000, 8000);
+
+    assertEquals(1000, schedule.next("running 0/10", 0, 10));
+    assertEquals(1000, schedule.next("running 0/10", 0, 10));
+    assertEquals(1000, schedule.next("running 0/10", 0, 10));
+  }
+
+  @Test
+  public void backsOffByHalfWhileNothingChanges() {
+    PuppetJobPollSchedule schedule = running(1000, 8000);
+
+    assertEquals(1000, schedule.next("running 0/10", 0, 10));
+    assertEquals(1500, schedule.next("running 0/10", 0, 10));
+    assertEquals(2250, schedule.next("running 0/10", 0, 10));
+    assertEquals(3375, schedule.next("running 0/10", 0, 10));
+  }
+
+  @Test
+  public void backOffStopsAtTheCeiling() {
+    PuppetJobPollSchedule schedule = running(1000, 4000);
+    long delay = 0;
+
+    for (int i = 0; i < 20; i++) {
+      delay = schedule.next("running 0/10", 0, 10);
+    }
+
+    assertEquals(4000, delay);
+  }
+
+  @Test
+  public void progressHalvesTheDelay() {
+    PuppetJobPollSchedule schedule = running(1000, 8000);
+
+    //Backed off all the way to the ceiling
+    for (int i = 0; i < 10; i++) {
+      schedule.next("running 1/10", 1, 10);
+    }
+
+    assertEquals(4000, schedule.next("running 2/10", 2, 10));
+    assertEquals(2000, schedule.next("running 3/10", 3, 10));
+    assertEquals(1000, schedule.next("running 4/10", 4, 10));
+    assertEquals(1000, schedule.next("running 5/10", 5, 10));
+  }
+
+  @Test
+  public void pollsAtTheFloorNearCompletion() {
+    PuppetJobPollSchedule schedule = running(1000, 8000);
+
+    for (int i = 0; i < 10; i++) {
+      schedule.next("running 1/10", 1, 10);
+    }
+
+    assertEquals(1000, schedule.next("running 9/10", 9, 10));
+    assertEquals(1000, schedule.next("running 9/10", 9, 10));
+  }
+
+  @Test
+  public void unknownNodeCountsNeverCountAsNearCompletion() {
+    PuppetJobPollSchedule schedule = running(1000, 8000);
+
+    schedule.next("running", null, null);
+    assertEquals(1500, schedule.next("running", null, null));
+
+    schedule = running(1000, 8000);
+    schedule.next("running", 0, 0);
+    assertEquals(1500, schedule.next("running", 0, 0));
+  }
+
+  @Test
+  public void countsPolls() {
+    PuppetJobPollSchedule schedule = running(null, null);
+
+    schedule.next("running", 0, 10);
+    schedule.next("running", 0, 10);
+
+    assertEquals(2, schedule.getPolls());
+  }
+
+  @Test
+  public void defaultsAndBoundsAreApplied() {
+    PuppetJobPollSchedule defaults = new PuppetJobPollSchedule();
+    assertEquals(PuppetJobPollSchedule.DEFAULT_FLOOR_MILLIS, defaults.getFloor());
+    assertEquals(PuppetJobPollSchedule.DEFAULT_CEILING_MILLIS, defaults.getCeiling());
+
+    //A ceiling below the floor is raised to it
+    PuppetJobPollSchedule inverted = new PuppetJobPollSchedule(5000, 1000);
+    assertEquals(5000, inverted.getCeiling());
+
+    PuppetJobPollSchedule zero = new PuppetJobPollSchedule(0, null);
+    assertEquals(1, zero.getFloor());
+  }
+}
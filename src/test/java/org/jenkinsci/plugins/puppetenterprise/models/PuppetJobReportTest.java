@@ -0,0 +1,56 @@
+package org.jenkinsci.plugins.puppetenterprise.models;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.PEJson;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.puppetnodev1.PuppetNodeItemV1;
+
+public class PuppetJobReportTest extends Assert {
+
+  private static PuppetNodeItemV1 node(String json) {
+    return PEJson.get().fromJson(json, PuppetNodeItemV1.class);
+  }
+
+  //A stopped job with the given nodes
+  private static PuppetJob job(final List<PuppetNodeItemV1> nodes) {
+    return new PuppetJob() {
+      @Override public Iterable<PuppetNodeItemV1> getNodes() {
+        return nodes;
+      }
+
+      @Override public String getName() {
+        return "711";
+      }
+
+      @Override public String getState() {
+        return "stopped";
+      }
+    };
+  }
+
+  @Test
+  public void stopReportSplitsNodesThatRanFromTheRest() {
+    List<PuppetNodeItemV1> nodes = new ArrayList<PuppetNodeItemV1>();
+    nodes.add(node("{\"name\":\"ran.example.com\",\"state\":\"finished\"}"));
+    nodes.add(node("{\"name\":\"skipped.example.com\",\"state\":\"skipped\"}"));
+
+    String report = new PuppetJobReport(job(nodes)).formatStopReport();
+
+    assertTrue(report.contains("Nodes that ran: 1\n  ran.example.com (finished)"));
+    assertTrue(report.contains("Nodes that did not run: 1\n  skipped.example.com (skipped)"));
+  }
+
+  @Test
+  public void stopReportHandlesNodesWithoutAState() {
+    List<PuppetNodeItemV1> nodes = new ArrayList<PuppetNodeItemV1>();
+    nodes.add(node("{\"name\":\"new.example.com\",\"state\":null}"));
+    nodes.add(node("{\"name\":\"ran.example.com\",\"state\":\"running\"}"));
+
+    String report = new PuppetJobReport(job(nodes)).formatStopReport();
+
+    assertTrue(report.contains("Nodes that ran: 1\n"));
+    assertTrue(report.contains("Nodes that did not run: 1\n  new.example.com (null)"));
+  }
+}
@@ -0,0 +1,88 @@
+package org.jenkinsci.plugins.puppetenterprise.models;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PuppetJobSlotsTest extends Assert {
+
+  private static Runnable record(final List<String> acquired, final String name) {
+    return new Runnable() {
+      @Override public void run() {
+        acquired.add(name);
+      }
+    };
+  }
+
+  @Test
+  public void handsOutFreeSlotsRightAway() {
+    PuppetJobSlots slots = new PuppetJobSlots(2);
+    List<String> acquired = new ArrayList<String>();
+
+    assertTrue(slots.acquire(record(acquired, "a")));
+    assertTrue(slots.acquire(record(acquired, "b")));
+
+    assertEquals(2, slots.getUsed());
+    assertTrue(acquired.isEmpty());
+  }
+
+  @Test
+  public void queuesOnceFullAndHandsOverInOrder() {
+    PuppetJobSlots slots = new PuppetJobSlots(1);
+    List<String> acquired = new ArrayList<String>();
+
+    assertTrue(slots.acquire(record(acquired, "a")));
+    assertFalse(slots.acquire(record(acquired, "b")));
+    assertFalse(slots.acquire(record(acquired, "c")));
+    assertEquals(2, slots.getWaiting());
+
+    slots.release();
+
+    assertEquals(1, acquired.size());
+    assertEquals("b", acquired.get(0));
+    assertEquals(1, slots.getUsed());
+
+    slots.release();
+
+    assertEquals("c", acquired.get(1));
+    assertEquals(0, slots.getWaiting());
+
+    slots.release();
+
+    assertEquals(0, slots.getUsed());
+  }
+
+  @Test
+  public void takenSlotsCanGoOverTheLimit() {
+    PuppetJobSlots slots = new PuppetJobSlots(1);
+    List<String> acquired = new ArrayList<String>();
+
+    slots.take();
+    slots.take();
+    assertFalse(slots.acquire(record(acquired, "a")));
+
+    //Still over the limit, so nothing is handed over yet
+    slots.release();
+    assertTrue(acquired.isEmpty());
+
+    slots.release();
+    assertEquals(1, acquired.size());
+    assertEquals(1, slots.getUsed());
+  }
+
+  @Test
+  public void releaseNeverGoesBelowZero() {
+    PuppetJobSlots slots = new PuppetJobSlots(1);
+
+    slots.release();
+
+    assertEquals(0, slots.getUsed());
+    assertTrue(slots.acquire(record(new ArrayList<String>(), "a")));
+  }
+
+  @Test
+  public void sizeIsAtLeastOne() {
+    assertEquals(1, new PuppetJobSlots(0).getSize());
+  }
+}
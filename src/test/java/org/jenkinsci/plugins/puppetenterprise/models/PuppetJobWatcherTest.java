@@ -0,0 +1,254 @@
+package org.jenkinsci.plugins.puppetenterprise.models;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Assert;
+import org.junit.Test;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetOrchestratorException;
+
+public class PuppetJobWatcherTest extends Assert {
+
+  private static class RecordingListener implements PuppetJobWatcher.Listener {
+    final List<PuppetJobWatcher.JobStatus> updates = new ArrayList<PuppetJobWatcher.JobStatus>();
+    final List<Exception> errors = new ArrayList<Exception>();
+
+    @Override public synchronized void onUpdate(PuppetJobWatcher.JobStatus status) {
+      this.updates.add(status);
+    }
+
+    @Override public synchronized void onError(Exception e) {
+      this.errors.add(e);
+    }
+  }
+
+  private static PuppetJobWatcher.JobStatus status(String name, String state, int finished) {
+    Map<String, Integer> nodeStates = new HashMap<String, Integer>();
+    nodeStates.put("running", 10 - finished);
+    nodeStates.put("finished", finished);
+
+    return new PuppetJobWatcher.JobStatus(name, state, 10, nodeStates);
+  }
+
+  @Test
+  public void watchingTheSameJobTwiceSharesIt() {
+    PuppetJobWatcher watcher = new PuppetJobWatcher();
+
+    watcher.watch("1", "token", new PuppetJobPollSchedule(), new RecordingListener());
+    watcher.watch("1", "token", new PuppetJobPollSchedule(), new RecordingListener());
+
+    assertEquals(1, watcher.getWatchedCount());
+  }
+
+  @Test
+  public void unwatchKeepsTheJobWhileOthersListen() {
+    PuppetJobWatcher watcher = new PuppetJobWatcher();
+    RecordingListener first = new RecordingListener();
+    RecordingListener second = new RecordingListener();
+
+    watcher.watch("1", "token", new PuppetJobPollSchedule(), first);
+    watcher.watch("1", "token", new PuppetJobPollSchedule(), second);
+    watcher.unwatch("1", first);
+
+    assertEquals(1, watcher.getWatchedCount());
+
+    watcher.update("1", status("1", "running", 1), true);
+
+    assertEquals(0, first.updates.size());
+    assertEquals(1, second.updates.size());
+
+    watcher.unwatch("1", second);
+
+    assertEquals(0, watcher.getWatchedCount());
+  }
+
+  @Test
+  public void unwatchingAnUnknownListenerIsHarmless() {
+    PuppetJobWatcher watcher = new PuppetJobWatcher();
+
+    watcher.watch("1", "token", new PuppetJobPollSchedule(), new RecordingListener());
+    watcher.unwatch("1", new RecordingListener());
+    watcher.unwatch("2", new RecordingListener());
+
+    assertEquals(1, watcher.getWatchedCount());
+  }
+
+  @Test
+  public void lateListenerIsCaughtUpOnce() {
+    PuppetJobWatcher watcher = new PuppetJobWatcher();
+    RecordingListener late = new RecordingListener();
+
+    watcher.watch("1", "token", new PuppetJobPollSchedule(), new RecordingListener());
+    watcher.update("1", status("1", "running", 3), true);
+    watcher.watch("1", "token", new PuppetJobPollSchedule(), late);
+
+    assertEquals(1, late.updates.size());
+    assertEquals(Integer.valueOf(3), late.updates.get(0).getFinishedNodeCount());
+  }
+
+  @Test
+  public void unchangedStatusIsNotRepeated() {
+    PuppetJobWatcher watcher = new PuppetJobWatcher();
+    RecordingListener listener = new RecordingListener();
+
+    watcher.watch("1", "token", new PuppetJobPollSchedule(), listener);
+    watcher.update("1", status("1", "running", 3), true);
+    watcher.update("1", status("1", "running", 3), true);
+    watcher.update("1", status("1", "running", 4), true);
+
+    assertEquals(2, listener.updates.size());
+  }
+
+  @Test
+  public void finishedJobIsNoLongerWatched() {
+    PuppetJobWatcher watcher = new PuppetJobWatcher();
+    RecordingListener listener = new RecordingListener();
+
+    watcher.watch("1", "token", new PuppetJobPollSchedule(), listener);
+    watcher.update("1", status("1", "finished", 10), true);
+
+    assertEquals(0, watcher.getWatchedCount());
+    assertEquals(1, listener.updates.size());
+    assertFalse(listener.updates.get(0).isRunning());
+  }
+
+  @Test
+  public void onlyDueJobsMoveAlongTheirSchedule() {
+    PuppetJobWatcher watcher = new PuppetJobWatcher();
+    PuppetJobPollSchedule schedule = new PuppetJobPollSchedule(1000, 8000);
+    RecordingListener listener = new RecordingListener();
+
+    watcher.watch("1", "token", schedule, listener);
+    long nextPoll = watcher.getNextPoll("1");
+
+    //Picked up from a listing made for another job
+    watcher.update("1", status("1", "running", 1), false);
+
+    assertEquals(0, schedule.getPolls());
+    assertEquals(nextPoll, watcher.getNextPoll("1"));
+    assertEquals(1, listener.updates.size());
+
+    watcher.update("1", status("1", "running", 2), true);
+
+    assertEquals(1, schedule.getPolls());
+    assertEquals(2, listener.updates.size());
+  }
+
+  @Test
+  public void transientPollFailureKeepsWatchingTheJob() {
+    PuppetJobWatcher watcher = new PuppetJobWatcher();
+    RecordingListener listener = new RecordingListener();
+
+    watcher.watch("1", "token", new PuppetJobPollSchedule(), listener);
+    long before = System.currentTimeMillis();
+    watcher.pollFailed("1", new IOException("Connection reset"));
+
+    assertEquals(1, watcher.getWatchedCount());
+    assertEquals(0, listener.errors.size());
+    assertTrue(watcher.getNextPoll("1") >= before);
+
+    watcher.update("1", status("1", "finished", 10), true);
+
+    assertEquals(1, listener.updates.size());
+  }
+
+  @Test
+  public void refusedPollFailsTheJobRightAway() {
+    PuppetJobWatcher watcher = new PuppetJobWatcher();
+    RecordingListener listener = new RecordingListener();
+
+    watcher.watch("1", "token", new PuppetJobPollSchedule(), listener);
+    watcher.pollFailed("1", new PuppetOrchestratorException("puppetlabs.orchestrator/unknown-job", "Unknown job 1", null));
+
+    assertEquals(0, watcher.getWatchedCount());
+    assertEquals(1, listener.errors.size());
+  }
+
+  @Test
+  public void jobIsGivenUpOnAfterTooManyFailuresInARow() {
+    PuppetJobWatcher watcher = new PuppetJobWatcher();
+    RecordingListener listener = new RecordingListener();
+
+    watcher.watch("1", "token", new PuppetJobPollSchedule(), listener);
+
+    int failures = 0;
+
+    while (watcher.getWatchedCount() > 0) {
+      watcher.pollFailed("1", new IOException("Connection refused"));
+      failures = failures + 1;
+    }
+
+    assertEquals(30, failures);
+    assertEquals(1, listener.errors.size());
+  }
+
+  @Test
+  public void successfulPollStartsTheFailureCountOver() {
+    PuppetJobWatcher watcher = new PuppetJobWatcher();
+    RecordingListener listener = new RecordingListener();
+
+    watcher.watch("1", "token", new PuppetJobPollSchedule(), listener);
+
+    for (int i = 0; i < 29; i++) {
+      watcher.pollFailed("1", new IOException("Connection refused"));
+    }
+
+    watcher.update("1", status("1", "running", 1), true);
+    watcher.pollFailed("1", new IOException("Connection refused"));
+
+    assertEquals(1, watcher.getWatchedCount());
+    assertEquals(0, listener.errors.size());
+  }
+
+  @Test
+  public void listenerAddedWhileAnotherLeavesKeepsTheJob() throws Exception {
+    for (int i = 0; i < 200; i++) {
+      final PuppetJobWatcher watcher = new PuppetJobWatcher();
+      final RecordingListener leaving = new RecordingListener();
+      final RecordingListener joining = new RecordingListener();
+      final CountDownLatch go = new CountDownLatch(1);
+
+      watcher.watch("1", "token", new PuppetJobPollSchedule(), leaving);
+
+      Thread unwatch = new Thread(new Runnable() {
+        @Override public void run() {
+          try {
+            go.await();
+          } catch(InterruptedException e) {
+            return;
+          }
+
+          watcher.unwatch("1", leaving);
+        }
+      });
+
+      Thread watch = new Thread(new Runnable() {
+        @Override public void run() {
+          try {
+            go.await();
+          } catch(InterruptedException e) {
+            return;
+          }
+
+          watcher.watch("1", "token", new PuppetJobPollSchedule(), joining);
+        }
+      });
+
+      unwatch.start();
+      watch.start();
+      go.countDown();
+      unwatch.join();
+      watch.join();
+
+      assertEquals(1, watcher.getWatchedCount());
+
+      watcher.update("1", status("1", "running", 1), true);
+
+      assertEquals(1, joining.updates.size());
+      assertEquals(0, leaving.updates.size());
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package org.jenkinsci.plugins.puppetenterprise.models;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PuppetNodeCountTest extends Assert {
+
+  @Test
+  public void resolvesCounts() {
+    assertEquals(10, PuppetNodeCount.resolve("10", 200));
+    assertEquals(3, PuppetNodeCount.resolve(" 3 ", 200));
+  }
+
+  @Test
+  public void resolvesPercentagesRoundingUp() {
+    assertEquals(20, PuppetNodeCount.resolve("10%", 200));
+    assertEquals(1, PuppetNodeCount.resolve("10%", 3));
+    assertEquals(3, PuppetNodeCount.resolve("95 %", 3));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsAnythingElse() {
+    PuppetNodeCount.resolve("half", 10);
+  }
+}
@@ -0,0 +1,153 @@
+package org.jenkinsci.plugins.puppetenterprise.models;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.jenkinsci.plugins.puppetenterprise.apimanagers.puppetorchestratorv1.PuppetOrchestratorException;
+
+public class PuppetNodeReadinessTest extends Assert {
+
+  //Answers each inventory request with the next scripted result, the
+  // nodes connected so far or an exception to throw
+  private static class ScriptedReadiness extends PuppetNodeReadiness {
+    final LinkedList<Object> answers = new LinkedList<Object>();
+    final List<List<String>> asked = new ArrayList<List<String>>();
+
+    ScriptedReadiness(String... nodes) {
+      super(Arrays.asList(nodes), new PuppetJobPollSchedule(1, 5));
+    }
+
+    ScriptedReadiness answer(Object answer) {
+      this.answers.add(answer);
+      return this;
+    }
+
+    @Override List<String> fetchConnected(List<String> chunk) throws PuppetOrchestratorException, Exception {
+      this.asked.add(chunk);
+      Object answer = this.answers.isEmpty() ? new ArrayList<String>() : this.answers.removeFirst();
+
+      if (answer instanceof Exception) {
+        throw (Exception) answer;
+      }
+
+      List<String> connected = new ArrayList<String>();
+
+      for (String node : (List<String>) answer) {
+        if (chunk.contains(node)) {
+          connected.add(node);
+        }
+      }
+
+      return connected;
+    }
+  }
+
+  private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+  private final PrintStream logger = new PrintStream(this.output, true);
+
+  private static long in(long millis) {
+    return System.currentTimeMillis() + millis;
+  }
+
+  @Test
+  public void waitsForEveryNodeByDefault() throws Exception {
+    ScriptedReadiness readiness = new ScriptedReadiness("a", "b", "c");
+    readiness.answer(Arrays.asList("a")).answer(Arrays.asList("b", "c"));
+
+    assertTrue(readiness.await(in(10000), this.logger));
+    assertEquals(3, readiness.getConnectedCount());
+    assertTrue(readiness.getPending().isEmpty());
+    assertTrue(this.output.toString().contains("3 of 3 nodes connected"));
+  }
+
+  @Test
+  public void onlyAsksAboutPendingNodes() throws Exception {
+    ScriptedReadiness readiness = new ScriptedReadiness("a", "b", "c");
+    readiness.answer(Arrays.asList("a")).answer(Arrays.asList("b", "c"));
+
+    readiness.await(in(10000), this.logger);
+
+    assertEquals(Arrays.asList("a", "b", "c"), readiness.asked.get(0));
+    assertEquals(Arrays.asList("b", "c"), readiness.asked.get(1));
+  }
+
+  @Test
+  public void stopsOnceAPercentageQuorumIsReached() throws Exception {
+    ScriptedReadiness readiness = new ScriptedReadiness("a", "b", "c", "d");
+    readiness.setQuorum("50%");
+    readiness.answer(Arrays.asList("a", "b"));
+
+    assertTrue(readiness.await(in(10000), this.logger));
+    assertEquals(1, readiness.asked.size());
+    assertEquals(Arrays.asList("c", "d"), readiness.getPending());
+  }
+
+  @Test
+  public void quorumIsCappedAtTheNodeCount() {
+    ScriptedReadiness readiness = new ScriptedReadiness("a", "b");
+
+    readiness.setQuorum("5");
+    assertEquals(2, readiness.getQuorum());
+
+    readiness.setQuorum("-1");
+    assertEquals(0, readiness.getQuorum());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsAQuorumThatIsntANumber() {
+    new ScriptedReadiness("a").setQuorum("most");
+  }
+
+  @Test
+  public void givesUpAtTheDeadline() throws Exception {
+    ScriptedReadiness readiness = new ScriptedReadiness("a", "b");
+    readiness.answer(Arrays.asList("a"));
+
+    long started = System.currentTimeMillis();
+
+    assertFalse(readiness.await(in(200), this.logger));
+    assertTrue(System.currentTimeMillis() - started >= 200);
+    assertEquals(Arrays.asList("b"), readiness.getPending());
+  }
+
+  @Test
+  public void retriesTransientErrorsUntilTheDeadline() throws Exception {
+    ScriptedReadiness readiness = new ScriptedReadiness("a");
+    readiness.answer(new IOException("Connection refused")).answer(Arrays.asList("a"));
+
+    assertTrue(readiness.await(in(10000), this.logger));
+    assertTrue(this.output.toString().contains("trying again: Connection refused"));
+  }
+
+  @Test
+  public void transientErrorsUntilTheDeadlineTimeOut() throws Exception {
+    ScriptedReadiness readiness = new ScriptedReadiness("a");
+
+    for (int i = 0; i < 1000; i++) {
+      readiness.answer(new IOException("Connection refused"));
+    }
+
+    assertFalse(readiness.await(in(200), this.logger));
+  }
+
+  @Test
+  public void orchestratorErrorsFailRightAway() throws Exception {
+    ScriptedReadiness readiness = new ScriptedReadiness("a");
+    readiness.answer(new PuppetOrchestratorException("puppetlabs.rbac/token-expired", "expired", null));
+
+    try {
+      readiness.await(in(10000), this.logger);
+      fail("Expected the orchestrator's error");
+    } catch(PuppetOrchestratorException e) {
+      assertEquals("puppetlabs.rbac/token-expired", e.getKind());
+    }
+
+    assertEquals(1, readiness.asked.size());
+  }
+}
@@ -40,6 +40,7 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.FileNotFoundException;
 import java.lang.StringBuffer;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
@@ -116,7 +117,7 @@ public class PuppetJobStepTest extends Assert {
             .withHeader("Content-Type", "application/json")
             .withBody(TestUtils.getAPIResponseBody(peVersion, "/orchestrator/v1/jobs/711/", "job_report.json"))));
 
-    mockOrchestratorService.stubFor(get(urlEqualTo("/orchestrator/v1/jobs/711/nodes"))
+    mockOrchestratorService.stubFor(get(urlPathEqualTo("/orchestrator/v1/jobs/711/nodes"))
         .withHeader("X-Authentication", equalTo("super_secret_token_string"))
         .willReturn(aResponse()
             .withStatus(200)
@@ -150,7 +151,8 @@ public class PuppetJobStepTest extends Assert {
         verify(getRequestedFor(urlMatching("/orchestrator/v1/jobs/711"))
             .withHeader("X-Authentication", matching("super_secret_token_string")));
 
-        verify(getRequestedFor(urlMatching("/orchestrator/v1/jobs/711/nodes"))
+        verify(getRequestedFor(urlPathEqualTo("/orchestrator/v1/jobs/711/nodes"))
+            .withQueryParam("offset", equalTo("0"))
             .withHeader("X-Authentication", matching("super_secret_token_string")));
       }
     });
@@ -164,6 +166,8 @@ public class PuppetJobStepTest extends Assert {
     story.addStep(new Statement() {
       @Override
       public void evaluate() throws Throwable {
+        mockOrchestratorService.resetRequests();
+
         //Create a job where the credentials are defined as part of the job method call
         WorkflowJob job = story.j.jenkins.createProject(WorkflowJob.class, "Puppet Job with Credentials Defined With Method Call Against " + peVersion);
         job.setDefinition(new CpsFlowDefinition(
@@ -193,11 +197,207 @@ public class PuppetJobStepTest extends Assert {
         verify(getRequestedFor(urlMatching("/orchestrator/v1/jobs/711"))
             .withHeader("X-Authentication", matching("super_secret_token_string")));
 
-        verify(getRequestedFor(urlMatching("/orchestrator/v1/jobs/711/report"))
+        //The default node summary doesn't read the event report
+        verify(0, getRequestedFor(urlMatching("/orchestrator/v1/jobs/711/report")));
+
+        verify(getRequestedFor(urlPathEqualTo("/orchestrator/v1/jobs/711/nodes"))
+            .withQueryParam("offset", equalTo("0"))
             .withHeader("X-Authentication", matching("super_secret_token_string")));
+      }
+    });
+  }
+
+  @Theory
+  public void puppetJobRunsWithoutAnExecutor(final String peVersion) throws Exception {
+
+    stubJobDeploySuccessful(peVersion);
+
+    story.addStep(new Statement() {
+      @Override
+      public void evaluate() throws Throwable {
+        //The build would queue forever if the step needed an executor
+        story.j.jenkins.setNumExecutors(0);
+
+        WorkflowJob job = story.j.jenkins.createProject(WorkflowJob.class, "Puppet Job Outside of a Node Block Against " + peVersion);
+        job.setDefinition(new CpsFlowDefinition(
+          "puppet.job 'production', credentials: 'pe-test-token'\n", true));
+        WorkflowRun result = job.scheduleBuild2(0).get(60, TimeUnit.SECONDS);
+        story.j.assertBuildStatusSuccess(result);
+        story.j.assertLogContains("Successfully started Puppet job 711", result);
+      }
+    });
+  }
+
+  @Theory
+  public void puppetJobWithSeveralScopesMergesReports(final String peVersion) throws Exception {
+
+    stubJobDeploySuccessful(peVersion);
+
+    story.addStep(new Statement() {
+      @Override
+      public void evaluate() throws Throwable {
+        mockOrchestratorService.resetRequests();
+
+        WorkflowJob job = story.j.jenkins.createProject(WorkflowJob.class, "Puppet Job with Several Scopes Against " + peVersion);
+        job.setDefinition(new CpsFlowDefinition(
+          "puppet.job 'production', credentials: 'pe-test-token', maxInFlight: 2, scopes: [\n" +
+          "  [application: 'Rgbank'],\n" +
+          "  [nodes: ['node1.example.com']],\n" +
+          "  [query: 'nodes { certname ~ \"db\" }']\n" +
+          "]\n", true));
+        WorkflowRun result = job.scheduleBuild2(0).get(60, TimeUnit.SECONDS);
+        story.j.assertBuildStatusSuccess(result);
+        story.j.assertLogContains("Starting 3 Puppet jobs, 2 at a time", result);
+        story.j.assertLogContains("Puppet Jobs: 3", result);
+
+        verify(3, postRequestedFor(urlMatching("/orchestrator/v1/command/deploy")));
+      }
+    });
+  }
+
+  @Theory
+  public void puppetJobNodeChangesReportFetchesEventReport(final String peVersion) throws Exception {
 
-        verify(getRequestedFor(urlMatching("/orchestrator/v1/jobs/711/nodes"))
+    stubJobDeploySuccessful(peVersion);
+
+    story.addStep(new Statement() {
+      @Override
+      public void evaluate() throws Throwable {
+        mockOrchestratorService.resetRequests();
+
+        WorkflowJob job = story.j.jenkins.createProject(WorkflowJob.class, "Puppet Job with Node Changes Report Against " + peVersion);
+        job.setDefinition(new CpsFlowDefinition(
+          "node { \n" +
+          "  puppet.job 'production', credentials: 'pe-test-token', reports: ['nodeChanges']\n" +
+          "}", true));
+        WorkflowRun result = job.scheduleBuild2(0).get();
+        story.j.assertBuildStatusSuccess(result);
+        story.j.assertLogContains("Nodes with changes:", result);
+
+        verify(getRequestedFor(urlMatching("/orchestrator/v1/jobs/711/report"))
             .withHeader("X-Authentication", matching("super_secret_token_string")));
+
+        //The node changes report only reads the event report
+        verify(0, getRequestedFor(urlPathEqualTo("/orchestrator/v1/jobs/711/nodes")));
+      }
+    });
+  }
+
+  @Theory
+  public void puppetJobResumesAfterRestartWithoutRedeploying(final String peVersion) throws Exception {
+
+    stubJobDeploySuccessful(peVersion);
+
+    //Keep the job running until Jenkins has restarted
+    final String jobDetails = TestUtils.getAPIResponseBody(peVersion, "/orchestrator/v1/jobs/711", "job_details.json");
+    mockOrchestratorService.stubFor(get(urlEqualTo("/orchestrator/v1/jobs/711"))
+        .withHeader("X-Authentication", equalTo("super_secret_token_string"))
+        .willReturn(aResponse()
+            .withStatus(200)
+            .withHeader("Content-Type", "application/json")
+            .withBody(jobDetails.replaceFirst("\"state\" : \"finished\"", "\"state\" : \"running\""))));
+
+    final String jobName = "Puppet Job Resumed After Restart Against " + peVersion;
+
+    story.addStep(new Statement() {
+      @Override
+      public void evaluate() throws Throwable {
+        mockOrchestratorService.resetRequests();
+
+        WorkflowJob job = story.j.jenkins.createProject(WorkflowJob.class, jobName);
+        job.setDefinition(new CpsFlowDefinition(
+          "node { \n" +
+          "  puppet.job 'production', credentials: 'pe-test-token'\n" +
+          "}", true));
+        WorkflowRun run = job.scheduleBuild2(0).waitForStart();
+        story.j.waitForMessage("Successfully started Puppet job 711", run);
+      }
+    });
+
+    story.addStep(new Statement() {
+      @Override
+      public void evaluate() throws Throwable {
+        mockOrchestratorService.stubFor(get(urlEqualTo("/orchestrator/v1/jobs/711"))
+            .withHeader("X-Authentication", equalTo("super_secret_token_string"))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody(jobDetails)));
+        mockOrchestratorService.resetRequests();
+
+        WorkflowRun run = story.j.jenkins.getItemByFullName(jobName, WorkflowJob.class).getLastBuild();
+        story.j.assertBuildStatusSuccess(story.j.waitForCompletion(run));
+        story.j.assertLogContains("Resuming Puppet job 711", run);
+        story.j.assertLogContains("Puppet Job Name: 711", run);
+        story.j.assertLogContains("State: finished", run);
+        story.j.assertLogContains("Nodes: 11", run);
+
+        //The resumed step still had the credentials to poll the job with
+        assertFalse(findAll(getRequestedFor(urlMatching("/orchestrator/v1/jobs/711.*"))
+            .withHeader("X-Authentication", equalTo("super_secret_token_string"))).isEmpty());
+        assertTrue(findAll(getRequestedFor(urlMatching("/orchestrator/.*"))
+            .withHeader("X-Authentication", absent())).isEmpty());
+
+        verify(0, postRequestedFor(urlMatching("/orchestrator/v1/command/deploy")));
+      }
+    });
+  }
+
+  @Theory
+  public void puppetJobNameIsSavedBeforeTheJobIsPolled(final String peVersion) throws Exception {
+
+    stubJobDeploySuccessful(peVersion);
+
+    //Polls never come back, so nothing but the deploy itself can have
+    // saved the build by the time the job name is on disk
+    final String jobDetails = TestUtils.getAPIResponseBody(peVersion, "/orchestrator/v1/jobs/711", "job_details.json");
+    mockOrchestratorService.stubFor(get(urlEqualTo("/orchestrator/v1/jobs/711"))
+        .withHeader("X-Authentication", equalTo("super_secret_token_string"))
+        .willReturn(aResponse()
+            .withStatus(200)
+            .withFixedDelay(60000)
+            .withHeader("Content-Type", "application/json")
+            .withBody(jobDetails.replaceFirst("\"state\" : \"finished\"", "\"state\" : \"running\""))));
+
+    final String jobName = "Puppet Job Name Saved Before Polling Against " + peVersion;
+
+    story.addStep(new Statement() {
+      @Override
+      public void evaluate() throws Throwable {
+        WorkflowJob job = story.j.jenkins.createProject(WorkflowJob.class, jobName);
+        job.setDefinition(new CpsFlowDefinition(
+          "puppet.job 'production', credentials: 'pe-test-token'", true));
+        WorkflowRun run = job.scheduleBuild2(0).waitForStart();
+        story.j.waitForMessage("Successfully started Puppet job 711", run);
+
+        //A crash from here on finds the job name in the saved program, so
+        // the step resumes the job rather than deploying it again
+        File program = new File(run.getRootDir(), "program.dat");
+        long deadline = System.currentTimeMillis() + 30000;
+
+        while (!(program.exists() && new String(Files.readAllBytes(program.toPath()), "ISO-8859-1").contains("711"))) {
+          assertTrue("The job name was never saved", System.currentTimeMillis() < deadline);
+          Thread.sleep(100);
+        }
+      }
+    });
+
+    story.addStep(new Statement() {
+      @Override
+      public void evaluate() throws Throwable {
+        mockOrchestratorService.stubFor(get(urlEqualTo("/orchestrator/v1/jobs/711"))
+            .withHeader("X-Authentication", equalTo("super_secret_token_string"))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody(jobDetails)));
+        mockOrchestratorService.resetRequests();
+
+        WorkflowRun run = story.j.jenkins.getItemByFullName(jobName, WorkflowJob.class).getLastBuild();
+        story.j.assertBuildStatusSuccess(story.j.waitForCompletion(run));
+        story.j.assertLogContains("Resuming Puppet job 711", run);
+
+        verify(0, postRequestedFor(urlMatching("/orchestrator/v1/command/deploy")));
       }
     });
   }
@@ -219,7 +419,7 @@ public class PuppetJobStepTest extends Assert {
             .withHeader("Content-Type", "application/json")
             .withBody(TestUtils.getAPIResponseBody(peVersion, "/orchestrator/v1/jobs/711", "job_node_does_not_exist.json"))));
 
-    mockOrchestratorService.stubFor(get(urlEqualTo("/orchestrator/v1/jobs/711/nodes"))
+    mockOrchestratorService.stubFor(get(urlPathEqualTo("/orchestrator/v1/jobs/711/nodes"))
         .withHeader("X-Authentication", equalTo("super_secret_token_string"))
         .willReturn(aResponse()
             .withStatus(200)
@@ -248,7 +448,8 @@ public class PuppetJobStepTest extends Assert {
         verify(getRequestedFor(urlMatching("/orchestrator/v1/jobs/711"))
             .withHeader("X-Authentication", matching("super_secret_token_string")));
 
-        verify(getRequestedFor(urlMatching("/orchestrator/v1/jobs/711/nodes"))
+        verify(getRequestedFor(urlPathEqualTo("/orchestrator/v1/jobs/711/nodes"))
+            .withQueryParam("offset", equalTo("0"))
             .withHeader("X-Authentication", matching("super_secret_token_string")));
       }
     });
@@ -0,0 +1,165 @@
+package org.jenkinsci.plugins.workflow.steps;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.Before;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.ClassRule;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.runners.model.Statement;
+import org.junit.experimental.theories.*;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.jenkinsci.plugins.plaincredentials.impl.StringCredentialsImpl;
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.CredentialsStore;
+import com.cloudbees.plugins.credentials.domains.Domain;
+
+import jenkins.model.Jenkins;
+import hudson.model.Result;
+import hudson.model.FreeStyleBuild;
+import hudson.util.Secret;
+import hudson.ExtensionList;
+import hudson.security.ACL;
+import org.jvnet.hudson.test.BuildWatcher;
+import org.jvnet.hudson.test.RestartableJenkinsRule;
+
+import java.io.File;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileNotFoundException;
+import java.lang.StringBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.github.tomakehurst.wiremock.common.ConsoleNotifier;
+
+import org.jenkinsci.plugins.puppetenterprise.models.PuppetEnterpriseConfig;
+import org.jenkinsci.plugins.puppetenterprise.TestUtils;
+
+@RunWith(Theories.class)
+public class PuppetRolloutStepTest extends Assert {
+
+  public static @DataPoints String[] PEVersions = {"2016.2","2016.4"};
+
+  @ClassRule
+  public static WireMockRule mockOrchestratorService = new WireMockRule(options()
+    .dynamicPort()
+    .httpsPort(8143)
+    .keystorePath(TestUtils.getKeystorePath())
+    .keystorePassword(TestUtils.getKeystorePassword()));
+
+  @ClassRule
+  public static BuildWatcher buildWatcher = new BuildWatcher();
+
+  @Rule
+  public RestartableJenkinsRule story = new RestartableJenkinsRule();
+
+  @Before
+  public void setup() {
+    story.addStep(new Statement() {
+      @Override
+      public void evaluate() throws Throwable {
+        try {
+          PuppetEnterpriseConfig.setPuppetMasterUrl("localhost");
+        }
+        catch(java.io.IOException e) {e.printStackTrace();}
+        catch(java.security.NoSuchAlgorithmException e) {e.printStackTrace();}
+        catch(java.security.KeyStoreException e) {e.printStackTrace();}
+        catch(java.security.KeyManagementException e) {e.printStackTrace();}
+
+        StringCredentialsImpl credential = new StringCredentialsImpl(CredentialsScope.GLOBAL, "pe-test-token", "PE test token", Secret.fromString("super_secret_token_string"));
+        CredentialsStore store = CredentialsProvider.lookupStores(story.j.jenkins).iterator().next();
+        store.addCredentials(Domain.global(), credential);
+      }
+    });
+  }
+
+  private void stubJobDeploySuccessful(String peVersion, String nodeResults) {
+    mockOrchestratorService.stubFor(post(urlEqualTo("/orchestrator/v1/command/deploy"))
+        .withHeader("content-type", equalTo("application/json"))
+        .withHeader("X-Authentication", equalTo("super_secret_token_string"))
+        .willReturn(aResponse()
+            .withStatus(200)
+            .withHeader("Content-Type", "application/json")
+            .withBody(TestUtils.getAPIResponseBody(peVersion, "/orchestrator/v1/command/deploy", "job_deploy.json"))));
+
+    mockOrchestratorService.stubFor(get(urlEqualTo("/orchestrator/v1/jobs/711"))
+        .withHeader("X-Authentication", equalTo("super_secret_token_string"))
+        .willReturn(aResponse()
+            .withStatus(200)
+            .withHeader("Content-Type", "application/json")
+            .withBody(TestUtils.getAPIResponseBody(peVersion, "/orchestrator/v1/jobs/711", "job_details.json"))));
+
+    mockOrchestratorService.stubFor(get(urlPathEqualTo("/orchestrator/v1/jobs/711/nodes"))
+        .withHeader("X-Authentication", equalTo("super_secret_token_string"))
+        .willReturn(aResponse()
+            .withStatus(200)
+            .withHeader("Content-Type", "application/json")
+            .withBody(nodeResults)));
+  }
+
+  @Theory
+  public void puppetRolloutDeploysEveryWave(final String peVersion) throws Exception {
+
+    stubJobDeploySuccessful(peVersion, TestUtils.getAPIResponseBody(peVersion, "/orchestrator/v1/jobs/711/nodes", "job_node_results.json"));
+
+    story.addStep(new Statement() {
+      @Override
+      public void evaluate() throws Throwable {
+        mockOrchestratorService.resetRequests();
+
+        WorkflowJob job = story.j.jenkins.createProject(WorkflowJob.class, "Puppet Rollout in Waves Against " + peVersion);
+        job.setDefinition(new CpsFlowDefinition(
+          "puppet.credentials 'pe-test-token'\n" +
+          "puppet.rollout 'production', nodes: ['node1.example.com','node2.example.com','node3.example.com'], waves: [1, '50%']\n", true));
+        WorkflowRun result = job.scheduleBuild2(0).get(60, TimeUnit.SECONDS);
+        story.j.assertBuildStatusSuccess(result);
+        story.j.assertLogContains("Rolling out to 3 nodes in 2 waves", result);
+        story.j.assertLogContains("Rollout finished: 2 of 2 waves ran, 0 nodes failed", result);
+
+        verify(2, postRequestedFor(urlMatching("/orchestrator/v1/command/deploy")));
+      }
+    });
+  }
+
+  @Theory
+  public void puppetRolloutStopsWhenFailureThresholdIsExceeded(final String peVersion) throws Exception {
+
+    String nodeResults = TestUtils.getAPIResponseBody(peVersion, "/orchestrator/v1/jobs/711/nodes", "job_node_results.json");
+    stubJobDeploySuccessful(peVersion, nodeResults.replaceFirst("\"state\" : \"finished\"", "\"state\" : \"failed\""));
+
+    story.addStep(new Statement() {
+      @Override
+      public void evaluate() throws Throwable {
+        mockOrchestratorService.resetRequests();
+
+        WorkflowJob job = story.j.jenkins.createProject(WorkflowJob.class, "Puppet Rollout Over Failure Threshold Against " + peVersion);
+        job.setDefinition(new CpsFlowDefinition(
+          "puppet.rollout 'production', credentials: 'pe-test-token', nodes: ['node1.example.com','node2.example.com','node3.example.com'], waves: [1], failureThreshold: 0\n", true));
+        WorkflowRun result = job.scheduleBuild2(0).get(60, TimeUnit.SECONDS);
+        story.j.assertBuildStatus(Result.FAILURE, result);
+        story.j.assertLogContains("Stopping the rollout", result);
+
+        //The second and third waves are never deployed
+        verify(1, postRequestedFor(urlMatching("/orchestrator/v1/command/deploy")));
+      }
+    });
+  }
+}